@@ -64,4 +64,10 @@ public class BaseFunctionActivity extends AppCompatActivity {
             super.onBackPressed();
         }
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        emotionKeyboard.release();
+    }
 }
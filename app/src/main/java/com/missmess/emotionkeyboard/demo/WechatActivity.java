@@ -10,6 +10,7 @@ import android.widget.ScrollView;
 
 import com.missmess.emotionkeyboard.EmojiconKeyBoard;
 import com.missmess.emotionkeyboard.KeyboardInfo;
+import com.missmess.emotionkeyboard.emoji.EmojiSpanEngine;
 
 public class WechatActivity extends AppCompatActivity {
     private EmojiconKeyBoard emotionKeyboard;
@@ -51,7 +52,7 @@ public class WechatActivity extends AppCompatActivity {
 
             @Override
             public void afterTextChanged(Editable s) {
-                showSendBtn(!s.toString().isEmpty());
+                showSendBtn(s.length() > 0);
             }
         });
 
@@ -60,6 +61,7 @@ public class WechatActivity extends AppCompatActivity {
         emotionKeyboard = new EmojiconKeyBoard.Builder(this)
                 .contentLayout(ll_contentView)//绑定内容view
                 .editText(et_input)//判断绑定那种EditView
+                .emojiSpanEngine(new EmojiSpanEngine(this))//输入的emoji转换为span
                 .addEmotionBtnAndLayout(btn_emoji, ll_bottom_layout)
                 .addEmotionBtnAndLayout(btn_more, ll_bottom_layout2)
                 .touchContentViewHideAllEnabled(null)
@@ -171,4 +173,10 @@ public class WechatActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        emotionKeyboard.release();
+    }
+
 }
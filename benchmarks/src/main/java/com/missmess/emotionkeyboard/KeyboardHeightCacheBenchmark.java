@@ -0,0 +1,67 @@
+package com.missmess.emotionkeyboard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link KeyboardHeightCache} 的查找和写入。key的格式和 {@link KeyboardHeightKey} 生成的一样，写入的key个数
+ * 超过容量，会不断淘汰。
+ *
+ * @author wl
+ * @since 2018/06/18 14:25
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KeyboardHeightCacheBenchmark {
+    /** 和KeyboardHeightStore中的容量相同，KeyboardHeightStore依赖Android framework，不参与编译 */
+    private static final int CAPACITY = 16;
+    private static final String[] INPUT_METHODS = {
+            "com.google.android.inputmethod.latin", "com.sohu.inputmethod.sogou", "com.baidu.input"
+    };
+
+    private KeyboardHeightCache mCache;
+    private String[] mHitKeys;
+    private String[] mChurnKeys;
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        mCache = new KeyboardHeightCache(CAPACITY);
+        // 配置不变时KeyboardHeightKey返回同一个实例，这里复制一份，比较时需要逐个字符比较
+        mHitKeys = new String[4];
+        for (int i = 0; i < mHitKeys.length; i++) {
+            String key = (i % 2 + 1) + "|" + INPUT_METHODS[i % INPUT_METHODS.length] + "|411@420|0";
+            mCache.put(key, 700 + i);
+            mHitKeys[i] = new String(key.toCharArray());
+        }
+        mChurnKeys = new String[CAPACITY * 2];
+        for (int i = 0; i < mChurnKeys.length; i++) {
+            mChurnKeys[i] = "1|" + INPUT_METHODS[i % INPUT_METHODS.length] + "|411@420|" + (i + 1);
+        }
+    }
+
+    @Benchmark
+    public int getHit() {
+        return mCache.get(mHitKeys[mIndex++ & 3]);
+    }
+
+    @Benchmark
+    public boolean putUnchanged() {
+        int i = mIndex++ & 3;
+        return mCache.put(mHitKeys[i], 700 + i);
+    }
+
+    @Benchmark
+    public boolean putEvicting() {
+        int i = mIndex++ % mChurnKeys.length;
+        return mCache.put(mChurnKeys[i], 600 + i);
+    }
+}
@@ -0,0 +1,72 @@
+package com.missmess.emotionkeyboard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link KeyboardStateMachine} 合并一次键盘弹出、候选栏变高、收起的代价。每次调用输入一段模拟键盘滑入滑出的
+ * 高度序列，包括中间高度和一次显示隐藏的抖动。
+ *
+ * @author wl
+ * @since 2018/06/18 14:10
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KeyboardStateMachineBenchmark {
+    /** 一次会话中检测到的键盘高度，0代表隐藏 */
+    private static final int[] SESSION = {
+            120, 360, 610, 787, 787, 0, 787, 851, 851, 600, 300, 0, 0
+    };
+    private static final long FRAME_MILLIS = 16;
+
+    private KeyboardStateMachine mStateMachine;
+    private Blackhole mBlackhole;
+    private long mNow;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mStateMachine = new KeyboardStateMachine(new KeyboardStateMachine.Callback() {
+            @Override
+            public void onKeyboardStateChanged(boolean shown, int height) {
+                mBlackhole.consume(height);
+            }
+
+            @Override
+            public void onKeyboardHeightChanged(int oldHeight, int newHeight) {
+                mBlackhole.consume(newHeight);
+            }
+        });
+    }
+
+    @Benchmark
+    public boolean frameWindow() {
+        return runSession(0);
+    }
+
+    @Benchmark
+    public boolean debounceWindow() {
+        return runSession(100);
+    }
+
+    private boolean runSession(long window) {
+        for (int i = 0; i < SESSION.length; i++) {
+            mNow += FRAME_MILLIS;
+            mStateMachine.onHeightSampled(SESSION[i], mNow, window);
+            mStateMachine.settle(mNow);
+        }
+        // 等待最后一个变化确定
+        mNow += window + FRAME_MILLIS;
+        mStateMachine.settle(mNow);
+        return mStateMachine.isShowing();
+    }
+}
@@ -0,0 +1,47 @@
+package com.missmess.emotionkeyboard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LatencyHistogram} 记录一个延迟，以及读取p99的代价。
+ *
+ * @author wl
+ * @since 2018/06/18 14:40
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LatencyHistogramBenchmark {
+    private final LatencyHistogram mHistogram = new LatencyHistogram();
+    // 预先生成的延迟，1ms ~ 500ms
+    private final long[] mLatencies = new long[1024];
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < mLatencies.length; i++) {
+            mLatencies[i] = 1000000L + (long) (random.nextDouble() * random.nextDouble() * 499000000L);
+            mHistogram.record(mLatencies[i]);
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        mHistogram.record(mLatencies[mIndex++ & 1023]);
+    }
+
+    @Benchmark
+    public long percentile() {
+        return mHistogram.getValueAtPercentile(99);
+    }
+}
@@ -0,0 +1,75 @@
+package com.missmess.emotionkeyboard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RecentEmojiCache} 的使用和排序。id是emoji的code point，和单个code point的emoji直接作为id时一样，
+ * 淘汰时使用的id个数是容量的两倍，每次都会淘汰最久没有使用的。
+ *
+ * @author wl
+ * @since 2018/06/25 11:00
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecentEmojiCacheBenchmark {
+    /** 和RecentEmojis.DEFAULT_CAPACITY相同，RecentEmojis依赖Android framework，不参与编译 */
+    private static final int CAPACITY = 32;
+
+    private RecentEmojiCache mCache;
+    private int[] mHitIds;
+    private int[] mChurnIds;
+    private int[] mOut;
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        mCache = new RecentEmojiCache(CAPACITY);
+        mChurnIds = new int[CAPACITY * 2];
+        for (int i = 0; i < mChurnIds.length; i++) {
+            mChurnIds[i] = 0x1F600 + i;
+        }
+        // 常用的几个使用得更频繁，排序时频率各不相同
+        mHitIds = new int[8];
+        for (int i = 0; i < CAPACITY; i++) {
+            mCache.touch(mChurnIds[i]);
+            if (i < mHitIds.length) {
+                mHitIds[i] = mChurnIds[i];
+                for (int j = 0; j < i; j++) {
+                    mCache.touch(mChurnIds[i]);
+                }
+            }
+        }
+        mOut = new int[CAPACITY];
+    }
+
+    @Benchmark
+    public int touchHit() {
+        mCache.touch(mHitIds[mIndex++ & 7]);
+        return mCache.size();
+    }
+
+    @Benchmark
+    public int touchEvicting() {
+        mCache.touch(mChurnIds[mIndex++ % mChurnIds.length]);
+        return mCache.size();
+    }
+
+    @Benchmark
+    public int getRecent() {
+        return mCache.getRecent(mOut);
+    }
+
+    @Benchmark
+    public int getRanked() {
+        return mCache.getRanked(mOut);
+    }
+}
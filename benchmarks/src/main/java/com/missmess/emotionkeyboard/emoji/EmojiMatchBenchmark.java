@@ -0,0 +1,125 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在一段聊天文本中查找所有emoji：{@link UnicodeEmojiMatcher} 按规则匹配，{@link EmojiTrie} 按表匹配，
+ * 以及作为对照的正则表达式（同样的emoji按长度从长到短组成的分支，和trie一样是最长匹配）。
+ * 文本混合了中文、英文以及各种emoji（ZWJ序列、肤色、国旗、键帽）。
+ *
+ * @author wl
+ * @since 2018/06/18 15:00
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmojiMatchBenchmark {
+    private static final String[] EMOJIS = {
+            "😀", "😂", "😍", "👍", "👍🏽",
+            "❤️", "❤", "🇨🇳", "🇺🇸", "1️⃣",
+            "👨‍👩‍👧", "👩‍💻", "☕", "🎉"
+    };
+    private static final String SENTENCE = "今天天气不错😀，一起喝咖啡☕吗？ ok 👍🏽 "
+            + "👨‍👩‍👧 happy new year 🎉🇨🇳 "
+            + "press 1️⃣ ❤️❤ see you\n";
+
+    /** 文本重复的次数 */
+    @Param({"1", "32"})
+    public int repeat;
+
+    private String mText;
+    private UnicodeEmojiMatcher mMatcher;
+    private EmojiTrie mTrie;
+    private Matcher mRegex;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < repeat; i++) {
+            sb.append(SENTENCE);
+        }
+        mText = sb.toString();
+        mMatcher = new UnicodeEmojiMatcher();
+        mTrie = new EmojiTrie(EMOJIS);
+        mRegex = emojiPattern(EMOJIS).matcher(mText);
+    }
+
+    @Benchmark
+    public int unicodeMatcher() {
+        return scan(mMatcher);
+    }
+
+    @Benchmark
+    public int trieMatcher() {
+        return scan(mTrie);
+    }
+
+    @Benchmark
+    public int trieTokenize() {
+        return mTrie.tokenize(mText, 0, mText.length(), null);
+    }
+
+    @Benchmark
+    public int regexFind() {
+        Matcher matcher = mRegex.reset();
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 和EmojiSpanEngine解析时一样，逐个位置尝试匹配
+     */
+    private int scan(EmojiMatcher matcher) {
+        String text = mText;
+        int end = text.length();
+        int count = 0;
+        int i = 0;
+        while (i < end) {
+            int length = matcher.match(text, i, end);
+            if (length > 0) {
+                count++;
+                i += length;
+            } else {
+                i += Character.isHighSurrogate(text.charAt(i)) && i + 1 < end ? 2 : 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 所有emoji组成的正则表达式，长的在前，保证ZWJ序列、肤色不会只匹配到开头的一部分
+     */
+    private static Pattern emojiPattern(String[] emojis) {
+        String[] sorted = emojis.clone();
+        Arrays.sort(sorted, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return b.length() - a.length();
+            }
+        });
+        StringBuilder regex = new StringBuilder();
+        for (String emoji : sorted) {
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append(Pattern.quote(emoji));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,132 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import com.missmess.emotionkeyboard.catalog.EmojiCatalogGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EmojiSearchIndex} 每次输入的查询耗时：从整个关键字表开始查找、边输入边在上一次的范围内继续查找，以及
+ * 取出以一个字母开头的全部结果。每次查询都包括取出结果（最近使用的emoji排在最前面），和搜索界面一次刷新做的事情相同。
+ * <p>
+ * 按采样时间统计，结果中的p0.99是99%的查询不超过的耗时，目标是小于1ms（1000us）。
+ * <p>
+ * 目录和发布的目录规模相当（3000个emoji，每个5到8个关键字），用emoji-catalog-generator生成。
+ *
+ * @author wl
+ * @since 2018/06/25 11:00
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmojiSearchIndexBenchmark {
+    private static final int EMOJI_COUNT = 3000;
+    private static final int CATEGORY_COUNT = 8;
+    /** 和RecentEmojis.DEFAULT_CAPACITY相同 */
+    private static final int RECENT_COUNT = 32;
+    /** 搜索界面一屏显示的结果个数 */
+    private static final int RESULT_COUNT = 64;
+    private static final String[] WORDS = {
+            "smile", "smiling", "smirk", "grin", "grinning", "laugh", "joy", "tears", "happy", "sad",
+            "cry", "crying", "angry", "face", "eyes", "heart", "love", "kiss", "wink", "tongue",
+            "hand", "thumbs", "up", "down", "clap", "wave", "ok", "pray", "muscle", "point",
+            "man", "woman", "boy", "girl", "baby", "family", "person", "skin", "tone", "light",
+            "dark", "medium", "cat", "dog", "monkey", "bear", "panda", "rabbit", "fox", "lion",
+            "tree", "flower", "sun", "moon", "star", "cloud", "rain", "snow", "fire", "water",
+            "food", "fruit", "apple", "banana", "cake", "coffee", "tea", "beer", "wine", "pizza",
+            "car", "bus", "train", "plane", "ship", "house", "office", "school", "sport", "ball",
+            "music", "phone", "computer", "book", "money", "gift", "party", "flag", "sign", "symbol"
+    };
+    /** 边输入边查询的一个词 */
+    private static final String[] TYPING = {"s", "sm", "smi", "smil", "smile"};
+    /** 交替查询，每次都不是上一次输入的延伸 */
+    private static final String[] RESTARTS = {"hea", "smi", "ca", "fl"};
+
+    private EmojiSearchIndex.Query mQuery;
+    private EmojiSearchIndex.Query mBroadQuery;
+    private int[] mRecents;
+    private int[] mOut;
+    private int mTypingIndex;
+    private int mRestartIndex;
+
+    @Setup
+    public void setup() throws IOException {
+        EmojiSearchIndex index = new EmojiSearchIndex(EmojiCatalog.open(generateCatalog()));
+        mQuery = index.newQuery();
+        mBroadQuery = index.newQuery();
+        mBroadQuery.update("s");
+        mOut = new int[RESULT_COUNT];
+        mRecents = new int[RECENT_COUNT];
+        Random random = new Random(1);
+        for (int i = 0; i < RECENT_COUNT; i++) {
+            mRecents[i] = random.nextInt(EMOJI_COUNT);
+        }
+    }
+
+    @Benchmark
+    public int prefix() {
+        mQuery.update(RESTARTS[mRestartIndex]);
+        mRestartIndex = (mRestartIndex + 1) % RESTARTS.length;
+        return mQuery.getResults(mOut, mRecents, RECENT_COUNT);
+    }
+
+    @Benchmark
+    public int refine() {
+        // 每个词的第一个字母从整个表开始，之后的都在上一次的范围内
+        mQuery.update(TYPING[mTypingIndex]);
+        mTypingIndex = (mTypingIndex + 1) % TYPING.length;
+        return mQuery.getResults(mOut, mRecents, RECENT_COUNT);
+    }
+
+    @Benchmark
+    public int broadResults() {
+        return mBroadQuery.getResults(mOut, mRecents, RECENT_COUNT);
+    }
+
+    /**
+     * 生成随机的文本目录，转换为二进制格式
+     */
+    private static File generateCatalog() throws IOException {
+        File input = File.createTempFile("emoji", ".txt");
+        File output = File.createTempFile("emoji", ".bin");
+        input.deleteOnExit();
+        output.deleteOnExit();
+
+        Random random = new Random(0);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(input), "UTF-8");
+        try {
+            for (int i = 0; i < EMOJI_COUNT; i++) {
+                if (i % (EMOJI_COUNT / CATEGORY_COUNT) == 0) {
+                    writer.write("@category " + i + "\n");
+                }
+                writer.write(Integer.toHexString(0x1F300 + i));
+                writer.write('\t');
+                writer.write(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]);
+                writer.write('\t');
+                int keywords = 3 + random.nextInt(4);
+                for (int k = 0; k < keywords; k++) {
+                    writer.write(WORDS[random.nextInt(WORDS.length)]);
+                    writer.write(' ');
+                }
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        EmojiCatalogGenerator.main(new String[]{input.getPath(), output.getPath()});
+        return output;
+    }
+}
@@ -0,0 +1,156 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在一条长消息中输入时，{@link EmojiSpanParser} 每次修改的解析代价：在结尾输入再删除一个emoji，以及替换中间的一个字母。
+ * 和每次修改都重新解析整个文本（通常在afterTextChanged中的做法）对比，增量解析的耗时不应随消息长度增长。
+ * <p>
+ * EmojiSpanEngine中的Editable依赖Android framework，这里span保存在按开头位置索引的数组中。
+ *
+ * @author wl
+ * @since 2018/06/25 11:00
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmojiSpanParserBenchmark {
+    private static final String SENTENCE = "今天天气不错😀，一起喝咖啡☕吗？ ok 👍🏽 "
+            + "👨‍👩‍👧 happy new year 🎉🇨🇳 "
+            + "press 1️⃣ ❤️❤ see you\n";
+    private static final String TYPED = "😂";
+
+    /** 消息的长度（char） */
+    @Param({"1000", "10000"})
+    public int length;
+
+    private StringBuilder mText;
+    private EmojiSpanParser mParser;
+    private TheArraySpans mSpans;
+    private int mMiddle;
+    private char mMiddleChar;
+
+    @Setup
+    public void setup() {
+        mText = new StringBuilder(length + TYPED.length());
+        while (mText.length() < length) {
+            mText.append(SENTENCE);
+        }
+        mText.setLength(length);
+        // 截断时可能留下半个代理对，替换掉
+        if (Character.isHighSurrogate(mText.charAt(length - 1))) {
+            mText.setCharAt(length - 1, ' ');
+        }
+        mMiddle = length / 2;
+        while (!Character.isLetter(mText.charAt(mMiddle)) || mText.charAt(mMiddle) > 'z') {
+            mMiddle++;
+        }
+        mMiddleChar = mText.charAt(mMiddle);
+
+        UnicodeEmojiMatcher matcher = new UnicodeEmojiMatcher();
+        mParser = new EmojiSpanParser(matcher);
+        mSpans = new TheArraySpans(mText.capacity(), matcher.maxLength());
+        mParser.parse(mText, 0, length, mSpans);
+    }
+
+    @Benchmark
+    public int typeAtEnd() {
+        append();
+        mParser.parseDirty(mText, mSpans);
+        deleteAppended();
+        mParser.parseDirty(mText, mSpans);
+        return mParser.getParsedCharCount();
+    }
+
+    @Benchmark
+    public int typeAtEndFullRescan() {
+        append();
+        mParser.reset();
+        mParser.parse(mText, 0, mText.length(), mSpans);
+        deleteAppended();
+        mParser.reset();
+        mParser.parse(mText, 0, mText.length(), mSpans);
+        return mParser.getParsedCharCount();
+    }
+
+    @Benchmark
+    public int replaceInMiddle() {
+        replaceMiddle();
+        mParser.parseDirty(mText, mSpans);
+        return mParser.getParsedCharCount();
+    }
+
+    @Benchmark
+    public int replaceInMiddleFullRescan() {
+        replaceMiddle();
+        mParser.reset();
+        mParser.parse(mText, 0, mText.length(), mSpans);
+        return mParser.getParsedCharCount();
+    }
+
+    private void append() {
+        mText.append(TYPED);
+        mParser.textChanged(length, 0, TYPED.length());
+    }
+
+    private void deleteAppended() {
+        mText.setLength(length);
+        mSpans.truncate(length);
+        mParser.textChanged(length, TYPED.length(), 0);
+    }
+
+    private void replaceMiddle() {
+        char c = mText.charAt(mMiddle) == mMiddleChar ? 'x' : mMiddleChar;
+        mText.setCharAt(mMiddle, c);
+        mParser.textChanged(mMiddle, 1, 1);
+    }
+
+    /**
+     * span保存在按开头位置索引的数组中，值是结尾，0代表没有。文本只在结尾增删，已有span的位置不会移动
+     */
+    private static class TheArraySpans implements EmojiSpanParser.Spans {
+        private final int[] mEnds;
+        private final int mMaxLength;
+
+        TheArraySpans(int capacity, int maxLength) {
+            mEnds = new int[capacity];
+            mMaxLength = maxLength;
+        }
+
+        /**
+         * 文本删除到length时，和Editable一样移除length之后的span
+         */
+        void truncate(int length) {
+            for (int i = length; i < mEnds.length; i++) {
+                mEnds[i] = 0;
+            }
+        }
+
+        @Override
+        public void removeSpans(int from, int to, int[] bounds) {
+            // 和[from, to)相交的span只能从from之前maxLength个char以内开始
+            for (int i = Math.max(0, from - mMaxLength); i < to; i++) {
+                int end = mEnds[i];
+                if (end > from) {
+                    bounds[0] = Math.min(bounds[0], i);
+                    bounds[1] = Math.max(bounds[1], end);
+                    mEnds[i] = 0;
+                }
+            }
+        }
+
+        @Override
+        public void addSpan(int start, int end) {
+            mEnds[start] = end;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.missmess.emotionkeyboard.catalog;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+/**
+ * 编译时把文本格式的emoji目录转换为EmojiCatalog读取的二进制格式。
+ * <p>
+ * 输入为UTF-8文本，每行一项，空行和以#开头的行被忽略：
+ * <pre>
+ * &#64;笑脸
+ * 1F600	grinning face	smile happy
+ * 1F468 200D 1F469 200D 1F467	family	family
+ * </pre>
+ * 以&#64;开头的行开始一个新的分类；emoji行以tab分隔为三列：十六进制的code point序列（空格分隔）、名称、
+ * 空格分隔的关键字（会被转为小写）。
+ * <p>
+ * 关键字和名称中的单词会被放入按字典序排列的关键字表，用于EmojiSearchIndex的前缀搜索。
+ * <p>
+ * 输出格式见emotionkeyboard模块中的EmojiCatalog，两边的常量需要保持一致。
+ *
+ * @author wl
+ * @since 2018/04/09 15:00
+ */
+public class EmojiCatalogGenerator {
+    private static final int MAGIC = 0x454b4354;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int CATEGORY_SIZE = 12;
+    private static final int EMOJI_SIZE = 20;
+    private static final int KEYWORD_SIZE = 12;
+
+    private final ArrayList<Category> mCategories = new ArrayList<>();
+    private final ArrayList<Emoji> mEmojis = new ArrayList<>();
+    private final ArrayList<Keyword> mKeywords = new ArrayList<>();
+    private final StringBuilder mPool = new StringBuilder();
+    // 关键字在字符串池中只保存一份
+    private final HashMap<String, PoolString> mKeywordStrings = new HashMap<>();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: EmojiCatalogGenerator <input.txt> <output.bin>");
+            System.exit(1);
+        }
+        EmojiCatalogGenerator generator = new EmojiCatalogGenerator();
+        generator.read(args[0]);
+        generator.write(args[1]);
+        System.out.println("Wrote " + generator.mEmojis.size() + " emojis in "
+                + generator.mCategories.size() + " categories and " + generator.mKeywords.size()
+                + " keywords to " + args[1]);
+    }
+
+    private void read(String path) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                if (line.startsWith("@")) {
+                    Category category = new Category();
+                    category.name = addString(line.substring(1).trim());
+                    category.firstEmoji = mEmojis.size();
+                    mCategories.add(category);
+                    continue;
+                }
+                if (mCategories.isEmpty()) {
+                    throw new IOException("Line " + lineNumber + ": emoji before the first @category");
+                }
+
+                String[] columns = line.split("\t");
+                Emoji emoji = new Emoji();
+                emoji.sequence = addString(parseCodePoints(columns[0], lineNumber));
+                emoji.name = addString(columns.length > 1 ? columns[1].trim() : "");
+                String keywords = columns.length > 2 ? columns[2].trim().toLowerCase(Locale.ROOT) : "";
+                emoji.keywords = addString(keywords);
+                addKeywords(mEmojis.size(), keywords + " " + (columns.length > 1
+                        ? columns[1].trim().toLowerCase(Locale.ROOT) : ""));
+                mEmojis.add(emoji);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void addKeywords(int emojiIndex, String words) throws IOException {
+        LinkedHashSet<String> unique = new LinkedHashSet<>();
+        for (String word : words.split(" +")) {
+            if (!word.isEmpty()) {
+                unique.add(word);
+            }
+        }
+        for (String word : unique) {
+            PoolString string = mKeywordStrings.get(word);
+            if (string == null) {
+                string = addString(word);
+                mKeywordStrings.put(word, string);
+            }
+            Keyword keyword = new Keyword();
+            keyword.word = word;
+            keyword.string = string;
+            keyword.emojiIndex = emojiIndex;
+            mKeywords.add(keyword);
+        }
+    }
+
+    private void write(String path) throws IOException {
+        Collections.sort(mKeywords);
+        int keywordTableOffset = HEADER_SIZE + mCategories.size() * CATEGORY_SIZE + mEmojis.size() * EMOJI_SIZE;
+        int poolOffset = keywordTableOffset + mKeywords.size() * KEYWORD_SIZE;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(mCategories.size());
+            out.writeInt(mEmojis.size());
+            out.writeInt(poolOffset);
+            out.writeInt(mKeywords.size());
+            out.writeInt(keywordTableOffset);
+
+            for (Category category : mCategories) {
+                out.writeInt(category.name.offset);
+                out.writeShort(category.name.length);
+                out.writeShort(0);
+                out.writeInt(category.firstEmoji);
+            }
+            for (Emoji emoji : mEmojis) {
+                out.writeInt(emoji.sequence.offset);
+                out.writeInt(emoji.name.offset);
+                out.writeInt(emoji.keywords.offset);
+                out.writeShort(emoji.sequence.length);
+                out.writeShort(emoji.name.length);
+                out.writeShort(emoji.keywords.length);
+                out.writeShort(0);
+            }
+            for (Keyword keyword : mKeywords) {
+                out.writeInt(keyword.string.offset);
+                out.writeInt(keyword.emojiIndex);
+                out.writeShort(keyword.string.length);
+                out.writeShort(0);
+            }
+            out.writeChars(mPool.toString());
+        } finally {
+            out.close();
+        }
+    }
+
+    private PoolString addString(String value) throws IOException {
+        if (value.length() > Short.MAX_VALUE) {
+            throw new IOException("String too long: " + value.length());
+        }
+        PoolString string = new PoolString();
+        string.offset = mPool.length();
+        string.length = value.length();
+        mPool.append(value);
+        return string;
+    }
+
+    private static String parseCodePoints(String column, int lineNumber) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (String hex : column.trim().split(" +")) {
+            try {
+                builder.appendCodePoint(Integer.parseInt(hex, 16));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": bad code point " + hex);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static class PoolString {
+        int offset;
+        int length;
+    }
+
+    private static class Category {
+        PoolString name;
+        int firstEmoji;
+    }
+
+    private static class Keyword implements Comparable<Keyword> {
+        String word;
+        PoolString string;
+        int emojiIndex;
+
+        @Override
+        public int compareTo(Keyword other) {
+            int result = word.compareTo(other.word);
+            return result != 0 ? result : emojiIndex - other.emojiIndex;
+        }
+    }
+
+    private static class Emoji {
+        PoolString sequence;
+        PoolString name;
+        PoolString keywords;
+    }
+}
@@ -0,0 +1,184 @@
+package com.missmess.emotionkeyboard;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Rect;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.Display;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.WindowManager;
+
+/**
+ * 通过window可见区域计算键盘高度的检测策略：decorView的高度减去可见区域的底部，再减去虚拟按键栏的高度。
+ * <p>
+ * 需要activity的softInputMode为adjustResize，每次全局布局时都会检测一次。所有版本都可以使用。
+ *
+ * @author wl
+ * @since 2018/02/02 16:30
+ */
+public class DisplayFrameKeyboardDetector implements KeyboardDetector {
+    private final Activity mActivity;
+    private final View mDecorView;
+    private final TheGlobalLayoutListener mGlobalLayoutListener;
+    private Callback mCallback;
+    // 以下为每次布局计算时复用的对象，避免频繁的布局回调中产生内存分配
+    private final Rect mTmpRect = new Rect();
+    private final DisplayMetrics mTmpMetrics = new DisplayMetrics();
+    private final Display mDisplay;
+    private TheDisplayListener mDisplayListener;
+    /** 缓存的虚拟按键栏高度，-1代表需要重新计算 */
+    private int mSoftButtonsBarHeight = -1;
+    /** 计算虚拟按键栏高度时根布局的宽度，宽度变化（横竖屏、分屏）时需要重新计算 */
+    private int mSoftButtonsBarRootWidth = -1;
+
+    public DisplayFrameKeyboardDetector(Activity activity) {
+        mActivity = activity;
+        mDecorView = activity.getWindow().getDecorView();
+        mDisplay = activity.getWindowManager().getDefaultDisplay();
+        mGlobalLayoutListener = new TheGlobalLayoutListener();
+    }
+
+    @Override
+    public void start(Callback callback) {
+        mCallback = callback;
+        mDecorView.getViewTreeObserver().addOnGlobalLayoutListener(mGlobalLayoutListener);
+        registerDisplayListener();
+    }
+
+    @Override
+    public void stop() {
+        mDecorView.getViewTreeObserver().removeGlobalOnLayoutListener(mGlobalLayoutListener);
+        unregisterDisplayListener();
+        mCallback = null;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        int softInputMode = mActivity.getWindow().getAttributes().softInputMode;
+        if ((softInputMode & WindowManager.LayoutParams.SOFT_INPUT_ADJUST_NOTHING)
+                == WindowManager.LayoutParams.SOFT_INPUT_ADJUST_NOTHING) {
+            // 当前模式activity为adjustNothing模式
+            Log.w("KeyboardInfo", "softInputMode of this activity contains adjustNothing, can not " +
+                    "obtain height of soft-keyboard");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int detectKeyboardHeight() {
+        Rect r = mTmpRect;
+        /*
+         * decorView是window中的最顶层view，可以从window中通过getDecorView获取到decorView。
+         * 通过decorView获取到程序显示的区域，包括标题栏，但不包括状态栏。
+         */
+        mDecorView.getWindowVisibleDisplayFrame(r);
+        // 获取屏幕的高度
+        int screenHeight = mDecorView.getRootView().getHeight();
+        // 计算软键盘的高度
+        int softInputHeight = screenHeight - r.bottom;
+
+        /*
+         * 某些Android版本下，没有显示软键盘时减出来的高度总是144，而不是零，
+         * 这是因为高度是包括了虚拟按键栏的(例如华为系列)，所以在API Level高于20时，
+         * 我们需要减去底部虚拟按键栏的高度（如果有的话）
+         */
+        if (Build.VERSION.SDK_INT >= 20) {
+            // When SDK Level >= 20 (Android L), the softInputHeight will contain the height of softButtonsBar (if has)
+            softInputHeight = softInputHeight - getSoftButtonsBarHeight();
+        }
+
+        if (softInputHeight < 0) {
+            softInputHeight = 0;
+            Log.w("KeyboardInfo", "Warning: value of softInputHeight is below zero!");
+        }
+        return softInputHeight;
+    }
+
+    /**
+     * 监听屏幕变化（旋转、分辨率切换等），屏幕变化后虚拟按键栏高度需要重新计算
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private void registerDisplayListener() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1)
+            return;
+
+        if (mDisplayListener == null) {
+            mDisplayListener = new TheDisplayListener();
+        }
+        DisplayManager dm = (DisplayManager) mActivity.getSystemService(Context.DISPLAY_SERVICE);
+        dm.registerDisplayListener(mDisplayListener, null);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private void unregisterDisplayListener() {
+        if (mDisplayListener == null)
+            return;
+
+        DisplayManager dm = (DisplayManager) mActivity.getSystemService(Context.DISPLAY_SERVICE);
+        dm.unregisterDisplayListener(mDisplayListener);
+    }
+
+    /**
+     * 底部虚拟导航按键栏的高度。计算结果会被缓存，只在屏幕变化或者根布局宽度变化（横竖屏切换、
+     * 分屏）时才重新计算。
+     * @return int
+     */
+    private int getSoftButtonsBarHeight() {
+        int rootWidth = mDecorView.getRootView().getWidth();
+        if (mSoftButtonsBarHeight < 0 || rootWidth != mSoftButtonsBarRootWidth) {
+            mSoftButtonsBarHeight = computeSoftButtonsBarHeight();
+            mSoftButtonsBarRootWidth = rootWidth;
+        }
+        return mSoftButtonsBarHeight;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private int computeSoftButtonsBarHeight() {
+        DisplayMetrics metrics = mTmpMetrics;
+        //这个方法获取可能不是真实屏幕的高度
+        mDisplay.getMetrics(metrics);
+        int usableHeight = metrics.heightPixels;
+        //获取当前屏幕的真实高度
+        mDisplay.getRealMetrics(metrics);
+        int realHeight = metrics.heightPixels;
+        if (realHeight > usableHeight) {
+            return realHeight - usableHeight;
+        } else {
+            return 0;
+        }
+    }
+
+    private class TheGlobalLayoutListener implements ViewTreeObserver.OnGlobalLayoutListener {
+        @Override
+        public void onGlobalLayout() {
+            if (mCallback != null) {
+                mCallback.onKeyboardMayChanged();
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private class TheDisplayListener implements DisplayManager.DisplayListener {
+        @Override
+        public void onDisplayAdded(int displayId) {
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+        }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            if (displayId == mDisplay.getDisplayId()) {
+                // 下次布局时重新计算
+                mSoftButtonsBarHeight = -1;
+            }
+        }
+    }
+}
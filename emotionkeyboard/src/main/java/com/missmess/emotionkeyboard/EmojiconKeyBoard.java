@@ -1,14 +1,25 @@
 package com.missmess.emotionkeyboard;
 
 import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Color;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.WindowManager;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.EditText;
+import android.widget.FrameLayout;
+
+import com.missmess.emotionkeyboard.emoji.EmojiSpanEngine;
 
 import java.util.ArrayList;
 
@@ -27,12 +38,31 @@ import java.util.ArrayList;
  * @since 2017/12/08 13:57
  */
 public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListener {
+    // 表情布局的状态
+    private static final int PANEL_STATE_NONE = 0;
+    private static final int PANEL_STATE_HIDDEN = 1;
+    private static final int PANEL_STATE_TRANSIT = 2;
+    private static final int PANEL_STATE_VISIBLE = 3;
+    // 分发给PanelLifecycle的事件
+    private static final int PANEL_EVENT_ATTACHED = 1;
+    private static final int PANEL_EVENT_DETACHED = 2;
+    private static final int PANEL_EVENT_VISIBLE = 3;
+    private static final int PANEL_EVENT_TRANSIT = 4;
+    private static final int PANEL_EVENT_HIDDEN = 5;
+    private static final int PANEL_EVENT_TRIMMED = 6;
+
     private Activity mActivity;
     private InputMethodManager mInputManager;//软键盘管理类
     private final KeyboardInfo mKeyboardInfo;
     private View mContentView;//内容布局view,即除了表情布局或者软键盘布局以外的布局，用于固定bar的高度，防止跳闪
     private EditText mEditText;
     private ArrayList<View> mEmotionLayouts;
+    /** 延迟创建的表情布局的工厂，和mEmotionLayouts一一对应，已创建或者不需要延迟创建的为null */
+    private ArrayList<PanelFactory> mPanelFactories;
+    private boolean mPreInflateOnIdle = false;
+    /** 通过layout资源id添加的表情布局是否从 {@link PanelPool} 中获取 */
+    private boolean mUsePanelPool = false;
+    private final ArrayList<LayoutResPanelFactory> mLayoutResFactories = new ArrayList<>();
     private int showingEmotionIndex = -1;
     private boolean mTouchContentHideAll = false;
     private TheContentViewToucher mContentToucher;
@@ -43,16 +73,67 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
     private View mStuffView;
     /** 键盘弹出收起时的过渡view引用 */
     private View mTransitView;
+    /** 键盘弹出收起时移动底部布局的过渡动画 */
+    private final ImeTransition mImeTransition = new ImeTransition();
+    // 过渡动画时需要移动的view，复用避免每次分配
+    private final ArrayList<View> mTransitionTargets = new ArrayList<>();
+    /** 是否只通过translationY切换表情布局 */
+    private boolean mSwitchByTranslation = false;
+    /** 只通过translationY切换时，容纳所有表情布局的容器，同时作为键盘的填充布局 */
+    private FrameLayout mPanelContainer;
+    /** 把编辑框中的emoji增量转换为span */
+    private EmojiSpanEngine mEmojiSpanEngine;
+    /** 通过Builder注册的表情布局生命周期，以表情布局的位置为下标 */
+    private final ArrayList<PanelLifecycle> mPanelLifecycles = new ArrayList<>();
+    // 表情布局的逻辑状态，以及已经分发的状态（宿主activity在后台时分发的都是hidden）
+    private int[] mPanelStates = new int[0];
+    private int[] mDispatchedPanelStates = new int[0];
+    // 表情布局的attach监听，释放时移除，防止放回缓存池的表情布局引用activity
+    private ThePanelAttachListener[] mPanelAttachListeners = new ThePanelAttachListener[0];
+    /** 作为键盘占位的表情布局位置 */
+    private int mTransitPanelIndex = -1;
+    private boolean isHostPaused;
+    /** 是否持有共用的 {@link KeyboardInfo} 的一次监听，停止监听时只释放自己的这一次 */
+    private boolean isListeningKeyboard;
+    // 调用了release()，空闲时不再创建表情布局
+    private boolean isReleased;
+    private TheHostCallbacks mHostCallbacks;
+    private final TheKeyboardHeightListener mKeyboardHeightListener = new TheKeyboardHeightListener();
+    /** 切换延迟统计，null代表不统计 */
+    private TransitionMetrics mTransitionMetrics;
+    private View.OnTouchListener mEditTextTouchListener;
+    // 键盘弹出后输入栏过渡动画结束时，结束统计
+    private Runnable mImeShownAction;
+    /** 切换期间的掉帧统计，null代表不统计 */
+    private FrameJankMonitor mFrameJankMonitor;
+    /** 调试用的布局次数统计，null代表不统计 */
+    private LayoutPassTracker mLayoutPassTracker;
 
     EmojiconKeyBoard(Activity activity) {
         mActivity = activity;
         mInputManager = (InputMethodManager) activity.getSystemService(Context.INPUT_METHOD_SERVICE);
         mKeyboardInfo = KeyboardInfo.from(activity);
         mEmotionLayouts = new ArrayList<>();
+        mPanelFactories = new ArrayList<>();
 
         // 开始监听键盘变化
+        isListeningKeyboard = true;
         mKeyboardInfo.startListening();
-        mKeyboardInfo.setOnKeyboardChangeListener(this);
+        mKeyboardInfo.addOnKeyboardChangeListener(this);
+        mKeyboardInfo.addOnKeyboardHeightChangeListener(mKeyboardHeightListener);
+    }
+
+    /**
+     * 不再监听键盘变化。同一个activity中的其它使用者共用同一个KeyboardInfo，只释放自己的监听，不影响它们
+     */
+    private void stopListeningKeyboard() {
+        if (!isListeningKeyboard)
+            return;
+
+        isListeningKeyboard = false;
+        mKeyboardInfo.stopListening();
+        mKeyboardInfo.removeOnKeyboardChangeListener(this);
+        mKeyboardInfo.removeOnKeyboardHeightChangeListener(mKeyboardHeightListener);
     }
 
     private void setOnKeyboardChangeListener(KeyboardInfo.OnSoftKeyboardChangeListener listener) {
@@ -63,13 +144,102 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
         mEmotionLayoutListener = listener;
     }
 
+    private void setKeyboardDetector(KeyboardDetector detector) {
+        KeyboardDetector current = mKeyboardInfo.getKeyboardDetector();
+        // 除了自己还有其它使用者正在监听，替换共用的检测策略会改变它们的行为
+        if (mKeyboardInfo.getListeningCount() > 1) {
+            if (current.getClass() != detector.getClass()) {
+                Log.w("EmojiconKeyBoard", "KeyboardInfo of this activity is used by others, keep using "
+                        + current.getClass().getSimpleName() + " instead of " + detector.getClass().getSimpleName());
+            }
+            return;
+        }
+        mKeyboardInfo.setKeyboardDetector(detector);
+    }
+
     private void bindContentView(View contentView) {
         mContentView = contentView;
     }
 
     private void bindEditText(EditText editText, View.OnTouchListener listener) {
         mEditText = editText;
+        mEditTextTouchListener = listener;
         editText.requestFocus();
+        if (mEmojiSpanEngine != null) {
+            mEmojiSpanEngine.attach(editText);
+        }
+    }
+
+    private void setEmojiSpanEngine(EmojiSpanEngine engine) {
+        if (mEmojiSpanEngine != null) {
+            mEmojiSpanEngine.detach();
+        }
+        mEmojiSpanEngine = engine;
+        if (engine != null && mEditText != null) {
+            engine.attach(mEditText);
+        }
+    }
+
+    private void setTransitionMetrics(TransitionMetrics metrics) {
+        mTransitionMetrics = metrics;
+        if (metrics != null && mImeShownAction == null) {
+            mImeShownAction = new Runnable() {
+                @Override
+                public void run() {
+                    endTransition(TransitionMetrics.TRANSITION_KEYBOARD_SHOW);
+                }
+            };
+        }
+    }
+
+    private void setFrameJankMonitor(FrameJankMonitor monitor) {
+        mFrameJankMonitor = monitor;
+    }
+
+    private void armFrameJankMonitor() {
+        if (mFrameJankMonitor != null) {
+            mFrameJankMonitor.arm();
+        }
+    }
+
+    private void setLayoutPassTracker(LayoutPassTracker tracker) {
+        mLayoutPassTracker = tracker;
+    }
+
+    private void beginLayoutAction(String action) {
+        if (mLayoutPassTracker != null) {
+            mLayoutPassTracker.beginAction(action);
+        }
+    }
+
+    private void endLayoutAction() {
+        if (mLayoutPassTracker != null) {
+            mLayoutPassTracker.endAction();
+        }
+    }
+
+    private void noteLayoutCause(String cause) {
+        if (mLayoutPassTracker != null) {
+            mLayoutPassTracker.noteCause(cause);
+        }
+    }
+
+    private void beginTransition(int transition) {
+        if (mTransitionMetrics != null) {
+            mTransitionMetrics.begin(transition);
+        }
+    }
+
+    private void endTransition(int transition) {
+        if (mTransitionMetrics != null) {
+            mTransitionMetrics.end(transition);
+        }
+    }
+
+    private void endTransitionOnNextDraw(int transition, View view) {
+        if (mTransitionMetrics != null) {
+            mTransitionMetrics.endOnNextDraw(transition, view);
+        }
     }
 
     private void touchContentViewHideAllEnabled(View.OnTouchListener listener) {
@@ -79,19 +249,223 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
 
     private void addEmotionBtnAndLayout(View emotionBtn, View emotionLayout, View.OnClickListener listener) {
         if (mStuffView == null) {
-            mStuffView = new View(mActivity);
-            // 颜色透明，实际显示时取决于parent的颜色
-            mStuffView.setBackgroundColor(Color.TRANSPARENT);
-            ViewGroup parent = (ViewGroup) emotionLayout.getParent();
-            parent.addView(mStuffView, ViewGroup.LayoutParams.MATCH_PARENT, 0);
-            mStuffView.setVisibility(View.GONE);
+            addStuffView((ViewGroup) emotionLayout.getParent());
         }
 
         mEmotionLayouts.add(emotionLayout);
+        mPanelFactories.add(null);
+        int index = mEmotionLayouts.size() - 1;
+        emotionBtn.setOnClickListener(new TheEmotionClicker(index, listener));
+    }
+
+    private void addEmotionBtnAndLayout(View emotionBtn, PanelFactory factory, View.OnClickListener listener) {
+        // 表情布局还没有创建，填充布局等到setup时再添加
+        mEmotionLayouts.add(null);
+        mPanelFactories.add(factory);
         int index = mEmotionLayouts.size() - 1;
         emotionBtn.setOnClickListener(new TheEmotionClicker(index, listener));
     }
 
+    private void addEmotionBtnAndLayout(View emotionBtn, int layoutResId, View.OnClickListener listener) {
+        LayoutResPanelFactory factory = new LayoutResPanelFactory(layoutResId);
+        mLayoutResFactories.add(factory);
+        addEmotionBtnAndLayout(emotionBtn, factory, listener);
+    }
+
+    private void setUsePanelPool(boolean enabled) {
+        mUsePanelPool = enabled;
+    }
+
+    private void setPreInflateOnIdle(boolean enabled) {
+        mPreInflateOnIdle = enabled;
+    }
+
+    private void addStuffView(ViewGroup parent) {
+        mStuffView = new View(mActivity);
+        // 颜色透明，实际显示时取决于parent的颜色
+        mStuffView.setBackgroundColor(Color.TRANSPARENT);
+        parent.addView(mStuffView, ViewGroup.LayoutParams.MATCH_PARENT, 0);
+        mStuffView.setVisibility(View.GONE);
+    }
+
+    /**
+     * 获取index位置的表情布局，如果是延迟创建的并且还没有创建，现在创建它并添加到布局中。
+     * @param index index
+     * @return 表情布局
+     */
+    private View obtainPanel(int index) {
+        View panel = mEmotionLayouts.get(index);
+        if (panel != null)
+            return panel;
+
+        PanelFactory factory = mPanelFactories.get(index);
+        mPanelFactories.set(index, null);
+        if (mPanelContainer != null) {
+            panel = factory.createPanel(mPanelContainer);
+            panel.setVisibility(View.VISIBLE);
+            panel.setTranslationY(mPanelContainer.getLayoutParams().height);
+            mPanelContainer.addView(panel, ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+        } else {
+            // 放在填充布局前面
+            ViewGroup parent = (ViewGroup) mStuffView.getParent();
+            panel = factory.createPanel(parent);
+            panel.setVisibility(View.GONE);
+            parent.addView(panel, parent.indexOfChild(mStuffView));
+        }
+        mEmotionLayouts.set(index, panel);
+        onPanelCreated(index);
+        return panel;
+    }
+
+    private void setPanelLifecycle(int index, PanelLifecycle lifecycle) {
+        while (mPanelLifecycles.size() <= index) {
+            mPanelLifecycles.add(null);
+        }
+        mPanelLifecycles.set(index, lifecycle);
+    }
+
+    /**
+     * 表情布局创建了，分发created，并开始跟踪attach状态
+     */
+    private void onPanelCreated(int index) {
+        final View panel = mEmotionLayouts.get(index);
+        mPanelStates[index] = PANEL_STATE_HIDDEN;
+        mDispatchedPanelStates[index] = PANEL_STATE_HIDDEN;
+        if (mLayoutPassTracker != null) {
+            mLayoutPassTracker.track(panel, "panel#" + index);
+        }
+        if (!hasPanelLifecycle(index))
+            return;
+
+        PanelLifecycle own = panel instanceof PanelLifecycle ? (PanelLifecycle) panel : null;
+        PanelLifecycle registered = index < mPanelLifecycles.size() ? mPanelLifecycles.get(index) : null;
+        if (own != null)
+            own.onPanelCreated(panel, index);
+        if (registered != null)
+            registered.onPanelCreated(panel, index);
+
+        ThePanelAttachListener listener = new ThePanelAttachListener(index);
+        mPanelAttachListeners[index] = listener;
+        panel.addOnAttachStateChangeListener(listener);
+        if (panel.getWindowToken() != null) {
+            dispatchPanelEvent(index, PANEL_EVENT_ATTACHED, 0);
+        }
+    }
+
+    private boolean hasPanelLifecycle(int index) {
+        return mEmotionLayouts.get(index) instanceof PanelLifecycle
+                || (index < mPanelLifecycles.size() && mPanelLifecycles.get(index) != null);
+    }
+
+    /**
+     * 修改表情布局的状态，宿主activity在前台并且状态改变时才分发
+     * @param index 表情布局位置，-1时什么也不做
+     * @param state PANEL_STATE_*
+     */
+    private void setPanelState(int index, int state) {
+        if (index < 0 || mPanelStates[index] == PANEL_STATE_NONE)
+            return;
+
+        mPanelStates[index] = state;
+        dispatchPanelState(index);
+    }
+
+    private void dispatchPanelState(int index) {
+        int state = mPanelStates[index];
+        if (state == PANEL_STATE_NONE)
+            return;
+        if (isHostPaused) {
+            state = PANEL_STATE_HIDDEN;
+        }
+        if (mDispatchedPanelStates[index] == state)
+            return;
+
+        mDispatchedPanelStates[index] = state;
+        int event = state == PANEL_STATE_VISIBLE ? PANEL_EVENT_VISIBLE
+                : state == PANEL_STATE_TRANSIT ? PANEL_EVENT_TRANSIT : PANEL_EVENT_HIDDEN;
+        dispatchPanelEvent(index, event, 0);
+    }
+
+    private void dispatchPanelEvent(int index, int event, int level) {
+        View panel = mEmotionLayouts.get(index);
+        if (panel instanceof PanelLifecycle) {
+            dispatchPanelEvent((PanelLifecycle) panel, panel, index, event, level);
+        }
+        if (index < mPanelLifecycles.size() && mPanelLifecycles.get(index) != null) {
+            dispatchPanelEvent(mPanelLifecycles.get(index), panel, index, event, level);
+        }
+    }
+
+    private static void dispatchPanelEvent(PanelLifecycle lifecycle, View panel, int index, int event, int level) {
+        switch (event) {
+            case PANEL_EVENT_ATTACHED:
+                lifecycle.onPanelAttached(panel, index);
+                break;
+            case PANEL_EVENT_DETACHED:
+                lifecycle.onPanelDetached(panel, index);
+                break;
+            case PANEL_EVENT_VISIBLE:
+                lifecycle.onPanelVisible(panel, index);
+                break;
+            case PANEL_EVENT_TRANSIT:
+                lifecycle.onPanelTransit(panel, index);
+                break;
+            case PANEL_EVENT_HIDDEN:
+                lifecycle.onPanelHidden(panel, index);
+                break;
+            case PANEL_EVENT_TRIMMED:
+                lifecycle.onPanelTrimmed(panel, index, level);
+                break;
+        }
+    }
+
+    private void setHostPaused(boolean paused) {
+        if (isHostPaused == paused)
+            return;
+
+        isHostPaused = paused;
+        for (int i = 0; i < mPanelStates.length; i++) {
+            dispatchPanelState(i);
+        }
+    }
+
+    private void trimPanels(int level) {
+        for (int i = 0; i < mPanelStates.length; i++) {
+            if (mPanelStates[i] != PANEL_STATE_NONE && hasPanelLifecycle(i)) {
+                dispatchPanelEvent(i, PANEL_EVENT_TRIMMED, level);
+            }
+        }
+    }
+
+    /**
+     * 在主线程空闲时逐个创建还没有创建的表情布局，每次空闲只创建一个，避免阻塞界面
+     */
+    private void preInflatePanelsOnIdle() {
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (isReleased)
+                    return false;
+
+                for (int i = 0; i < mPanelFactories.size(); i++) {
+                    if (mPanelFactories.get(i) != null) {
+                        obtainPanel(i);
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+    }
+
+    private void setSwitchByTranslation(boolean enabled) {
+        mSwitchByTranslation = enabled;
+    }
+
+    private void setImeAnimationDuration(long duration) {
+        mImeTransition.setDuration(duration);
+    }
+
     private void setRootView(View rootView) {
         rootView.setFitsSystemWindows(false);
         mActivityRootView = rootView;
@@ -116,14 +490,32 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
             setRootView(((ViewGroup) mActivity.findViewById(android.R.id.content)).getChildAt(0));
         }
 
+        if (mStuffView == null && !mEmotionLayouts.isEmpty()) {
+            // 全部都是延迟创建的表情布局，表情布局将放在contentView的parent中
+            addStuffView((ViewGroup) mContentView.getParent());
+        }
+
+        if (mLayoutPassTracker != null) {
+            // 先于下面固定高度的监听器注册，根布局本次的layout不会被算作固定高度引起的
+            mLayoutPassTracker.track(mActivityRootView, "root");
+            mLayoutPassTracker.track(mContentView, "content");
+            if (mStuffView != null) {
+                mLayoutPassTracker.track(mStuffView, "stuff");
+            }
+        }
+
         mActivityRootView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
             @Override
             public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                if (mFrameJankMonitor != null) {
+                    mFrameJankMonitor.notifyLayout();
+                }
                 int oldHeight = mRootViewHeight;
                 int newHeight = bottom - top;
                 // 设置rootView高度固定
                 if (newHeight != oldHeight) {
                     mRootViewHeight = newHeight;
+                    noteLayoutCause("pinRootHeight");
                     ViewGroup.LayoutParams lps = mActivityRootView.getLayoutParams();
                     lps.height = mRootViewHeight;
                     mActivityRootView.setLayoutParams(lps);
@@ -131,6 +523,36 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
             }
         });
 
+        if (mSwitchByTranslation) {
+            setupPanelContainer();
+        }
+
+        int panelCount = mEmotionLayouts.size();
+        mPanelStates = new int[panelCount];
+        mDispatchedPanelStates = new int[panelCount];
+        mPanelAttachListeners = new ThePanelAttachListener[panelCount];
+        for (int i = 0; i < panelCount; i++) {
+            if (mEmotionLayouts.get(i) != null) {
+                onPanelCreated(i);
+            }
+        }
+        mHostCallbacks = new TheHostCallbacks();
+        mActivity.getApplication().registerActivityLifecycleCallbacks(mHostCallbacks);
+        mActivity.getApplication().registerComponentCallbacks(mHostCallbacks);
+
+        if (mPreInflateOnIdle) {
+            preInflatePanelsOnIdle();
+        }
+
+        if (mFrameJankMonitor != null) {
+            mFrameJankMonitor.setRefreshRate(mActivity.getWindowManager().getDefaultDisplay().getRefreshRate());
+        }
+
+        if (mTransitionMetrics != null && mEditText != null) {
+            // 点击编辑框时开始统计键盘弹出的延迟
+            mEditText.setOnTouchListener(new TheEditTextToucher(mEditTextTouchListener));
+        }
+
         if (mTouchContentHideAll) {
             mContentView.setFocusable(true);
             mContentView.setFocusableInTouchMode(true);
@@ -138,6 +560,81 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
         }
     }
 
+    /**
+     * 把所有表情布局移到一个FrameLayout容器中叠放，一直保持attach和VISIBLE，只需要布局一次。之后切换
+     * 表情布局只修改translationY，不会引起measure/layout。容器同时替代填充布局，键盘弹出时显示为空白。
+     */
+    private void setupPanelContainer() {
+        if (mEmotionLayouts.isEmpty())
+            return;
+
+        ViewGroup parent = (ViewGroup) mStuffView.getParent();
+        View firstPanel = null;
+        for (int i = 0; i < mEmotionLayouts.size(); i++) {
+            View panel = mEmotionLayouts.get(i);
+            if (panel == null)
+                continue;
+            if (panel.getParent() != parent) {
+                Log.w("EmojiconKeyBoard", "emotion layouts do not share the same parent, " +
+                        "switching by translation is disabled");
+                mSwitchByTranslation = false;
+                return;
+            }
+            if (firstPanel == null) {
+                firstPanel = panel;
+            }
+        }
+
+        int height = mKeyboardInfo.getSoftKeyboardHeight();
+        FrameLayout container = new FrameLayout(mActivity);
+        container.setVisibility(View.GONE);
+        parent.addView(container, parent.indexOfChild(firstPanel != null ? firstPanel : mStuffView),
+                new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, height));
+        for (int i = 0; i < mEmotionLayouts.size(); i++) {
+            View panel = mEmotionLayouts.get(i);
+            if (panel == null)
+                continue;
+            parent.removeView(panel);
+            panel.setVisibility(View.VISIBLE);
+            panel.setTranslationY(height);
+            container.addView(panel, ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+        }
+        // 容器代替填充布局
+        parent.removeView(mStuffView);
+        mStuffView = container;
+        if (mLayoutPassTracker != null) {
+            mLayoutPassTracker.track(container, "container");
+        }
+        mPanelContainer = container;
+    }
+
+    /**
+     * 只通过translationY切换时，把index位置的表情布局移到容器中显示，其它的移出容器。
+     * @param index -1代表全部移出
+     */
+    private void translatePanels(int index) {
+        float offscreen = mPanelContainer.getLayoutParams().height;
+        for (int i = 0; i < mEmotionLayouts.size(); i++) {
+            View panel = mEmotionLayouts.get(i);
+            if (panel != null) {
+                panel.setTranslationY(i == index ? 0 : offscreen);
+            }
+        }
+    }
+
+    /**
+     * 设置填充布局或者表情布局的高度，只在高度改变时才会引起重新布局
+     * @param view view
+     * @param height height
+     */
+    private static void setHeightIfChanged(View view, int height) {
+        ViewGroup.LayoutParams lps = view.getLayoutParams();
+        if (lps.height != height) {
+            lps.height = height;
+            view.setLayoutParams(lps);
+        }
+    }
+
     /**
      * 获得正在显示的表情布局index。
      * @return index等于 {@link #addEmotionBtnAndLayout(View, View, View.OnClickListener)} 方法调用的
@@ -160,28 +657,51 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
      * @param index index
      */
     public void showEmotionLayout(int index) {
+        beginLayoutAction("showEmotionLayout");
+        armFrameJankMonitor();
+        mImeTransition.finish();
         if (mTransitView != null) {
-            mTransitView.setVisibility(View.GONE);
+            // 容器马上会用来显示表情布局，不需要隐藏
+            if (mTransitView != mPanelContainer) {
+                mTransitView.setVisibility(View.GONE);
+            }
             mTransitView = null;
+            if (mTransitPanelIndex != index) {
+                setPanelState(mTransitPanelIndex, PANEL_STATE_HIDDEN);
+            }
+            mTransitPanelIndex = -1;
         }
         hideSoftKeyboard();
 
         showEmotionLayoutInternal(index);
+        endLayoutAction();
     }
 
     private void showEmotionLayoutInternal(int index) {
         int oldIndex = showingEmotionIndex;
         if (index != oldIndex) {
             int softKeyboardHeight = mKeyboardInfo.getSoftKeyboardHeight();
-            // 隐藏旧的
-            if (oldIndex != -1) {
-                View oldLayout = mEmotionLayouts.get(oldIndex);
-                oldLayout.setVisibility(View.GONE);
+            // 延迟创建的表情布局在第一次显示时创建
+            View emotionLayout = obtainPanel(index);
+            if (mPanelContainer != null) {
+                // 只移动位置，不引起重新布局
+                setHeightIfChanged(mPanelContainer, softKeyboardHeight);
+                if (mPanelContainer.getVisibility() != View.VISIBLE) {
+                    mPanelContainer.setVisibility(View.VISIBLE);
+                }
+                translatePanels(index);
+            } else {
+                // 隐藏旧的
+                if (oldIndex != -1) {
+                    View oldLayout = mEmotionLayouts.get(oldIndex);
+                    oldLayout.setVisibility(View.GONE);
+                }
+                // 显示新的
+                emotionLayout.getLayoutParams().height = softKeyboardHeight;
+                emotionLayout.setVisibility(View.VISIBLE);
             }
-            // 显示新的
-            View emotionLayout = mEmotionLayouts.get(index);
-            emotionLayout.getLayoutParams().height = softKeyboardHeight;
-            emotionLayout.setVisibility(View.VISIBLE);
+            setPanelState(oldIndex, PANEL_STATE_HIDDEN);
+            setPanelState(index, PANEL_STATE_VISIBLE);
 
             if (mEmotionLayoutListener != null) {
                 mEmotionLayoutListener.onEmotionLayoutShow(emotionLayout, index, oldIndex);
@@ -189,16 +709,24 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
         }
 
         showingEmotionIndex = index;
+        endTransitionOnNextDraw(TransitionMetrics.TRANSITION_PANEL_SHOW, mEmotionLayouts.get(index));
     }
 
     /**
      * 隐藏全部表情布局
      */
     public void hideEmotionLayout() {
+        beginLayoutAction("hideEmotionLayout");
         int oldIndex = showingEmotionIndex;
         if (oldIndex != -1) {
-            View emotionLayout = mEmotionLayouts.get(oldIndex);
-            emotionLayout.setVisibility(View.GONE);
+            if (mPanelContainer != null) {
+                translatePanels(-1);
+                mPanelContainer.setVisibility(View.GONE);
+            } else {
+                View emotionLayout = mEmotionLayouts.get(oldIndex);
+                emotionLayout.setVisibility(View.GONE);
+            }
+            setPanelState(oldIndex, PANEL_STATE_HIDDEN);
 
             if (mEmotionLayoutListener != null) {
                 mEmotionLayoutListener.onEmotionLayoutHide(oldIndex);
@@ -206,6 +734,7 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
         }
 
         showingEmotionIndex = -1;
+        endLayoutAction();
     }
 
     public boolean isSoftKeyboardShowing() {
@@ -216,19 +745,26 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
      * 编辑框获取焦点，并显示软键盘
      */
     public void showSoftKeyboard() {
+        beginLayoutAction("showSoftKeyboard");
         if (!isSoftKeyboardShowing()) {
+            armFrameJankMonitor();
+            beginTransition(TransitionMetrics.TRANSITION_KEYBOARD_SHOW);
             mEditText.requestFocus();
             mInputManager.showSoftInput(mEditText, 0);
         }
+        endLayoutAction();
     }
 
     /**
      * 隐藏软键盘
      */
     public void hideSoftKeyboard() {
+        beginLayoutAction("hideSoftKeyboard");
         if (isSoftKeyboardShowing()) {
+            beginTransition(TransitionMetrics.TRANSITION_KEYBOARD_HIDE);
             mInputManager.hideSoftInputFromWindow(mEditText.getWindowToken(), 0);
         }
+        endLayoutAction();
     }
 
     /**
@@ -242,41 +778,196 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
             return true;
         }
         // 不拦截，关闭界面
-        mKeyboardInfo.stopListening(); // 不再监听键盘变化
+        stopListeningKeyboard();
         return false;
     }
 
+    /**
+     * 释放资源：不再监听键盘变化，从 {@link PanelPool} 中取出的表情布局放回池中。在activity的onDestroy
+     * 中调用，调用后不能再使用。
+     */
+    public void release() {
+        isReleased = true;
+        mImeTransition.finish();
+        if (mFrameJankMonitor != null) {
+            mFrameJankMonitor.disarm();
+        }
+        if (mLayoutPassTracker != null) {
+            mLayoutPassTracker.untrackAll();
+        }
+        stopListeningKeyboard();
+        if (mEmojiSpanEngine != null) {
+            mEmojiSpanEngine.detach();
+        }
+        for (int i = 0; i < mPanelStates.length; i++) {
+            setPanelState(i, PANEL_STATE_HIDDEN);
+        }
+        unregisterHostCallbacks();
+        // 放回缓存池之前移除监听
+        for (int i = 0; i < mPanelAttachListeners.length; i++) {
+            if (mPanelAttachListeners[i] != null) {
+                mEmotionLayouts.get(i).removeOnAttachStateChangeListener(mPanelAttachListeners[i]);
+                mPanelAttachListeners[i] = null;
+            }
+        }
+        for (int i = 0; i < mLayoutResFactories.size(); i++) {
+            mLayoutResFactories.get(i).recycle();
+        }
+        mLayoutResFactories.clear();
+    }
+
+    private void unregisterHostCallbacks() {
+        if (mHostCallbacks != null) {
+            mActivity.getApplication().unregisterActivityLifecycleCallbacks(mHostCallbacks);
+            mActivity.getApplication().unregisterComponentCallbacks(mHostCallbacks);
+            mHostCallbacks = null;
+        }
+    }
+
     @Override
     public void onSoftKeyboardStateChanged(boolean shown, int height) {
+        beginLayoutAction(shown ? "keyboardShown" : "keyboardHidden");
+        armFrameJankMonitor();
+        // 上一次的过渡还没结束，直接跳到结束状态
+        mImeTransition.finish();
         if (shown) {
             // 打开键盘时：如果有表情键盘显示，为了平滑过渡，不做隐藏处理；如果没有表情键盘显示，则
             // 显示第一个表情键盘作为位置填充
             if (showingEmotionIndex != -1) {
                 int oldIndex = showingEmotionIndex;
-                mTransitView = mEmotionLayouts.get(showingEmotionIndex);
+                mTransitView = mPanelContainer != null ? mPanelContainer : mEmotionLayouts.get(showingEmotionIndex);
+                mTransitPanelIndex = oldIndex;
+                // 表情布局按之前保存的高度显示，和这次的键盘高度不同时直接改为键盘高度
+                onSoftKeyboardHeightChanged(height);
+                setPanelState(oldIndex, PANEL_STATE_TRANSIT);
                 // 为了平滑过渡，仅重置这个值
                 showingEmotionIndex = -1;
                 if (mEmotionLayoutListener != null) {
                     mEmotionLayoutListener.onEmotionLayoutHide(oldIndex);
                 }
+                endTransitionOnNextDraw(TransitionMetrics.TRANSITION_KEYBOARD_SHOW, mContentView);
             } else {
                 // 显示键盘高度位置的填充布局
                 int softKeyboardHeight = mKeyboardInfo.getSoftKeyboardHeight();
                 View stuff = mStuffView;
-                stuff.getLayoutParams().height = softKeyboardHeight;
+                if (mPanelContainer != null) {
+                    setHeightIfChanged(stuff, softKeyboardHeight);
+                    // 屏幕外的位置随容器高度改变，容器变高时表情布局不会露出来
+                    translatePanels(-1);
+                } else {
+                    stuff.getLayoutParams().height = softKeyboardHeight;
+                }
                 stuff.setVisibility(View.VISIBLE);
                 mTransitView = stuff;
+                // 输入栏从底部逐帧上移，从键盘开始移动的时间算起
+                if (collectTransitionTargets()) {
+                    mImeTransition.start(mTransitionTargets, softKeyboardHeight, 0,
+                            mTransitionMetrics != null ? mImeShownAction : null,
+                            mKeyboardInfo.getKeyboardChangeUptime());
+                } else {
+                    endTransitionOnNextDraw(TransitionMetrics.TRANSITION_KEYBOARD_SHOW, stuff);
+                }
             }
         } else {
             // 关闭键盘时，隐藏填充位置
             if (mTransitView != null) {
-                mTransitView.setVisibility(View.GONE);
+                final View transitView = mTransitView;
+                final int transitPanelIndex = mTransitPanelIndex;
                 mTransitView = null;
+                mTransitPanelIndex = -1;
+                Runnable hideTransit = new Runnable() {
+                    @Override
+                    public void run() {
+                        noteLayoutCause("hideTransitView");
+                        transitView.setVisibility(View.GONE);
+                        if (transitView == mPanelContainer) {
+                            translatePanels(-1);
+                        }
+                        setPanelState(transitPanelIndex, PANEL_STATE_HIDDEN);
+                        endTransition(TransitionMetrics.TRANSITION_KEYBOARD_HIDE);
+                    }
+                };
+                // 输入栏逐帧下移，从键盘开始移动的时间算起，移动结束后再隐藏填充位置，只触发一次布局
+                if (collectTransitionTargets()) {
+                    mImeTransition.start(mTransitionTargets, 0, transitView.getHeight(), hideTransit,
+                            mKeyboardInfo.getKeyboardChangeUptime());
+                } else {
+                    hideTransit.run();
+                }
+            } else {
+                endTransitionOnNextDraw(TransitionMetrics.TRANSITION_KEYBOARD_HIDE, mContentView);
             }
         }
 
         if (mKeyboardListener != null)
             mKeyboardListener.onSoftKeyboardStateChanged(shown, height);
+        endLayoutAction();
+    }
+
+    /**
+     * 键盘显示期间高度改变（切换了输入法、候选栏变高等），把键盘下面的填充位置改为新的高度，只引起一次布局。
+     * 这样之后打开表情布局时高度已经正确，不会再跳动。
+     * @param height 新的键盘高度
+     */
+    private void onSoftKeyboardHeightChanged(int height) {
+        View transitView = mTransitView;
+        if (transitView == null)
+            return;
+
+        setHeightIfChanged(transitView, height);
+        if (transitView == mPanelContainer) {
+            // 屏幕外的位置随容器高度改变
+            translatePanels(mTransitPanelIndex);
+        }
+    }
+
+    /**
+     * 收集键盘过渡时需要移动的view：和contentView在同一个parent中，并且位于contentView下面的view，
+     * 即输入栏和表情布局。
+     * @return false - 布局结构不支持过渡动画
+     */
+    private boolean collectTransitionTargets() {
+        mTransitionTargets.clear();
+        if (mStuffView == null || mContentView.getParent() != mStuffView.getParent())
+            return false;
+
+        ViewGroup parent = (ViewGroup) mContentView.getParent();
+        int count = parent.getChildCount();
+        for (int i = parent.indexOfChild(mContentView) + 1; i < count; i++) {
+            View child = parent.getChildAt(i);
+            if (child.getVisibility() != View.GONE) {
+                mTransitionTargets.add(child);
+            }
+        }
+        return !mTransitionTargets.isEmpty();
+    }
+
+    private class TheKeyboardHeightListener implements KeyboardInfo.OnSoftKeyboardHeightChangeListener {
+        @Override
+        public void onSoftKeyboardHeightChanged(int oldHeight, int newHeight) {
+            beginLayoutAction("keyboardHeightChanged");
+            EmojiconKeyBoard.this.onSoftKeyboardHeightChanged(newHeight);
+            endLayoutAction();
+        }
+    }
+
+    // 表情布局attach状态改变时分发attached和detached
+    private class ThePanelAttachListener implements View.OnAttachStateChangeListener {
+        private final int index;
+
+        ThePanelAttachListener(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            dispatchPanelEvent(index, PANEL_EVENT_ATTACHED, 0);
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            dispatchPanelEvent(index, PANEL_EVENT_DETACHED, 0);
+        }
     }
 
     // 给表情按钮添加的OnClickListener
@@ -295,9 +986,11 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
                 if (position == getShowingEmotionIndex()) { //显示的是当前的
                     showSoftKeyboard();
                 } else { //显示的是其它的
+                    beginTransition(TransitionMetrics.TRANSITION_PANEL_SHOW);
                     showEmotionLayout(position);
                 }
             } else { //未显示表情布局
+                beginTransition(TransitionMetrics.TRANSITION_PANEL_SHOW);
                 if (isSoftKeyboardShowing()) { //显示着键盘，隐藏键盘显示当前表情布局
                     showEmotionLayout(position); //显示当前表情布局，隐藏键盘
                 } else { //什么都没显示
@@ -310,6 +1003,83 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
         }
     }
 
+    /**
+     * 宿主activity的生命周期和系统内存回调，转换为表情布局的hidden和trimmed。activity销毁时自动注销。
+     */
+    private class TheHostCallbacks implements Application.ActivityLifecycleCallbacks, ComponentCallbacks2 {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            if (activity == mActivity) {
+                setHostPaused(false);
+            }
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            if (activity == mActivity) {
+                setHostPaused(true);
+            }
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            if (activity == mActivity) {
+                trimPanels(TRIM_MEMORY_UI_HIDDEN);
+            }
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            if (activity == mActivity) {
+                unregisterHostCallbacks();
+            }
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            trimPanels(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimPanels(TRIM_MEMORY_COMPLETE);
+        }
+    }
+
+    private class TheEditTextToucher implements View.OnTouchListener {
+        private View.OnTouchListener other;
+
+        TheEditTextToucher(View.OnTouchListener other) {
+            this.other = other;
+        }
+
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            // 抬起时编辑框才会弹出键盘
+            if (event.getAction() == MotionEvent.ACTION_UP && !isSoftKeyboardShowing()) {
+                beginTransition(TransitionMetrics.TRANSITION_KEYBOARD_SHOW);
+            }
+
+            return other != null && other.onTouch(v, event);
+        }
+    }
+
     private class TheContentViewToucher implements View.OnTouchListener {
         private View.OnTouchListener other;
 
@@ -350,6 +1120,47 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
         void onEmotionLayoutHide(int oldEmotionLayoutIndex);
     }
 
+    /**
+     * 延迟创建表情布局的工厂，见 {@link Builder#addEmotionBtnAndLayout(View, PanelFactory)}
+     */
+    public interface PanelFactory {
+        /**
+         * 创建表情布局，不要把它添加到parent中。只会调用一次。
+         * @param parent 表情布局将要添加到的parent，用于生成LayoutParams
+         * @return 表情布局
+         */
+        View createPanel(ViewGroup parent);
+    }
+
+    /**
+     * 通过layout资源id创建表情布局，开启了缓存池时从 {@link PanelPool} 中获取
+     */
+    private class LayoutResPanelFactory implements PanelFactory {
+        private final int layoutResId;
+        // 从缓存池中取出的表情布局，释放时放回
+        private View pooledPanel;
+
+        LayoutResPanelFactory(int layoutResId) {
+            this.layoutResId = layoutResId;
+        }
+
+        @Override
+        public View createPanel(ViewGroup parent) {
+            if (mUsePanelPool) {
+                pooledPanel = PanelPool.get().acquire(mActivity, layoutResId, parent);
+                return pooledPanel;
+            }
+            return LayoutInflater.from(mActivity).inflate(layoutResId, parent, false);
+        }
+
+        void recycle() {
+            if (pooledPanel != null) {
+                PanelPool.get().release(layoutResId, pooledPanel);
+                pooledPanel = null;
+            }
+        }
+    }
+
     public static class Builder {
         private EmojiconKeyBoard impl;
 
@@ -377,6 +1188,43 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
             return this;
         }
 
+        /**
+         * 指定键盘高度的检测策略，默认为 {@link DisplayFrameKeyboardDetector}。API 21以上可以使用
+         * {@link WindowInsetsKeyboardDetector} 获取精确的键盘高度。
+         * <p>
+         * 同一个activity共用一个 {@link KeyboardInfo}，如果activity中已经有其它使用者正在监听键盘，保留它们正在
+         * 使用的检测策略，这里指定的策略不生效。
+         * @param detector KeyboardDetector
+         * @return link call
+         */
+        public Builder keyboardDetector(KeyboardDetector detector) {
+            impl.setKeyboardDetector(detector);
+            return this;
+        }
+
+        /**
+         * 设置键盘弹出收起时，输入栏移动的动画时长，默认250毫秒。动画从第一次检测到键盘变化时开始计算，
+         * 时长应该接近输入法窗口的动画时长。
+         * @param duration 毫秒，0代表不做动画，直接跳到结束位置
+         * @return link call
+         */
+        public Builder imeAnimationDuration(long duration) {
+            impl.setImeAnimationDuration(duration);
+            return this;
+        }
+
+        /**
+         * 是否只通过translationY切换表情布局。开启后所有表情布局会被移到同一个FrameLayout容器中，以键盘
+         * 高度布局一次并一直保持显示，之后表情布局之间的切换不会再引起measure/layout。要求所有表情布局
+         * 在同一个parent中，表情布局自身的高度将由容器决定。
+         * @param enabled 默认false
+         * @return link call
+         */
+        public Builder switchPanelsByTranslation(boolean enabled) {
+            impl.setSwitchByTranslation(enabled);
+            return this;
+        }
+
         /**
          * 如果你的activity根布局使用了{@link View#setFitsSystemWindows(boolean)}属性（通常一些改
          * 变状态栏颜色的工具类，会使用setFitsSystemWindows方法），使用这个方法指定你的根布局为另一
@@ -423,6 +1271,17 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
             return this;
         }
 
+        /**
+         * 把编辑框中输入的emoji转换为 {@link com.missmess.emotionkeyboard.emoji.EmojiSpan}，以缓存的位图
+         * 绘制。每次输入只重新解析修改的部分，输入代价和文本长度无关。
+         * @param engine 通常为 new EmojiSpanEngine(context)，null代表不转换
+         * @return link call
+         */
+        public Builder emojiSpanEngine(EmojiSpanEngine engine) {
+            impl.setEmojiSpanEngine(engine);
+            return this;
+        }
+
         /**
          * 是否触摸聊天内容区域时，获取焦点，并隐藏键盘和表情布局。
          * @param listener 要给contentView设置touch监听，如果自己有需求监听touch事件，在这里传入，否则传null
@@ -456,6 +1315,117 @@ public class EmojiconKeyBoard implements KeyboardInfo.OnSoftKeyboardChangeListen
             return this;
         }
 
+        /**
+         * 添加表情按钮和对应的按钮弹出布局，布局会在第一次显示时才inflate，可以减少界面的启动时间。
+         * 表情布局会被添加到contentView的parent中。
+         * @param emotionBtn emotionBtn
+         * @param layoutResId 表情布局的layout资源id
+         * @return link call
+         */
+        public Builder addEmotionBtnAndLayout(View emotionBtn, int layoutResId) {
+            return addEmotionBtnAndLayout(emotionBtn, layoutResId, null);
+        }
+
+        /**
+         * 同 {@link #addEmotionBtnAndLayout(View, int)}，如果要自己添加OnClickListener，请在参数中传入
+         * @param emotionBtn emotionBtn
+         * @param layoutResId 表情布局的layout资源id
+         * @param listener 自己需要添加的OnClickListener，没有可传null
+         * @return link call
+         */
+        public Builder addEmotionBtnAndLayout(View emotionBtn, int layoutResId, View.OnClickListener listener) {
+            impl.addEmotionBtnAndLayout(emotionBtn, layoutResId, listener);
+            return this;
+        }
+
+        /**
+         * 添加表情按钮和对应的按钮弹出布局，布局会在第一次显示时才通过factory创建，可以减少界面的启动时间。
+         * 表情布局会被添加到contentView的parent中。
+         * @param emotionBtn emotionBtn
+         * @param factory 创建表情布局的工厂
+         * @return link call
+         */
+        public Builder addEmotionBtnAndLayout(View emotionBtn, PanelFactory factory) {
+            return addEmotionBtnAndLayout(emotionBtn, factory, null);
+        }
+
+        /**
+         * 同 {@link #addEmotionBtnAndLayout(View, PanelFactory)}，如果要自己添加OnClickListener，请在参数中传入
+         * @param emotionBtn emotionBtn
+         * @param factory 创建表情布局的工厂
+         * @param listener 自己需要添加的OnClickListener，没有可传null
+         * @return link call
+         */
+        public Builder addEmotionBtnAndLayout(View emotionBtn, PanelFactory factory, View.OnClickListener listener) {
+            impl.addEmotionBtnAndLayout(emotionBtn, factory, listener);
+            return this;
+        }
+
+        /**
+         * 给第index个表情布局注册生命周期回调，用于表情布局本身不方便实现 {@link PanelLifecycle} 的情况，
+         * 比如通过 {@link PanelFactory} 创建的通用view。表情布局自身实现了 {@link PanelLifecycle} 时两者都会收到回调。
+         * @param index 表情布局的位置，即addEmotionBtnAndLayout调用的顺序
+         * @param lifecycle PanelLifecycle
+         * @return link call
+         */
+        public Builder panelLifecycle(int index, PanelLifecycle lifecycle) {
+            impl.setPanelLifecycle(index, lifecycle);
+            return this;
+        }
+
+        /**
+         * 通过layout资源id添加的表情布局是否使用进程内共享的 {@link PanelPool}。开启后表情布局优先从池中
+         * 取出，{@link EmojiconKeyBoard#release()} 时放回池中，在多个聊天界面之间切换时不需要重复inflate。
+         * @param enabled 默认false
+         * @return link call
+         */
+        public Builder usePanelPool(boolean enabled) {
+            impl.setUsePanelPool(enabled);
+            return this;
+        }
+
+        /**
+         * 是否在主线程空闲时提前创建延迟创建的表情布局，每次空闲只创建一个。这样既不影响界面启动，
+         * 第一次点击表情按钮时也不用等待inflate。
+         * @param enabled 默认false
+         * @return link call
+         */
+        public Builder preInflatePanelsOnIdle(boolean enabled) {
+            impl.setPreInflateOnIdle(enabled);
+            return this;
+        }
+
+        /**
+         * 统计表情布局和键盘切换的延迟，会给编辑框设置touch listener（自己的listener通过
+         * {@link #editText(EditText, View.OnTouchListener)} 传入）。
+         * @param metrics TransitionMetrics，默认null代表不统计
+         * @return link call
+         */
+        public Builder transitionMetrics(TransitionMetrics metrics) {
+            impl.setTransitionMetrics(metrics);
+            return this;
+        }
+
+        /**
+         * 统计键盘和表情布局切换期间的掉帧
+         * @param monitor FrameJankMonitor，默认null代表不统计
+         * @return link call
+         */
+        public Builder frameJankMonitor(FrameJankMonitor monitor) {
+            impl.setFrameJankMonitor(monitor);
+            return this;
+        }
+
+        /**
+         * 调试用，统计每个操作引起的布局次数，一个操作让同一个view布局超过一次时输出警告
+         * @param tracker LayoutPassTracker，默认null代表不统计
+         * @return link call
+         */
+        public Builder layoutPassTracker(LayoutPassTracker tracker) {
+            impl.setLayoutPassTracker(tracker);
+            return this;
+        }
+
         /**
          * 创建 {@link EmojiconKeyBoard}。
          * @return EmotionKeyboard
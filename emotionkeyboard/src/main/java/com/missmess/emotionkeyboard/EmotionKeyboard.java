@@ -57,6 +57,8 @@ public class EmotionKeyboard implements KeyboardInfo.OnSoftKeyboardChangeListene
     private TheContentViewToucher mContentToucher;
     private OnEmotionLayoutStateChangeListener mEmotionLayoutListener;
     private KeyboardInfo.OnSoftKeyboardChangeListener mKeyboardListener;
+    // 是否持有共用的KeyboardInfo的一次监听
+    private boolean isListeningKeyboard;
 
     EmotionKeyboard(Activity activity) {
         mActivity = activity;
@@ -65,8 +67,9 @@ public class EmotionKeyboard implements KeyboardInfo.OnSoftKeyboardChangeListene
         mEmotionLayouts = new ArrayList<>();
 
         // 开始监听键盘变化
+        isListeningKeyboard = true;
         mKeyboardInfo.startListening();
-        mKeyboardInfo.setOnKeyboardChangeListener(this);
+        mKeyboardInfo.addOnKeyboardChangeListener(this);
     }
 
     private void setOnKeyboardChangeListener(KeyboardInfo.OnSoftKeyboardChangeListener listener) {
@@ -131,8 +134,12 @@ public class EmotionKeyboard implements KeyboardInfo.OnSoftKeyboardChangeListene
             // 拦截事件
             return true;
         }
-        // 不拦截，关闭界面
-        mKeyboardInfo.stopListening(); // 不再监听键盘变化
+        // 不拦截，关闭界面。只释放自己的监听，同一个activity中的其它使用者继续监听
+        if (isListeningKeyboard) {
+            isListeningKeyboard = false;
+            mKeyboardInfo.stopListening();
+            mKeyboardInfo.removeOnKeyboardChangeListener(this);
+        }
         return false;
     }
 
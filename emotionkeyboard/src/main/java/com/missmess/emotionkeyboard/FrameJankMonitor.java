@@ -0,0 +1,240 @@
+package com.missmess.emotionkeyboard;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * 统计键盘和表情布局切换期间的掉帧，通过 {@link EmojiconKeyBoard.Builder#frameJankMonitor(FrameJankMonitor)}
+ * 设置后生效，没有设置时不会有任何开销。
+ * <p>
+ * {@link EmojiconKeyBoard} 开始一次切换（显示表情布局、弹出键盘、键盘状态改变）时开始监听，每一帧都在
+ * {@link Choreographer} 的回调中比较相邻两帧的间隔：超过1.5个vsync周期的记为长帧，间隔中错过的vsync个数
+ * 累加为掉帧数。最后一次切换或者布局之后的 {@link #SETTLE_MILLIS} 毫秒内都没有新的切换和布局，就认为已经
+ * 稳定，停止监听，并回调 {@link OnJankListener}。
+ * <p>
+ * API 16以下没有Choreographer，不做统计。只能在主线程使用。
+ *
+ * @author wl
+ * @since 2018/06/04 14:30
+ */
+public class FrameJankMonitor {
+    /** 最后一次切换或者布局之后，经过这个时间认为已经稳定 */
+    static final long SETTLE_MILLIS = 300L;
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    private TheFrameCallback mFrameCallback;
+    private OnJankListener mListener;
+    private boolean isArmed;
+    private long mLastFrameNanos;
+    private long mSettleNanos;
+    // 本次切换的统计
+    private int mFrames;
+    private int mLongFrames;
+    private int mMissedVsyncs;
+    private long mMaxFrameNanos;
+    // 所有切换的累计
+    private int mTransitionCount;
+    private long mTotalFrames;
+    private long mTotalLongFrames;
+    private long mTotalMissedVsyncs;
+    private long mTotalMaxFrameNanos;
+
+    /**
+     * 设置每次切换稳定后的回调
+     * @param listener OnJankListener
+     */
+    public void setOnJankListener(OnJankListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 统计过的切换次数
+     * @return int
+     */
+    public int getTransitionCount() {
+        return mTransitionCount;
+    }
+
+    /**
+     * 所有切换期间的总帧数
+     * @return long
+     */
+    public long getTotalFrames() {
+        return mTotalFrames;
+    }
+
+    /**
+     * 所有切换期间的长帧数
+     * @return long
+     */
+    public long getTotalLongFrames() {
+        return mTotalLongFrames;
+    }
+
+    /**
+     * 所有切换期间错过的vsync个数
+     * @return long
+     */
+    public long getTotalMissedVsyncs() {
+        return mTotalMissedVsyncs;
+    }
+
+    /**
+     * 所有切换期间最长的一帧
+     * @return 纳秒
+     */
+    public long getMaxFrameNanos() {
+        return mTotalMaxFrameNanos;
+    }
+
+    /**
+     * 清空累计的统计，正在进行的监听不受影响
+     */
+    public void reset() {
+        mTransitionCount = 0;
+        mTotalFrames = 0;
+        mTotalLongFrames = 0;
+        mTotalMissedVsyncs = 0;
+        mTotalMaxFrameNanos = 0;
+    }
+
+    /**
+     * 输出累计的统计
+     * @param writer PrintWriter
+     */
+    public void dump(PrintWriter writer) {
+        writer.println(String.format(Locale.US, "transitions=%d frames=%d long_frames=%d missed_vsyncs=%d max_frame=%.1fms",
+                mTransitionCount, mTotalFrames, mTotalLongFrames, mTotalMissedVsyncs, mTotalMaxFrameNanos / 1e6));
+        writer.flush();
+    }
+
+    /**
+     * 设置vsync周期，通常为屏幕刷新率的倒数
+     * @param refreshRate 每秒帧数，不大于0时忽略
+     */
+    void setRefreshRate(float refreshRate) {
+        if (refreshRate > 0) {
+            mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+        }
+    }
+
+    /**
+     * 开始一次切换，如果已经在监听中，延长监听的时间
+     */
+    void arm() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+            return;
+
+        // 和Choreographer的帧时间使用同一个时钟
+        long now = System.nanoTime();
+        mSettleNanos = now + SETTLE_MILLIS * 1000000L;
+        if (isArmed)
+            return;
+
+        isArmed = true;
+        mLastFrameNanos = now;
+        mFrames = 0;
+        mLongFrames = 0;
+        mMissedVsyncs = 0;
+        mMaxFrameNanos = 0;
+        postFrame();
+    }
+
+    /**
+     * 切换期间发生了布局，还没有稳定
+     */
+    void notifyLayout() {
+        if (isArmed) {
+            mSettleNanos = Math.max(mSettleNanos, System.nanoTime() + SETTLE_MILLIS * 1000000L);
+        }
+    }
+
+    /**
+     * 停止监听，不回调
+     */
+    void disarm() {
+        if (!isArmed)
+            return;
+
+        isArmed = false;
+        removeFrame();
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        if (!isArmed)
+            return;
+
+        long interval = frameTimeNanos - mLastFrameNanos;
+        mLastFrameNanos = frameTimeNanos;
+        if (interval > 0) {
+            mFrames++;
+            if (interval > mMaxFrameNanos) {
+                mMaxFrameNanos = interval;
+            }
+            if (interval * 2 > mFrameIntervalNanos * 3) {
+                mLongFrames++;
+            }
+            // 四舍五入为vsync个数，减去本来就要等待的一个
+            long vsyncs = (interval + mFrameIntervalNanos / 2) / mFrameIntervalNanos;
+            if (vsyncs > 1) {
+                mMissedVsyncs += vsyncs - 1;
+            }
+        }
+
+        if (frameTimeNanos < mSettleNanos) {
+            postFrame();
+            return;
+        }
+
+        isArmed = false;
+        mTransitionCount++;
+        mTotalFrames += mFrames;
+        mTotalLongFrames += mLongFrames;
+        mTotalMissedVsyncs += mMissedVsyncs;
+        mTotalMaxFrameNanos = Math.max(mTotalMaxFrameNanos, mMaxFrameNanos);
+        if (mListener != null) {
+            mListener.onTransitionSettled(mFrames, mLongFrames, mMissedVsyncs, mMaxFrameNanos);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrame() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new TheFrameCallback();
+        }
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrame() {
+        if (mFrameCallback != null) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class TheFrameCallback implements Choreographer.FrameCallback {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            FrameJankMonitor.this.doFrame(frameTimeNanos);
+        }
+    }
+
+    /**
+     * 一次切换稳定后的回调，在主线程中调用
+     */
+    public interface OnJankListener {
+        /**
+         * @param frames 切换期间的帧数
+         * @param longFrames 超过1.5个vsync周期的帧数
+         * @param missedVsyncs 错过的vsync个数
+         * @param maxFrameNanos 最长的一帧，纳秒
+         */
+        void onTransitionSettled(int frames, int longFrames, int missedVsyncs, long maxFrameNanos);
+    }
+}
@@ -0,0 +1,148 @@
+package com.missmess.emotionkeyboard;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+import java.util.ArrayList;
+
+/**
+ * 键盘弹出收起时逐帧移动底部布局的过渡动画。
+ * <p>
+ * 键盘弹出收起时，只通过translationY移动输入栏和表情布局，每一帧都在 {@link Choreographer} 的回调中
+ * 更新，不会触发任何measure/layout。结束时先执行结束动作（比如隐藏过渡view），再把所有view的translationY
+ * 复位为0，两者在同一帧生效，画面不会跳动。
+ * <p>
+ * 位移不是测量出来的：API 30以下窗口只在键盘开始移动时调整一次大小，拿不到键盘每一帧的位置，这里用固定的
+ * 时长和插值器近似系统键盘窗口的动画。动画从第一次检测到键盘变化的时间开始计算（见 {@link #start(ArrayList,
+ * float, float, Runnable, long)}），等待状态稳定的时间不会让动画落后于键盘；但和键盘真实的动画曲线仍然可能有偏差。
+ * <p>
+ * API 16以下没有Choreographer，或者时长设为0时，不做动画，直接跳到结束状态。
+ *
+ * @author wl
+ * @since 2018/02/08 11:15
+ */
+class ImeTransition {
+    /** 默认时长，接近系统输入法窗口的动画时长 */
+    static final long DEFAULT_DURATION = 250L;
+
+    private final ArrayList<View> mTargets = new ArrayList<>();
+    private final Interpolator mInterpolator = new DecelerateInterpolator(1.5f);
+    private long mDurationNanos = DEFAULT_DURATION * 1000000L;
+    private TheFrameCallback mFrameCallback;
+    private float mFromOffset;
+    private float mToOffset;
+    private long mStartTimeNanos;
+    // 动画的起始时间，uptimeMillis，-1代表从第一帧开始
+    private long mStartUptimeMillis;
+    private Runnable mEndAction;
+    private boolean isRunning;
+
+    /**
+     * 设置动画时长
+     * @param duration 毫秒，0代表不做动画
+     */
+    void setDuration(long duration) {
+        mDurationNanos = duration * 1000000L;
+    }
+
+    /**
+     * 开始一次过渡。如果有正在进行的过渡，会先直接跳到它的结束状态。
+     * @param targets 需要移动的view，会被复制，调用后可以复用
+     * @param fromOffset 开始时的translationY
+     * @param toOffset 结束时的translationY
+     * @param endAction 结束时、translationY复位之前执行，可以为null
+     * @param startUptimeMillis 键盘开始移动的时间（{@link android.os.SystemClock#uptimeMillis()}），第一帧会跳到
+     *                          这个时间之后的位置；已经超过时长时直接结束。-1代表从第一帧开始
+     */
+    void start(ArrayList<View> targets, float fromOffset, float toOffset, Runnable endAction,
+               long startUptimeMillis) {
+        finish();
+
+        mTargets.addAll(targets);
+        mFromOffset = fromOffset;
+        mToOffset = toOffset;
+        mEndAction = endAction;
+        isRunning = true;
+
+        if (mDurationNanos <= 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            finish();
+            return;
+        }
+
+        applyOffset(fromOffset);
+        mStartTimeNanos = -1;
+        mStartUptimeMillis = startUptimeMillis;
+        postFrame();
+    }
+
+    /**
+     * 直接跳到结束状态
+     */
+    void finish() {
+        if (!isRunning)
+            return;
+
+        isRunning = false;
+        removeFrame();
+        Runnable endAction = mEndAction;
+        mEndAction = null;
+        if (endAction != null) {
+            endAction.run();
+        }
+        applyOffset(0);
+        mTargets.clear();
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        if (!isRunning)
+            return;
+
+        if (mStartTimeNanos < 0) {
+            // frameTimeNanos和uptimeMillis是同一个时间基准
+            mStartTimeNanos = mStartUptimeMillis >= 0
+                    ? Math.min(frameTimeNanos, mStartUptimeMillis * 1000000L) : frameTimeNanos;
+        }
+        float fraction = (float) (frameTimeNanos - mStartTimeNanos) / mDurationNanos;
+        if (fraction >= 1f) {
+            finish();
+            return;
+        }
+
+        float offset = mFromOffset + (mToOffset - mFromOffset) * mInterpolator.getInterpolation(fraction);
+        applyOffset(offset);
+        postFrame();
+    }
+
+    private void applyOffset(float offset) {
+        for (int i = 0; i < mTargets.size(); i++) {
+            mTargets.get(i).setTranslationY(offset);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrame() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new TheFrameCallback();
+        }
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrame() {
+        if (mFrameCallback != null) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class TheFrameCallback implements Choreographer.FrameCallback {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            ImeTransition.this.doFrame(frameTimeNanos);
+        }
+    }
+}
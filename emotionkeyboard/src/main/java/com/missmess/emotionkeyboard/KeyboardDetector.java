@@ -0,0 +1,46 @@
+package com.missmess.emotionkeyboard;
+
+/**
+ * 软键盘高度的检测策略。{@link KeyboardInfo} 通过它来获取当前键盘的高度，并在键盘可能发生变化时
+ * 得到通知。
+ * <p>
+ * 默认使用 {@link DisplayFrameKeyboardDetector}；API 21以上可以使用 {@link WindowInsetsKeyboardDetector}，
+ * 直接从WindowInsets中获取精确的键盘高度。
+ *
+ * @author wl
+ * @since 2018/02/02 16:30
+ */
+public interface KeyboardDetector {
+    /**
+     * 开始检测，键盘可能发生变化时调用callback
+     * @param callback Callback
+     */
+    void start(Callback callback);
+
+    /**
+     * 停止检测
+     */
+    void stop();
+
+    /**
+     * 当前的环境是否可以检测到键盘高度，比如adjustNothing模式下无法检测
+     * @return true - 可以
+     */
+    boolean isAvailable();
+
+    /**
+     * 获取当前的键盘高度
+     * @return 键盘没有打开或者无法获取时返回0
+     */
+    int detectKeyboardHeight();
+
+    /**
+     * 键盘可能发生变化时的回调
+     */
+    interface Callback {
+        /**
+         * 键盘可能发生变化了，需要重新调用 {@link #detectKeyboardHeight()} 获取高度
+         */
+        void onKeyboardMayChanged();
+    }
+}
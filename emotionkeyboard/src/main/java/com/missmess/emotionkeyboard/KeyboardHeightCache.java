@@ -0,0 +1,77 @@
+package com.missmess.emotionkeyboard;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按 {@link KeyboardHeightKey} 保存的键盘高度，超过容量时淘汰最近最少使用的。
+ * <p>
+ * 不依赖Android framework，也不是线程安全的，由 {@link KeyboardHeightStore} 在自己的锁中使用。
+ *
+ * @author wl
+ * @since 2018/06/18 10:20
+ */
+final class KeyboardHeightCache {
+    private final LinkedHashMap<String, Integer> mHeights;
+
+    /**
+     * @param capacity 最多保存的个数
+     */
+    KeyboardHeightCache(final int capacity) {
+        // 按访问顺序排列，最近使用的在最后
+        mHeights = new LinkedHashMap<String, Integer>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 获取key对应的高度，同时更新访问顺序
+     * @param key key
+     * @return 没有保存过返回0
+     */
+    int get(String key) {
+        Integer height = mHeights.get(key);
+        return height != null ? height : 0;
+    }
+
+    /**
+     * 保存key对应的高度
+     * @param key key
+     * @param height 高度
+     * @return 值是否改变了
+     */
+    boolean put(String key, int height) {
+        // get同时更新了访问顺序
+        Integer old = mHeights.get(key);
+        if (old != null && old == height)
+            return false;
+
+        mHeights.put(key, height);
+        return true;
+    }
+
+    int size() {
+        return mHeights.size();
+    }
+
+    void clear() {
+        mHeights.clear();
+    }
+
+    /**
+     * 按最近使用的顺序复制所有数据，最近使用的在最后
+     * @param keys 长度至少为 {@link #size()}
+     * @param heights 长度至少为 {@link #size()}
+     */
+    void copyTo(String[] keys, int[] heights) {
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : mHeights.entrySet()) {
+            keys[i] = entry.getKey();
+            heights[i] = entry.getValue();
+            i++;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.missmess.emotionkeyboard;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.provider.Settings;
+
+/**
+ * 键盘高度缓存的key。同一个输入法在横屏、竖屏、分屏以及不同的显示大小下高度都不一样，切换输入法高度也会
+ * 改变，所以键盘高度按照 屏幕方向 × 输入法包名 × 显示大小和密度 × 分屏档位 分别保存。
+ * <p>
+ * key是一个字符串，配置没有改变时总是返回同一个实例，可以直接比较引用。输入法只有在键盘弹出后才能确定，
+ * 由调用者通过 {@link #refreshInputMethod()} 重新读取。
+ *
+ * @author wl
+ * @since 2018/05/21 15:40
+ */
+final class KeyboardHeightKey {
+    /** 分屏时按照窗口高度分档的大小，dp */
+    private static final int MULTI_WINDOW_BUCKET_DP = 100;
+
+    private final Activity mActivity;
+    private String mInputMethod;
+    private int mOrientation;
+    private int mSmallestWidthDp;
+    private int mDensityDpi;
+    // 0代表没有分屏，否则为窗口高度的档位 + 1
+    private int mMultiWindowBucket;
+    // 上次查询分屏状态时的窗口大小，进入、退出分屏时窗口大小一定会改变
+    private int mScreenWidthDp = -1;
+    private int mScreenHeightDp = -1;
+    private boolean isInMultiWindow;
+    private String mKey;
+
+    KeyboardHeightKey(Activity activity) {
+        mActivity = activity;
+    }
+
+    /**
+     * 当前配置下的key
+     * @return key
+     */
+    String get() {
+        if (mInputMethod == null) {
+            mInputMethod = readInputMethod();
+        }
+
+        Configuration config = mActivity.getResources().getConfiguration();
+        int densityDpi = mActivity.getResources().getDisplayMetrics().densityDpi;
+        int multiWindowBucket = isInMultiWindowMode(config) ? config.screenHeightDp / MULTI_WINDOW_BUCKET_DP + 1 : 0;
+        if (mKey == null || config.orientation != mOrientation || config.smallestScreenWidthDp != mSmallestWidthDp
+                || densityDpi != mDensityDpi || multiWindowBucket != mMultiWindowBucket) {
+            mOrientation = config.orientation;
+            mSmallestWidthDp = config.smallestScreenWidthDp;
+            mDensityDpi = densityDpi;
+            mMultiWindowBucket = multiWindowBucket;
+            mKey = mOrientation + "|" + mInputMethod + "|" + mSmallestWidthDp + "@" + mDensityDpi
+                    + "|" + mMultiWindowBucket;
+        }
+        return mKey;
+    }
+
+    /**
+     * 重新读取当前的输入法，在键盘弹出或者高度改变时调用
+     */
+    void refreshInputMethod() {
+        String inputMethod = readInputMethod();
+        if (!inputMethod.equals(mInputMethod)) {
+            mInputMethod = inputMethod;
+            mKey = null;
+        }
+    }
+
+    private String readInputMethod() {
+        // 格式为 包名/服务类名，只需要包名
+        String id = Settings.Secure.getString(mActivity.getContentResolver(), Settings.Secure.DEFAULT_INPUT_METHOD);
+        if (id == null)
+            return "";
+
+        int slash = id.indexOf('/');
+        return slash >= 0 ? id.substring(0, slash) : id;
+    }
+
+    /**
+     * 是否处于分屏模式。查询需要跨进程调用，每次切换表情布局都会获取key，所以只在窗口大小改变时重新查询
+     * @return boolean
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private boolean isInMultiWindowMode(Configuration config) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N)
+            return false;
+
+        if (config.screenWidthDp != mScreenWidthDp || config.screenHeightDp != mScreenHeightDp) {
+            mScreenWidthDp = config.screenWidthDp;
+            mScreenHeightDp = config.screenHeightDp;
+            isInMultiWindow = mActivity.isInMultiWindowMode();
+        }
+        return isInMultiWindow;
+    }
+}
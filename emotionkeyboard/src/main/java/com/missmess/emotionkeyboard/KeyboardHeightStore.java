@@ -0,0 +1,346 @@
+package com.missmess.emotionkeyboard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * 键盘高度以及最近使用的emoji（{@link RecentEmojis}）的持久化存储，进程内唯一。
+ * <p>
+ * 内存中保存最新的数据，只有值真正改变时才标记为脏数据，并延迟 {@link #WRITE_DELAY_MILLIS} 毫秒
+ * 在后台线程合并写入。一段时间内的多次改变只会写一次文件。
+ * <p>
+ * 键盘高度按照 {@link KeyboardHeightKey} 分别保存，最多保存 {@link #MAX_KEYED_HEIGHTS} 个，超过时淘汰最近
+ * 最少使用的。旧版本只保存了一个高度，读取后作为没有对应key时的默认值。
+ * <p>
+ * 文件格式为紧凑的二进制：4字节魔数 + 4字节版本 + 4字节高度值，版本2之后再加上4字节长度 + 最近使用的
+ * emoji数据，版本3之后再加上4字节个数 + 按最近使用顺序排列的（key + 4字节高度）。每个进程只在第一次访问时
+ * 读取一次。如果文件不存在，会尝试从旧版本的SharedPreferences中迁移数据。
+ *
+ * @author wl
+ * @since 2018/01/15 10:20
+ */
+class KeyboardHeightStore {
+    private static final String TAG = "KeyboardHeightStore";
+    private static final String FILE_NAME = "emotion_keyboard_height.bin";
+    private static final int FILE_MAGIC = 0x454b4850; // "EKHP"
+    private static final int FILE_VERSION = 3;
+    // 旧版本使用的SharedPreferences
+    private static final String SHARE_PREFERENCE_NAME = "EmotionKeyboard";
+    private static final String SHARE_PREFERENCE_SOFT_INPUT_HEIGHT = "soft_input_height";
+    /** 合并写入的延迟时间 */
+    static final long WRITE_DELAY_MILLIS = 500L;
+    /** 最多保存的键盘高度个数 */
+    static final int MAX_KEYED_HEIGHTS = 16;
+    private static final int MSG_WRITE = 1;
+    // 正常的文件只有几KB，超过这个大小的认为已经损坏
+    private static final long MAX_FILE_LENGTH = 256 * 1024;
+
+    private static KeyboardHeightStore sInstance;
+
+    private final Context mContext;
+    private final File mFile;
+    private final Object mLock = new Object();
+    // 写文件的锁，写文件时不持有mLock，防止阻塞主线程的读写
+    private final Object mWriteLock = new Object();
+    private Handler mWriteHandler;
+    private boolean isLoaded;
+    private boolean isDirty;
+    // 旧版本保存的高度
+    private int mHeight;
+    private final KeyboardHeightCache mKeyedHeights = new KeyboardHeightCache(MAX_KEYED_HEIGHTS);
+    // 文件中读取的最近使用的emoji数据，由RecentEmojis解析
+    private byte[] mRecentsData;
+    private RecentEmojis mRecents;
+    private int mWriteCount;
+
+    static KeyboardHeightStore get(Context context) {
+        synchronized (KeyboardHeightStore.class) {
+            if (sInstance == null) {
+                Context appContext = context.getApplicationContext();
+                sInstance = new KeyboardHeightStore(appContext != null ? appContext : context);
+            }
+            return sInstance;
+        }
+    }
+
+    KeyboardHeightStore(Context context) {
+        this(context, new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    KeyboardHeightStore(Context context, File file) {
+        mContext = context;
+        mFile = file;
+    }
+
+    /**
+     * 获取旧版本保存的键盘高度，不区分屏幕方向和输入法
+     * @return 高度，没有保存过返回0
+     */
+    int getHeight() {
+        synchronized (mLock) {
+            ensureLoaded();
+            return mHeight;
+        }
+    }
+
+    /**
+     * 获取key对应的键盘高度
+     * @param key {@link KeyboardHeightKey#get()}
+     * @return 高度，没有保存过返回0
+     */
+    int getHeight(String key) {
+        synchronized (mLock) {
+            ensureLoaded();
+            return mKeyedHeights.get(key);
+        }
+    }
+
+    /**
+     * 保存key对应的键盘高度。值没有改变时什么也不做；改变了则延迟合并写入文件。
+     * @param key {@link KeyboardHeightKey#get()}
+     * @param height 键盘高度
+     */
+    void putHeight(String key, int height) {
+        synchronized (mLock) {
+            ensureLoaded();
+            if (mKeyedHeights.put(key, height)) {
+                markDirty();
+            }
+        }
+    }
+
+    /**
+     * 文件中保存的最近使用的emoji数据
+     * @return 没有保存过返回null
+     */
+    byte[] getRecentsData() {
+        synchronized (mLock) {
+            ensureLoaded();
+            return mRecentsData;
+        }
+    }
+
+    /**
+     * 设置最近使用的emoji，之后写文件时从它获取数据
+     * @param recents RecentEmojis
+     */
+    void setRecents(RecentEmojis recents) {
+        synchronized (mLock) {
+            mRecents = recents;
+        }
+    }
+
+    /**
+     * 最近使用的emoji改变了，延迟合并写入文件
+     */
+    void notifyRecentsChanged() {
+        synchronized (mLock) {
+            ensureLoaded();
+            markDirty();
+        }
+    }
+
+    /**
+     * 立即把未写入的数据写到文件中，会阻塞当前线程。
+     */
+    void flush() {
+        synchronized (mLock) {
+            if (mWriteHandler != null) {
+                mWriteHandler.removeMessages(MSG_WRITE);
+            }
+        }
+        writeIfDirty();
+    }
+
+    /**
+     * 已经写文件的次数
+     * @return int
+     */
+    int getWriteCount() {
+        synchronized (mLock) {
+            return mWriteCount;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (isLoaded)
+            return;
+
+        isLoaded = true;
+        if (mFile.exists()) {
+            readFile();
+        } else {
+            // 从旧版本的SharedPreferences中迁移
+            SharedPreferences sp = mContext.getSharedPreferences(SHARE_PREFERENCE_NAME, Context.MODE_PRIVATE);
+            int oldHeight = sp.getInt(SHARE_PREFERENCE_SOFT_INPUT_HEIGHT, 0);
+            if (oldHeight > 0) {
+                mHeight = oldHeight;
+                isDirty = true;
+                getWriteHandler().sendEmptyMessage(MSG_WRITE);
+                sp.edit().remove(SHARE_PREFERENCE_SOFT_INPUT_HEIGHT).apply();
+            }
+        }
+    }
+
+    private void markDirty() {
+        if (!isDirty) {
+            isDirty = true;
+            getWriteHandler().sendEmptyMessageDelayed(MSG_WRITE, WRITE_DELAY_MILLIS);
+        }
+    }
+
+    private void readFile() {
+        DataInputStream in = null;
+        try {
+            long length = mFile.length();
+            if (length > MAX_FILE_LENGTH)
+                throw new IOException("file too large: " + length);
+
+            // 整个读到内存中，available()就是剩余的字节数，所有长度都要和它比较
+            byte[] data = new byte[(int) length];
+            in = new DataInputStream(new FileInputStream(mFile));
+            in.readFully(data);
+            closeQuietly(in);
+            in = new DataInputStream(new ByteArrayInputStream(data));
+
+            int version;
+            if (in.readInt() != FILE_MAGIC || (version = in.readInt()) < 1 || version > FILE_VERSION) {
+                Log.w(TAG, "unknown format of " + mFile + ", ignored");
+                return;
+            }
+            mHeight = in.readInt();
+            if (version >= 2) {
+                int recentsLength = in.readInt();
+                if (recentsLength < 0 || recentsLength > in.available())
+                    throw new IOException("bad recents length: " + recentsLength);
+                byte[] recents = new byte[recentsLength];
+                in.readFully(recents);
+                mRecentsData = recents;
+            }
+            if (version >= 3) {
+                int count = in.readInt();
+                // 每一项至少有2字节的key长度和4字节的高度
+                if (count < 0 || count > in.available() / 6)
+                    throw new IOException("bad height count: " + count);
+                for (int i = 0; i < count; i++) {
+                    String key = in.readUTF();
+                    mKeyedHeights.put(key, in.readInt());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 文件损坏，丢弃所有读到的数据并删除文件，不能让它在每次启动时都出错
+            Log.w(TAG, "failed to read " + mFile + ", deleted", e);
+            mHeight = 0;
+            mRecentsData = null;
+            mKeyedHeights.clear();
+            closeQuietly(in);
+            in = null;
+            if (!mFile.delete()) {
+                Log.w(TAG, "failed to delete " + mFile);
+            }
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void writeIfDirty() {
+        synchronized (mWriteLock) {
+            int height;
+            byte[] recentsData;
+            RecentEmojis recents;
+            String[] keys;
+            int[] heights;
+            synchronized (mLock) {
+                if (!isDirty)
+                    return;
+
+                isDirty = false;
+                mWriteCount++;
+                height = mHeight;
+                recentsData = mRecentsData;
+                recents = mRecents;
+                keys = new String[mKeyedHeights.size()];
+                heights = new int[keys.length];
+                mKeyedHeights.copyTo(keys, heights);
+            }
+            // RecentEmojis有自己的锁，不在mLock中获取快照
+            if (recents != null) {
+                recentsData = recents.toByteArray();
+            }
+            writeFile(height, recentsData, keys, heights);
+        }
+    }
+
+    private void writeFile(int height, byte[] recentsData, String[] keys, int[] heights) {
+        // 先写临时文件再重命名，防止写一半时进程被杀导致文件损坏
+        File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(tmp));
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(height);
+            if (recentsData != null) {
+                out.writeInt(recentsData.length);
+                out.write(recentsData);
+            } else {
+                out.writeInt(0);
+            }
+            // 按最近使用顺序写入，读取时恢复同样的顺序
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeUTF(keys[i]);
+                out.writeInt(heights[i]);
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile)) {
+                Log.w(TAG, "failed to rename " + tmp + " to " + mFile);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "failed to write " + mFile, e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private Handler getWriteHandler() {
+        if (mWriteHandler == null) {
+            HandlerThread thread = new HandlerThread("EmotionKeyboard-store");
+            thread.start();
+            mWriteHandler = new Handler(thread.getLooper(), new Handler.Callback() {
+                @Override
+                public boolean handleMessage(Message msg) {
+                    if (msg.what == MSG_WRITE) {
+                        writeIfDirty();
+                        return true;
+                    }
+                    return false;
+                }
+            });
+        }
+        return mWriteHandler;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -2,45 +2,72 @@ package com.missmess.emotionkeyboard;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.graphics.Rect;
 import android.os.Build;
-import android.util.DisplayMetrics;
-import android.util.Log;
-import android.view.View;
-import android.view.ViewTreeObserver;
-import android.view.WindowManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
 
 /**
- * 获取键盘高度和状态信息的类。
+ * 获取键盘高度和状态信息的类。键盘高度的检测策略可以通过 {@link #setKeyboardDetector(KeyboardDetector)}
+ * 替换，默认为 {@link DisplayFrameKeyboardDetector}。
+ * <p>
+ * 键盘滑入滑出时每一次布局都会检测一次高度，这些中间状态由 {@link KeyboardStateMachine} 合并：默认在下一帧
+ * 确定状态，也可以通过 {@link #setDispatchDebounce(long)} 设置更长的合并窗口。监听器只会收到稳定的状态，
+ * 键盘显示期间高度的改变通过 {@link OnSoftKeyboardHeightChangeListener} 回调。
+ * <p>
+ * 同一个activity共用一个实例，{@link #startListening()} 和 {@link #stopListening()} 需要成对调用：
+ * 最后一个使用者停止监听后才会真正停止检测。检测策略和合并窗口对所有使用者生效。
  *
  * @author wl
  * @since 2017/11/23 10:50
  */
 public class KeyboardInfo {
-    private static final String SHARE_PREFERENCE_NAME = "EmotionKeyboard";
-    private static final String SHARE_PREFERENCE_SOFT_INPUT_HEIGHT = "soft_input_height";
     private static final int DEFAULT_SOFT_KEYBOARD_HEIGHT = 787;
-    private final TheGlobalLayoutListener mGlobalLayoutListener;
+    private final TheDetectorCallback mDetectorCallback;
 
-    private SharedPreferences mSp;
+    private final KeyboardHeightStore mHeightStore;
     private OnSoftKeyboardChangeListener mListener;
-    private Activity mActivity;
-    private View mDecorView;
-    private boolean isKeyboardShowing;// 键盘是否正在显示，只有isListening=true才有效。
-    private boolean isListening;
+    private final ArrayList<OnSoftKeyboardChangeListener> mListeners = new ArrayList<>();
+    private final ArrayList<OnSoftKeyboardHeightChangeListener> mHeightListeners = new ArrayList<>();
+    private KeyboardDetector mDetector;
+    // 合并后的键盘状态，只有mListeningCount>0才有效。
+    private final KeyboardStateMachine mStateMachine;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mSettleRunnable;
+    private TheFrameCallback mFrameCallback;
+    private long mDebounceMillis = 0;
+    private boolean isSettleScheduled;
+    // 调用startListening但还没有调用stopListening的次数
+    private int mListeningCount;
+    private final KeyboardHeightKey mHeightKey;
     private int mSoftKeyboardHeight = 0;
+    // 测量mSoftKeyboardHeight时的配置
+    private String mSoftKeyboardHeightKey;
 
-    private KeyboardInfo(Activity activity) {
-        mActivity = activity;
-        mDecorView = activity.getWindow().getDecorView();
-        mSp = activity.getSharedPreferences(SHARE_PREFERENCE_NAME, Context.MODE_PRIVATE);
-        mGlobalLayoutListener = new TheGlobalLayoutListener();
+    KeyboardInfo(Activity activity) {
+        mDetector = new DisplayFrameKeyboardDetector(activity);
+        mHeightStore = KeyboardHeightStore.get(activity);
+        mHeightKey = new KeyboardHeightKey(activity);
+        mDetectorCallback = new TheDetectorCallback();
+        mStateMachine = new KeyboardStateMachine(new TheStateCallback());
+        mSettleRunnable = new Runnable() {
+            @Override
+            public void run() {
+                settle();
+            }
+        };
     }
 
+    /**
+     * 获取activity对应的KeyboardInfo。同一个activity总是返回同一个实例，activity销毁时会自动停止监听。
+     * @param activity activity
+     * @return KeyboardInfo
+     */
     public static KeyboardInfo from(Activity activity) {
-        return new KeyboardInfo(activity);
+        return KeyboardInfoRegistry.obtain(activity);
     }
 
     /**
@@ -52,25 +79,131 @@ public class KeyboardInfo {
     }
 
     /**
-     * 开始监听软键盘状态的变化。通常在activity的onResume方法中调用
+     * 添加软键盘状态改变监听器。由于同一个activity共用一个KeyboardInfo，多个使用者需要同时监听时使用这个方法。
+     * @param listener OnSoftKeyboardChangeListener
+     */
+    public void addOnKeyboardChangeListener(OnSoftKeyboardChangeListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    /**
+     * 移除通过 {@link #addOnKeyboardChangeListener(OnSoftKeyboardChangeListener)} 添加的监听器
+     * @param listener OnSoftKeyboardChangeListener
+     */
+    public void removeOnKeyboardChangeListener(OnSoftKeyboardChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 添加键盘高度改变的监听器。键盘一直显示、但是高度改变时回调（比如输入法切换了候选栏）。
+     * @param listener OnSoftKeyboardHeightChangeListener
+     */
+    public void addOnKeyboardHeightChangeListener(OnSoftKeyboardHeightChangeListener listener) {
+        if (!mHeightListeners.contains(listener)) {
+            mHeightListeners.add(listener);
+        }
+    }
+
+    /**
+     * 移除通过 {@link #addOnKeyboardHeightChangeListener(OnSoftKeyboardHeightChangeListener)} 添加的监听器
+     * @param listener OnSoftKeyboardHeightChangeListener
+     */
+    public void removeOnKeyboardHeightChangeListener(OnSoftKeyboardHeightChangeListener listener) {
+        mHeightListeners.remove(listener);
+    }
+
+    /**
+     * 设置合并键盘状态变化的时间窗口。检测到变化后，在这个时间内没有新的变化才回调监听器，窗口内又回到原来
+     * 状态的抖动不会回调。同一个activity中的所有使用者共用这个设置。
+     * @param millis 毫秒，0代表合并同一帧内的变化，在下一帧回调
+     */
+    public void setDispatchDebounce(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("debounce can not be negative");
+        }
+        mDebounceMillis = millis;
+    }
+
+    /**
+     * 设置键盘高度的检测策略。如果正在监听，会用新的策略重新开始监听。同一个activity中的所有使用者共用检测策略，
+     * 可以通过 {@link #getListeningCount()} 判断是否还有其它使用者正在监听。
+     * @param detector KeyboardDetector
+     */
+    public void setKeyboardDetector(KeyboardDetector detector) {
+        if (detector == null) {
+            throw new IllegalArgumentException("detector can not be null");
+        }
+        if (detector == mDetector)
+            return;
+
+        boolean listening = mListeningCount > 0;
+        if (listening) {
+            stopDetecting();
+        }
+        mDetector = detector;
+        if (listening) {
+            mDetector.start(mDetectorCallback);
+        }
+    }
+
+    /**
+     * 获取当前使用的键盘高度检测策略
+     * @return KeyboardDetector
+     */
+    public KeyboardDetector getKeyboardDetector() {
+        return mDetector;
+    }
+
+    /**
+     * 开始监听软键盘状态的变化。通常在activity的onResume方法中调用，每次调用都需要对应一次 {@link #stopListening()}
      */
     public void startListening() {
-        if (isListening)
+        if (mListeningCount++ > 0)
             return;
 
-        isListening = true;
-        mDecorView.getViewTreeObserver().addOnGlobalLayoutListener(mGlobalLayoutListener);
+        mDetector.start(mDetectorCallback);
     }
 
     /**
-     * 停止监听软键盘状态的变化。通常在activity的onPause方法中调用
+     * 停止监听软键盘状态的变化。通常在activity的onPause方法中调用。同一个activity中还有其它使用者正在监听时，
+     * 只是减少一次计数，不会停止检测
      */
     public void stopListening() {
-        if (!isListening)
+        if (mListeningCount == 0)
             return;
 
-        isListening = false;
-        mDecorView.getViewTreeObserver().removeGlobalOnLayoutListener(mGlobalLayoutListener);
+        if (--mListeningCount == 0) {
+            stopDetecting();
+        }
+    }
+
+    /**
+     * 正在监听的使用者数量，即调用 {@link #startListening()} 但还没有调用 {@link #stopListening()} 的次数
+     * @return int
+     */
+    public int getListeningCount() {
+        return mListeningCount;
+    }
+
+    private void stopDetecting() {
+        mDetector.stop();
+        mStateMachine.cancel();
+        cancelSettle();
+    }
+
+    /**
+     * activity销毁时调用，停止监听并移除所有监听器
+     */
+    void detach() {
+        if (mListeningCount > 0) {
+            mListeningCount = 0;
+            stopDetecting();
+        }
+        mListener = null;
+        mListeners.clear();
+        mHeightListeners.clear();
     }
 
     /**
@@ -79,17 +212,26 @@ public class KeyboardInfo {
      * <ol>
      *     <li>如果调用了 {@link #startListening()} 后并且打开过键盘，就总能获取到最后一次打开的
      *     键盘的高度，并返回。没有调用 {@link #startListening()} 或者没打开过键盘，看第2步。</li>
-     *     <li>如果当前键盘正打开着，将会直接获取到该键盘高度。如果没有打开键盘，看第3步</li>
-     *     <li>直接获取缓存中的键盘高度值，这个缓存数值是最后一次成功获取到的键盘高度。如果还是没
+     *     <li>如果本进程中其它界面测量到过键盘高度，直接返回这个高度，不做任何测量。没有看第3步。</li>
+     *     <li>如果当前键盘正打开着，将会直接获取到该键盘高度。如果没有打开键盘，看第4步</li>
+     *     <li>直接获取缓存中的键盘高度值，这个缓存数值是监听时最后一次键盘稳定后的高度。如果还是没
      *     有值，则会取默认值 {@link #DEFAULT_SOFT_KEYBOARD_HEIGHT}。</li>
      * </ol>
+     * 第1、2、4步都只使用和当前配置（屏幕方向、输入法、显示大小、分屏）相同时测量到的高度，见
+     * {@link KeyboardHeightKey}。
      * @return 键盘高度
      */
     public int getSoftKeyboardHeight() {
-        if (mSoftKeyboardHeight > 0) {
+        String key = mHeightKey.get();
+        if (mSoftKeyboardHeight > 0 && key.equals(mSoftKeyboardHeightKey)) {
             return mSoftKeyboardHeight;
         }
 
+        int sharedHeight = KeyboardInfoRegistry.getLastKeyboardHeight(key);
+        if (sharedHeight > 0) {
+            return sharedHeight;
+        }
+
         int keyboardHeight = getSoftInputHeightInternal();
         if (keyboardHeight > 0) {
             return keyboardHeight;
@@ -98,130 +240,172 @@ public class KeyboardInfo {
         return getCachedKeyboardHeight();
     }
 
+    /**
+     * 最后一次键盘状态或者高度的变化第一次被检测到的时间。回调监听器之前要先等变化稳定（下一帧或者合并窗口），
+     * 过渡动画从这个时间开始计算，才不会因为这段等待落后于键盘。
+     * @return {@link SystemClock#uptimeMillis()}，没有检测到过变化返回-1
+     */
+    long getKeyboardChangeUptime() {
+        return mStateMachine.getSettledSince();
+    }
+
     /**
      * 键盘是否正在显示。
      * @return
      */
     public boolean isKeyboardShowing() {
-        if (isListening) {
-            return isKeyboardShowing;
+        if (mListeningCount > 0) {
+            return mStateMachine.isShowing();
         } else {
             return getSoftInputHeightInternal() != 0;
         }
     }
 
-    private void globalLayoutChanged() {
-        if (!checkSoftInputModeAvailable())
+    private void keyboardMayChanged() {
+        if (!mDetector.isAvailable())
             return;
 
-        int softInputHeight = getSoftInputHeightInternal();
-        if (softInputHeight > 0) { //取到了键盘高度
-            if (!isKeyboardShowing) {
-                mSoftKeyboardHeight = softInputHeight;
-                isKeyboardShowing = true;
-
-                if (mListener != null) {
-                    mListener.onSoftKeyboardStateChanged(true, softInputHeight);
-                }
-            }
+        // 中间高度只交给状态机，稳定之后才保存和回调
+        long dueTime = mStateMachine.onHeightSampled(mDetector.detectKeyboardHeight(),
+                SystemClock.uptimeMillis(), mDebounceMillis);
+        if (dueTime < 0) {
+            cancelSettle();
         } else {
-            if (isKeyboardShowing) {
-                isKeyboardShowing = false;
+            scheduleSettle(dueTime);
+        }
+    }
 
-                if (mListener != null) {
-                    mListener.onSoftKeyboardStateChanged(false, 0);
-                }
+    private void scheduleSettle(long dueTime) {
+        if (mDebounceMillis == 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // 同一帧内的变化只需要一次回调
+            if (!isSettleScheduled) {
+                isSettleScheduled = true;
+                postFrame();
             }
+            return;
+        }
+
+        isSettleScheduled = true;
+        mHandler.removeCallbacks(mSettleRunnable);
+        mHandler.postAtTime(mSettleRunnable, dueTime);
+    }
+
+    private void cancelSettle() {
+        if (!isSettleScheduled)
+            return;
+
+        isSettleScheduled = false;
+        mHandler.removeCallbacks(mSettleRunnable);
+        if (mFrameCallback != null) {
+            removeFrame();
+        }
+    }
+
+    private void settle() {
+        isSettleScheduled = false;
+        mStateMachine.settle(SystemClock.uptimeMillis());
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrame() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new TheFrameCallback();
         }
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
     }
 
-    private boolean checkSoftInputModeAvailable() {
-        int softInputMode = mActivity.getWindow().getAttributes().softInputMode;
-        if ((softInputMode & WindowManager.LayoutParams.SOFT_INPUT_ADJUST_NOTHING)
-                == WindowManager.LayoutParams.SOFT_INPUT_ADJUST_NOTHING) {
-            // 当前模式activity为adjustNothing模式
-            Log.w("KeyboardInfo", "softInputMode of this activity contains adjustNothing, can not " +
-                    "obtain height of soft-keyboard");
-            return false;
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrame() {
+        Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+    }
+
+    private void dispatchKeyboardStateChanged(boolean shown, int height) {
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onSoftKeyboardStateChanged(shown, height);
+        }
+        if (mListener != null) {
+            mListener.onSoftKeyboardStateChanged(shown, height);
         }
-        return true;
     }
 
     /**
      * 尝试直接获取软键盘的高度，如果不大于0代表当前软键盘没有打开或者未取到。大于0则取到了正确
      * 的键盘高度。
+     * <p>
+     * 只测量不保存：键盘动画过程中测量到的是中间高度，只有状态机稳定后的高度才会保存，见
+     * {@link #onKeyboardHeightSettled(int)}。
      * @return >0 或者 == 0
      */
     private int getSoftInputHeightInternal() {
-        Rect r = new Rect();
-        /*
-         * decorView是window中的最顶层view，可以从window中通过getDecorView获取到decorView。
-         * 通过decorView获取到程序显示的区域，包括标题栏，但不包括状态栏。
-         */
-        mDecorView.getWindowVisibleDisplayFrame(r);
-        // 获取屏幕的高度
-        int screenHeight = mDecorView.getRootView().getHeight();
-        // 计算软键盘的高度
-        int softInputHeight = screenHeight - r.bottom;
-
-        /*
-         * 某些Android版本下，没有显示软键盘时减出来的高度总是144，而不是零，
-         * 这是因为高度是包括了虚拟按键栏的(例如华为系列)，所以在API Level高于20时，
-         * 我们需要减去底部虚拟按键栏的高度（如果有的话）
-         */
-        if (Build.VERSION.SDK_INT >= 20) {
-            // When SDK Level >= 20 (Android L), the softInputHeight will contain the height of softButtonsBar (if has)
-            softInputHeight = softInputHeight - getSoftButtonsBarHeight();
-        }
+        return mDetector.detectKeyboardHeight();
+    }
 
-        if (softInputHeight < 0) {
-            softInputHeight = 0;
-            Log.w("KeyboardInfo", "Warning: value of softInputHeight is below zero!");
-        }
+    private void saveKeyboardHeightCache(String key, int softInputHeight) {
+        // 高度没变时不会写文件，变了也会延迟合并写入
+        mHeightStore.putHeight(key, softInputHeight);
+    }
 
-        if (softInputHeight > 0) {
-            // 缓存一下
-            saveKeyboardHeightCache(softInputHeight);
-        }
-        return softInputHeight;
+    /**
+     * 键盘弹出或者高度改变后，记录新的高度
+     * @param height 键盘高度
+     */
+    private void onKeyboardHeightSettled(int height) {
+        // 键盘弹出之后才能确定当前的输入法
+        mHeightKey.refreshInputMethod();
+        String key = mHeightKey.get();
+        mSoftKeyboardHeight = height;
+        mSoftKeyboardHeightKey = key;
+        saveKeyboardHeightCache(key, height);
+        KeyboardInfoRegistry.setLastKeyboardHeight(key, height);
     }
 
     /**
-     * 底部虚拟导航按键栏的高度
+     * 获取软键盘高度，由于第一次直接弹出表情时会出现小问题，787是一个均值，作为临时解决方案。当前配置下
+     * 没有保存过时，使用旧版本保存的高度。
      * @return int
      */
-    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
-    private int getSoftButtonsBarHeight() {
-        DisplayMetrics metrics = new DisplayMetrics();
-        //这个方法获取可能不是真实屏幕的高度
-        mActivity.getWindowManager().getDefaultDisplay().getMetrics(metrics);
-        int usableHeight = metrics.heightPixels;
-        //获取当前屏幕的真实高度
-        mActivity.getWindowManager().getDefaultDisplay().getRealMetrics(metrics);
-        int realHeight = metrics.heightPixels;
-        if (realHeight > usableHeight) {
-            return realHeight - usableHeight;
-        } else {
-            return 0;
+    private int getCachedKeyboardHeight(){
+        int height = mHeightStore.getHeight(mHeightKey.get());
+        if (height <= 0) {
+            height = mHeightStore.getHeight();
         }
+        return height > 0 ? height : DEFAULT_SOFT_KEYBOARD_HEIGHT;
     }
 
-    private void saveKeyboardHeightCache(int softInputHeight) {
-        mSp.edit().putInt(SHARE_PREFERENCE_SOFT_INPUT_HEIGHT, softInputHeight).apply();
+    private void dispatchKeyboardHeightChanged(int oldHeight, int newHeight) {
+        for (int i = 0; i < mHeightListeners.size(); i++) {
+            mHeightListeners.get(i).onSoftKeyboardHeightChanged(oldHeight, newHeight);
+        }
     }
 
-    /**
-     * 获取软键盘高度，由于第一次直接弹出表情时会出现小问题，787是一个均值，作为临时解决方案
-     * @return int
-     */
-    private int getCachedKeyboardHeight(){
-        return mSp.getInt(SHARE_PREFERENCE_SOFT_INPUT_HEIGHT, DEFAULT_SOFT_KEYBOARD_HEIGHT);
+    private class TheDetectorCallback implements KeyboardDetector.Callback {
+        @Override
+        public void onKeyboardMayChanged() {
+            keyboardMayChanged();
+        }
     }
 
-    private class TheGlobalLayoutListener implements ViewTreeObserver.OnGlobalLayoutListener {
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class TheFrameCallback implements Choreographer.FrameCallback {
         @Override
-        public void onGlobalLayout() {
-            globalLayoutChanged();
+        public void doFrame(long frameTimeNanos) {
+            settle();
+        }
+    }
+
+    private class TheStateCallback implements KeyboardStateMachine.Callback {
+        @Override
+        public void onKeyboardStateChanged(boolean shown, int height) {
+            if (shown) {
+                onKeyboardHeightSettled(height);
+            }
+            dispatchKeyboardStateChanged(shown, height);
+        }
+
+        @Override
+        public void onKeyboardHeightChanged(int oldHeight, int newHeight) {
+            onKeyboardHeightSettled(newHeight);
+            dispatchKeyboardHeightChanged(oldHeight, newHeight);
         }
     }
 
@@ -236,4 +420,16 @@ public class KeyboardInfo {
          */
         void onSoftKeyboardStateChanged(boolean shown, int height);
     }
+
+    /**
+     * 键盘显示期间高度改变的监听器，键盘弹出和收起仍然通过 {@link OnSoftKeyboardChangeListener} 回调。
+     */
+    public interface OnSoftKeyboardHeightChangeListener {
+        /**
+         * 键盘高度改变时回调
+         * @param oldHeight 之前的键盘高度
+         * @param newHeight 现在的键盘高度
+         */
+        void onSoftKeyboardHeightChanged(int oldHeight, int newHeight);
+    }
 }
@@ -0,0 +1,125 @@
+package com.missmess.emotionkeyboard;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * 进程内共享的 {@link KeyboardInfo} 注册表。
+ * <p>
+ * 同一个activity（以及其中的fragment）共用一个 {@link KeyboardInfo} 实例，因此也共用同一份键盘状态。
+ * 所有实例共享最后一次测量到的键盘高度，新打开的界面在同样的配置（{@link KeyboardHeightKey}）下不需要任何
+ * 测量就能拿到正确的键盘高度。键盘的显示状态属于获得焦点的窗口，由每个activity各自检测，不在窗口之间共享。
+ * <p>
+ * 只持有activity和 {@link KeyboardInfo} 的弱引用，不会导致内存泄漏。activity销毁时会自动停止监听，
+ * 并移除监听器。
+ *
+ * @author wl
+ * @since 2018/01/22 14:05
+ */
+final class KeyboardInfoRegistry {
+    private static final WeakHashMap<Activity, WeakReference<KeyboardInfo>> sInfos = new WeakHashMap<>();
+    private static Application sApplication;
+    // 最后一次测量到的键盘高度以及测量时的配置，所有窗口共享
+    private static final Object sHeightLock = new Object();
+    private static String sLastKeyboardHeightKey;
+    private static int sLastKeyboardHeight;
+
+    private KeyboardInfoRegistry() {
+    }
+
+    /**
+     * 获取activity对应的KeyboardInfo，没有则创建一个
+     * @param activity activity
+     * @return KeyboardInfo
+     */
+    static KeyboardInfo obtain(Activity activity) {
+        synchronized (sInfos) {
+            WeakReference<KeyboardInfo> ref = sInfos.get(activity);
+            KeyboardInfo info = ref != null ? ref.get() : null;
+            if (info == null) {
+                info = new KeyboardInfo(activity);
+                sInfos.put(activity, new WeakReference<>(info));
+                registerLifecycleCallbacks(activity);
+            }
+            return info;
+        }
+    }
+
+    /**
+     * 最后一次测量到的键盘高度，可能是其它界面测量的
+     * @param key 当前的配置，{@link KeyboardHeightKey#get()}
+     * @return 没有测量过，或者最后一次测量时的配置不同，返回0
+     */
+    static int getLastKeyboardHeight(String key) {
+        synchronized (sHeightLock) {
+            return key.equals(sLastKeyboardHeightKey) ? sLastKeyboardHeight : 0;
+        }
+    }
+
+    static void setLastKeyboardHeight(String key, int height) {
+        if (height > 0) {
+            synchronized (sHeightLock) {
+                sLastKeyboardHeightKey = key;
+                sLastKeyboardHeight = height;
+            }
+        }
+    }
+
+    private static void registerLifecycleCallbacks(Activity activity) {
+        if (sApplication != null)
+            return;
+
+        Application application = activity.getApplication();
+        if (application == null)
+            return;
+
+        sApplication = application;
+        application.registerActivityLifecycleCallbacks(new TheLifecycleCallbacks());
+    }
+
+    private static void onActivityDestroyed(Activity activity) {
+        KeyboardInfo info;
+        synchronized (sInfos) {
+            WeakReference<KeyboardInfo> ref = sInfos.remove(activity);
+            info = ref != null ? ref.get() : null;
+        }
+        if (info != null) {
+            info.detach();
+        }
+    }
+
+    private static class TheLifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            KeyboardInfoRegistry.onActivityDestroyed(activity);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.missmess.emotionkeyboard;
+
+/**
+ * 把检测到的一连串键盘高度合并为稳定的键盘状态。
+ * <p>
+ * 键盘滑入的过程中每一次布局都会产生一个中间高度；有些输入法切换候选栏或者悬浮模式时，会在很短的时间内报告
+ * 显示、隐藏、再显示。这里只记录最新的高度，等到一个合并窗口内没有新的变化时才确定状态：状态真正改变时回调
+ * {@link Callback#onKeyboardStateChanged(boolean, int)}，键盘一直显示但高度改变（比如候选栏变高）时回调
+ * {@link Callback#onKeyboardHeightChanged(int, int)}，窗口内又回到原来状态的抖动不会产生任何回调。
+ * <p>
+ * 时间由调用者传入，不依赖Android framework，可以用合成的高度序列直接驱动。
+ *
+ * @author wl
+ * @since 2018/05/14 11:20
+ */
+final class KeyboardStateMachine {
+    /** 连续变化时，最多推迟合并窗口的这个倍数，防止一直不能确定状态 */
+    private static final int MAX_WAIT_FACTOR = 3;
+
+    private final Callback mCallback;
+    private boolean isShowing;
+    // 最后一次确定的键盘高度，隐藏后仍然保留
+    private int mHeight;
+    private boolean hasPending;
+    private int mPendingHeight;
+    private long mPendingSince;
+    private long mDueTime;
+    // 最后一次确定的变化第一次被检测到的时间
+    private long mSettledSince = -1;
+
+    KeyboardStateMachine(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * 检测到一个键盘高度
+     * @param height 键盘高度，0代表没有显示
+     * @param now 当前时间，毫秒
+     * @param window 合并窗口，毫秒，0代表在下一次 {@link #settle(long)} 时确定
+     * @return 应该调用 {@link #settle(long)} 的时间，-1代表没有需要确定的变化
+     */
+    long onHeightSampled(int height, long now, long window) {
+        if (isStable(height)) {
+            // 回到了原来的状态，丢弃中间的变化
+            hasPending = false;
+            return -1;
+        }
+
+        if (!hasPending) {
+            hasPending = true;
+            mPendingSince = now;
+        }
+        mPendingHeight = height;
+        mDueTime = Math.min(now + window, mPendingSince + window * MAX_WAIT_FACTOR);
+        return mDueTime;
+    }
+
+    /**
+     * 确定状态，时间没到时什么也不做
+     * @param now 当前时间，毫秒
+     * @return 是否回调了变化
+     */
+    boolean settle(long now) {
+        if (!hasPending || now < mDueTime)
+            return false;
+
+        hasPending = false;
+        int height = mPendingHeight;
+        boolean showing = height > 0;
+        if (showing != isShowing || (showing && height != mHeight)) {
+            mSettledSince = mPendingSince;
+        }
+        if (showing != isShowing) {
+            isShowing = showing;
+            if (showing) {
+                mHeight = height;
+            }
+            mCallback.onKeyboardStateChanged(showing, showing ? height : 0);
+            return true;
+        }
+        if (showing && height != mHeight) {
+            int oldHeight = mHeight;
+            mHeight = height;
+            mCallback.onKeyboardHeightChanged(oldHeight, height);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 是否有还没确定的变化
+     */
+    boolean hasPending() {
+        return hasPending;
+    }
+
+    /**
+     * 丢弃还没确定的变化，停止监听时调用
+     */
+    void cancel() {
+        hasPending = false;
+    }
+
+    boolean isShowing() {
+        return isShowing;
+    }
+
+    /**
+     * 最后一次确定的变化（状态或者高度）第一次被检测到的时间，即键盘开始移动的时间。在回调中调用时是这次变化的时间
+     * @return 毫秒，没有确定过变化返回-1
+     */
+    long getSettledSince() {
+        return mSettledSince;
+    }
+
+    /**
+     * 最后一次确定的键盘高度
+     * @return 没有显示过返回0
+     */
+    int getHeight() {
+        return mHeight;
+    }
+
+    private boolean isStable(int height) {
+        return isShowing ? height == mHeight : height <= 0;
+    }
+
+    interface Callback {
+        void onKeyboardStateChanged(boolean shown, int height);
+
+        void onKeyboardHeightChanged(int oldHeight, int newHeight);
+    }
+}
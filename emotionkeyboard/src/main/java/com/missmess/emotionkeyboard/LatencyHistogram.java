@@ -0,0 +1,154 @@
+package com.missmess.emotionkeyboard;
+
+/**
+ * 固定桶的延迟直方图，记录时不分配内存。
+ * <p>
+ * 和HdrHistogram一样按照2的幂分段，每段再等分为 {@link #SUB_BUCKET_COUNT} 个桶，所以任何值的相对误差都不超过
+ * 1/{@link #SUB_BUCKET_COUNT}。内部以微秒为单位记录，最大约35分钟，超过的记为最大值。
+ * <p>
+ * 不是线程安全的，只能在同一个线程中记录和读取。
+ *
+ * @author wl
+ * @since 2018/05/28 10:30
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    /** 每个2的幂分段中桶的个数 */
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_MICROS = Integer.MAX_VALUE;
+    static final int BUCKET_COUNT = bucketIndex(MAX_MICROS) + 1;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotalCount;
+    private long mTotalMicros;
+    private long mMinMicros = Long.MAX_VALUE;
+    private long mMaxMicros;
+
+    /**
+     * 记录一个延迟
+     * @param nanos 纳秒，小于0的忽略
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            return;
+
+        long micros = Math.min(nanos / 1000, MAX_MICROS);
+        mCounts[bucketIndex(micros)]++;
+        mTotalCount++;
+        mTotalMicros += micros;
+        if (micros < mMinMicros) {
+            mMinMicros = micros;
+        }
+        if (micros > mMaxMicros) {
+            mMaxMicros = micros;
+        }
+    }
+
+    /**
+     * 记录的个数
+     * @return long
+     */
+    public long getCount() {
+        return mTotalCount;
+    }
+
+    /**
+     * 最小值
+     * @return 纳秒，没有记录时返回0
+     */
+    public long getMinNanos() {
+        return mTotalCount == 0 ? 0 : mMinMicros * 1000;
+    }
+
+    /**
+     * 最大值
+     * @return 纳秒，没有记录时返回0
+     */
+    public long getMaxNanos() {
+        return mMaxMicros * 1000;
+    }
+
+    /**
+     * 平均值
+     * @return 纳秒，没有记录时返回0
+     */
+    public long getMeanNanos() {
+        return mTotalCount == 0 ? 0 : mTotalMicros * 1000 / mTotalCount;
+    }
+
+    /**
+     * 百分位的值，例如p95传入95
+     * @param percentile 0 - 100
+     * @return 纳秒，为所在桶的上界（不超过最大值），没有记录时返回0
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0)
+            return 0;
+
+        double p = Math.min(Math.max(percentile, 0), 100);
+        long target = Math.max(1, (long) Math.ceil(p / 100 * mTotalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= target) {
+                long upper = bucketLowerBound(i + 1) - 1;
+                return Math.max(Math.min(upper, mMaxMicros), mMinMicros) * 1000;
+            }
+        }
+        return mMaxMicros * 1000;
+    }
+
+    /**
+     * 把另一个直方图的数据加到这个直方图中
+     * @param other LatencyHistogram
+     */
+    public void add(LatencyHistogram other) {
+        if (other.mTotalCount == 0)
+            return;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        mTotalCount += other.mTotalCount;
+        mTotalMicros += other.mTotalMicros;
+        mMinMicros = Math.min(mMinMicros, other.mMinMicros);
+        mMaxMicros = Math.max(mMaxMicros, other.mMaxMicros);
+    }
+
+    /**
+     * 清空所有记录
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mTotalCount = 0;
+        mTotalMicros = 0;
+        mMinMicros = Long.MAX_VALUE;
+        mMaxMicros = 0;
+    }
+
+    /**
+     * 值所在的桶：小于SUB_BUCKET_COUNT的每个值一个桶，之后每个2的幂分段SUB_BUCKET_COUNT个桶
+     */
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKET_COUNT)
+            return (int) micros;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) ((micros >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * 桶的下界，微秒
+     */
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long sub = index % SUB_BUCKET_COUNT;
+        return (SUB_BUCKET_COUNT + sub) << shift;
+    }
+}
@@ -0,0 +1,213 @@
+package com.missmess.emotionkeyboard;
+
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * 调试用的布局次数统计，通过 {@link EmojiconKeyBoard.Builder#layoutPassTracker(LayoutPassTracker)} 设置后生效，
+ * 没有设置时不会有任何开销。
+ * <p>
+ * 统计根布局、内容布局、填充布局以及各个表情布局的layout次数。每次layout都归因到触发它的库调用：
+ * {@link EmojiconKeyBoard} 的公开方法和键盘回调开始一个“操作”，操作本身以及操作引起的二次修改（比如固定
+ * 根布局高度）都会记为下一次布局的原因。没有库调用触发的布局（比如系统因为键盘调整窗口大小）单独计数，不算在
+ * 操作中。一个操作让同一个view布局超过一次时，输出警告并回调 {@link OnRelayoutListener}。
+ * <p>
+ * measure没有可以监听的回调，不做统计；layout通过 {@link View.OnLayoutChangeListener} 统计，一次遍历通过
+ * {@link ViewTreeObserver.OnGlobalLayoutListener} 划分。只能在主线程使用。
+ *
+ * @author wl
+ * @since 2018/06/11 10:45
+ */
+public class LayoutPassTracker {
+    private static final String TAG = "LayoutPassTracker";
+
+    private final ArrayList<View> mViews = new ArrayList<>();
+    private final ArrayList<String> mViewNames = new ArrayList<>();
+    // 当前操作中每个view由库调用引起的layout次数
+    private int[] mPassCounts = new int[4];
+    private final TheLayoutListener mLayoutListener = new TheLayoutListener();
+    private OnRelayoutListener mListener;
+    private ViewTreeObserver mObserver;
+    private String mAction;
+    private int mActionDepth;
+    // 下一次遍历的原因，以及当前遍历的原因
+    private String mNextCause;
+    private String mTraversalCause;
+    private boolean isInTraversal;
+    private int mActionCount;
+    private int mLayoutPassCount;
+    private int mSystemLayoutPassCount;
+    private int mRelayoutCount;
+
+    /**
+     * 设置一个操作引起多次布局时的回调
+     * @param listener OnRelayoutListener
+     */
+    public void setOnRelayoutListener(OnRelayoutListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 统计过的操作个数
+     * @return int
+     */
+    public int getActionCount() {
+        return mActionCount;
+    }
+
+    /**
+     * 库调用引起的layout次数
+     * @return int
+     */
+    public int getLayoutPassCount() {
+        return mLayoutPassCount;
+    }
+
+    /**
+     * 不是库调用引起的layout次数
+     * @return int
+     */
+    public int getSystemLayoutPassCount() {
+        return mSystemLayoutPassCount;
+    }
+
+    /**
+     * 一个操作让同一个view布局超过一次的次数
+     * @return int
+     */
+    public int getRelayoutCount() {
+        return mRelayoutCount;
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        mActionCount = 0;
+        mLayoutPassCount = 0;
+        mSystemLayoutPassCount = 0;
+        mRelayoutCount = 0;
+        Arrays.fill(mPassCounts, 0);
+    }
+
+    /**
+     * 统计一个view的layout次数，第一个view所在的窗口用于划分遍历
+     * @param view view
+     * @param name 输出时使用的名称
+     */
+    void track(View view, String name) {
+        if (mViews.contains(view))
+            return;
+
+        mViews.add(view);
+        mViewNames.add(name);
+        if (mPassCounts.length < mViews.size()) {
+            mPassCounts = Arrays.copyOf(mPassCounts, mViews.size() * 2);
+        }
+        view.addOnLayoutChangeListener(mLayoutListener);
+        if (mObserver == null) {
+            mObserver = view.getViewTreeObserver();
+            mObserver.addOnGlobalLayoutListener(mLayoutListener);
+        }
+    }
+
+    /**
+     * 停止统计
+     */
+    void untrackAll() {
+        for (int i = 0; i < mViews.size(); i++) {
+            mViews.get(i).removeOnLayoutChangeListener(mLayoutListener);
+        }
+        mViews.clear();
+        mViewNames.clear();
+        if (mObserver != null && mObserver.isAlive()) {
+            mObserver.removeGlobalOnLayoutListener(mLayoutListener);
+        }
+        mObserver = null;
+    }
+
+    /**
+     * 开始一个操作，需要和 {@link #endAction()} 成对调用。操作中调用的其它操作算作同一个操作。
+     * @param action 操作名称，比如 "showEmotionLayout"
+     */
+    void beginAction(String action) {
+        if (mActionDepth++ > 0)
+            return;
+
+        mAction = action;
+        mActionCount++;
+        Arrays.fill(mPassCounts, 0);
+        noteCause(action);
+    }
+
+    void endAction() {
+        if (mActionDepth > 0) {
+            mActionDepth--;
+        }
+    }
+
+    /**
+     * 库调用修改了布局，记为下一次遍历的原因
+     * @param cause 原因
+     */
+    void noteCause(String cause) {
+        mNextCause = cause;
+    }
+
+    private void onLayout(View view) {
+        if (!isInTraversal) {
+            isInTraversal = true;
+            mTraversalCause = mNextCause;
+            mNextCause = null;
+        }
+        if (mTraversalCause == null || mAction == null) {
+            mSystemLayoutPassCount++;
+            return;
+        }
+
+        mLayoutPassCount++;
+        int index = mViews.indexOf(view);
+        int passes = ++mPassCounts[index];
+        if (passes > 1) {
+            mRelayoutCount++;
+            String name = mViewNames.get(index);
+            Log.w(TAG, mAction + " caused " + passes + " layout passes of " + name
+                    + ", the last one by " + mTraversalCause);
+            if (mListener != null) {
+                mListener.onRelayout(mAction, name, passes, mTraversalCause);
+            }
+        }
+    }
+
+    private class TheLayoutListener implements View.OnLayoutChangeListener, ViewTreeObserver.OnGlobalLayoutListener {
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                   int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            onLayout(v);
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            // 一次遍历结束
+            isInTraversal = false;
+            mTraversalCause = null;
+        }
+    }
+
+    /**
+     * 一个操作让同一个view布局超过一次时的回调
+     */
+    public interface OnRelayoutListener {
+        /**
+         * @param action 操作名称
+         * @param view view的名称，比如 "root"、"content"、"panel#0"
+         * @param passes 这个操作中这个view的layout次数
+         * @param cause 最后一次layout的原因
+         */
+        void onRelayout(String action, String view, int passes, String cause);
+    }
+}
@@ -0,0 +1,59 @@
+package com.missmess.emotionkeyboard;
+
+import android.content.ComponentCallbacks2;
+import android.view.View;
+
+/**
+ * 表情布局的生命周期，由 {@link EmojiconKeyBoard} 分发。表情布局本身实现这个接口，或者通过
+ * {@link EmojiconKeyBoard.Builder#panelLifecycle(int, PanelLifecycle)} 注册，就会收到回调。
+ * <p>
+ * 相比 {@link EmojiconKeyBoard.OnEmotionLayoutStateChangeListener}，这里能区分表情布局是真正显示在屏幕上
+ * （{@link #onPanelVisible(View, int)}），还是被键盘挡住、只作为键盘弹出时的占位（
+ * {@link #onPanelTransit(View, int)}），还是完全不可见（{@link #onPanelHidden(View, int)}）。宿主activity
+ * 进入后台时表情布局也会收到hidden，回到前台时恢复。表情包动画、图片加载、定时器等应该只在visible时运行。
+ * <p>
+ * 状态没有改变时不会重复回调。所有回调都在主线程。
+ *
+ * @author wl
+ * @since 2018/05/07 16:30
+ */
+public interface PanelLifecycle {
+    /**
+     * 表情布局创建了，延迟创建的表情布局在第一次显示或者空闲预创建时回调
+     * @param panel 表情布局
+     * @param index 表情布局的位置
+     */
+    void onPanelCreated(View panel, int index);
+
+    /**
+     * 表情布局attach到窗口
+     */
+    void onPanelAttached(View panel, int index);
+
+    /**
+     * 表情布局从窗口detach，之后可能被放回 {@link PanelPool}
+     */
+    void onPanelDetached(View panel, int index);
+
+    /**
+     * 表情布局显示在屏幕上
+     */
+    void onPanelVisible(View panel, int index);
+
+    /**
+     * 键盘弹出时，表情布局留在键盘下面作为占位，用户看不到，键盘收起后变为hidden
+     */
+    void onPanelTransit(View panel, int index);
+
+    /**
+     * 表情布局完全不可见，或者宿主activity进入了后台
+     */
+    void onPanelHidden(View panel, int index);
+
+    /**
+     * 应该释放可以重建的资源，比如解码的位图
+     * @param level {@link ComponentCallbacks2} 中的TRIM_MEMORY_*，宿主activity stop时为
+     * {@link ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN}
+     */
+    void onPanelTrimmed(View panel, int index, int level);
+}
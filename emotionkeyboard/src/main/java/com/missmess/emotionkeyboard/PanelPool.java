@@ -0,0 +1,247 @@
+package com.missmess.emotionkeyboard;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * 进程内共享的表情布局缓存池。
+ * <p>
+ * 用户经常在多个聊天界面之间切换，每个界面都要重新inflate同样的表情布局。缓存池按照layout资源id和宽度
+ * 保存已经inflate并measure过的表情布局，新的界面可以直接取出使用，界面关闭时再放回池中。
+ * <p>
+ * 表情布局使用 {@link MutableContextWrapper} 来inflate，放回池中时context切换为application，取出时
+ * 再切换为新的activity，不会泄漏activity。
+ * <p>
+ * 池的大小有限制，超出时丢弃最早放入的；系统内存紧张时（{@link ComponentCallbacks2#onTrimMemory(int)}）
+ * 会释放缓存。
+ *
+ * @author wl
+ * @since 2018/02/26 15:40
+ */
+public final class PanelPool {
+    /** 默认最多缓存的表情布局个数 */
+    private static final int DEFAULT_MAX_SIZE = 6;
+    /** 同一个layout和宽度最多缓存的个数 */
+    private static final int MAX_SIZE_PER_KEY = 2;
+
+    private static PanelPool sInstance;
+
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+    private int mMaxSize = DEFAULT_MAX_SIZE;
+    private Context mAppContext;
+    private int mHitCount;
+    private int mMissCount;
+
+    private PanelPool() {
+    }
+
+    /**
+     * 获取进程内唯一的缓存池
+     * @return PanelPool
+     */
+    public static PanelPool get() {
+        synchronized (PanelPool.class) {
+            if (sInstance == null) {
+                sInstance = new PanelPool();
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * 设置最多缓存的表情布局个数，超出的会被丢弃
+     * @param maxSize 0代表不缓存
+     */
+    public void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * 取出一个表情布局，池中没有则inflate一个新的。只能在主线程调用。
+     * @param activity 表情布局要显示在的activity
+     * @param layoutResId layout资源id
+     * @param parent 表情布局要添加到的parent，用于生成LayoutParams，不会添加到parent中
+     * @return 没有parent的表情布局
+     */
+    public View acquire(Activity activity, int layoutResId, ViewGroup parent) {
+        attachApplication(activity);
+        int width = getPanelWidth(activity, parent);
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            Entry entry = mEntries.get(i);
+            if (entry.layoutResId == layoutResId && entry.width == width) {
+                mEntries.remove(i);
+                mHitCount++;
+                ((MutableContextWrapper) entry.view.getContext()).setBaseContext(activity);
+                return entry.view;
+            }
+        }
+
+        mMissCount++;
+        return inflate(activity, layoutResId, parent);
+    }
+
+    /**
+     * 把表情布局放回池中，会把它从parent中移除。表情布局必须是通过 {@link #acquire(Activity, int, ViewGroup)}
+     * 取出的。
+     * @param layoutResId layout资源id
+     * @param panel 表情布局
+     */
+    public void release(int layoutResId, View panel) {
+        ViewGroup parent = (ViewGroup) panel.getParent();
+        if (parent != null) {
+            parent.removeView(panel);
+        }
+        if (!(panel.getContext() instanceof MutableContextWrapper) || mMaxSize <= 0)
+            return;
+
+        // 复位切换时设置的属性
+        panel.setTranslationY(0);
+        panel.setVisibility(View.VISIBLE);
+        ((MutableContextWrapper) panel.getContext()).setBaseContext(mAppContext);
+
+        int width = panel.getWidth();
+        int sameKeyCount = 0;
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            Entry entry = mEntries.get(i);
+            if (entry.layoutResId == layoutResId && entry.width == width) {
+                sameKeyCount++;
+            }
+        }
+        if (sameKeyCount >= MAX_SIZE_PER_KEY)
+            return;
+
+        mEntries.add(new Entry(layoutResId, width, panel));
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * 在主线程空闲时提前inflate并measure表情布局放入池中，之后的 {@link #acquire(Activity, int, ViewGroup)}
+     * 可以直接取出。
+     * @param activity activity
+     * @param layoutResId layout资源id
+     * @param height 表情布局的高度，通常为键盘高度 {@link KeyboardInfo#getSoftKeyboardHeight()}
+     * @param count 需要准备的个数
+     */
+    public void preload(final Activity activity, final int layoutResId, final int height, final int count) {
+        attachApplication(activity);
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            private int created;
+
+            @Override
+            public boolean queueIdle() {
+                if (activity.isFinishing() || created >= count)
+                    return false;
+
+                int width = activity.getResources().getDisplayMetrics().widthPixels;
+                View panel = inflate(activity, layoutResId, null);
+                panel.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+                panel.layout(0, 0, width, height);
+                release(layoutResId, panel);
+                created++;
+                return created < count;
+            }
+        });
+    }
+
+    /**
+     * 释放所有缓存的表情布局
+     */
+    public void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * 当前缓存的表情布局个数
+     * @return int
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * 从池中取到表情布局的次数
+     * @return int
+     */
+    public int hitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * 池中没有，需要重新inflate的次数
+     * @return int
+     */
+    public int missCount() {
+        return mMissCount;
+    }
+
+    private View inflate(Activity activity, int layoutResId, ViewGroup parent) {
+        MutableContextWrapper context = new MutableContextWrapper(activity);
+        LayoutInflater inflater = activity.getLayoutInflater().cloneInContext(context);
+        return inflater.inflate(layoutResId, parent, false);
+    }
+
+    private static int getPanelWidth(Activity activity, ViewGroup parent) {
+        if (parent != null && parent.getWidth() > 0) {
+            return parent.getWidth();
+        }
+        return activity.getResources().getDisplayMetrics().widthPixels;
+    }
+
+    private void trimToSize(int maxSize) {
+        while (mEntries.size() > maxSize) {
+            mEntries.remove(0);
+        }
+    }
+
+    private void attachApplication(Activity activity) {
+        if (mAppContext != null)
+            return;
+
+        mAppContext = activity.getApplicationContext();
+        mAppContext.registerComponentCallbacks(new TheTrimCallbacks());
+    }
+
+    private class TheTrimCallbacks implements ComponentCallbacks2 {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                clear();
+            } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW) {
+                trimToSize(mEntries.size() / 2);
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            clear();
+        }
+    }
+
+    private static class Entry {
+        final int layoutResId;
+        final int width;
+        final View view;
+
+        Entry(int layoutResId, int width, View view) {
+            this.layoutResId = layoutResId;
+            this.width = width;
+            this.view = view;
+        }
+    }
+}
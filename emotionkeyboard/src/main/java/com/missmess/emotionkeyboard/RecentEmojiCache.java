@@ -0,0 +1,329 @@
+package com.missmess.emotionkeyboard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * {@link RecentEmojis} 的数据部分：固定容量的LRU以及随时间衰减的使用频率。
+ * <p>
+ * 所有数据保存在基本类型数组中，以数组下标组成双向链表，id到下标的映射是开放寻址的int哈希表，
+ * {@link #touch(int)} 的时间复杂度为O(1)，不分配内存。
+ * <p>
+ * 不依赖Android framework，也不是线程安全的，由 {@link RecentEmojis} 在自己的锁中使用。
+ *
+ * @author wl
+ * @since 2018/06/25 11:00
+ */
+final class RecentEmojiCache {
+    /** 每次使用其它emoji后，频率衰减的比例 */
+    private static final float DECAY = 0.95f;
+    private static final int DATA_VERSION = 1;
+    // 序列化后每一项的字节数：id + 分数 + 最后使用时间
+    private static final int ENTRY_BYTES = 12;
+    private static final int NONE = -1;
+
+    private final int mCapacity;
+    // 以下数组以槽位为下标
+    private final int[] mIds;
+    private final float[] mScores;
+    private final int[] mLastTouch;
+    private final int[] mPrev;
+    private final int[] mNext;
+    // id到槽位的哈希表，保存槽位+1，0代表空
+    private final int[] mTable;
+    private final int mMask;
+    private int mHead = NONE;
+    private int mTail = NONE;
+    private int mSize;
+    // 每次touch加一，用于计算频率衰减
+    private int mClock;
+    // 排序用的临时数组
+    private float[] mSortScores;
+
+    /**
+     * @param capacity 最多保存的个数
+     */
+    RecentEmojiCache(int capacity) {
+        mCapacity = capacity;
+        mIds = new int[capacity];
+        mScores = new float[capacity];
+        mLastTouch = new int[capacity];
+        mPrev = new int[capacity];
+        mNext = new int[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        mTable = new int[tableSize];
+        mMask = tableSize - 1;
+    }
+
+    /**
+     * 使用了一个emoji，移到最前面并增加使用频率。已满时淘汰最久没有使用的。
+     * @param id emoji id
+     */
+    void touch(int id) {
+        touchInternal(id, 1f);
+    }
+
+    /**
+     * 删除一个emoji
+     * @param id emoji id
+     * @return 是否存在
+     */
+    boolean remove(int id) {
+        int pos = findPosition(id);
+        if (mTable[pos] == 0)
+            return false;
+
+        int slot = mTable[pos] - 1;
+        removeFromTable(pos);
+        unlink(slot);
+        // 把最后一个槽位移到空出的位置，保持槽位连续
+        int last = mSize - 1;
+        if (slot != last) {
+            moveSlot(last, slot);
+        }
+        mSize--;
+        return true;
+    }
+
+    boolean contains(int id) {
+        return mTable[findPosition(id)] != 0;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * 按最近使用的顺序获取emoji
+     * @param out 输出数组，长度不够时只输出前面的
+     * @return 输出的个数
+     */
+    int getRecent(int[] out) {
+        int count = 0;
+        for (int slot = mHead; slot != NONE && count < out.length; slot = mNext[slot]) {
+            out[count++] = mIds[slot];
+        }
+        return count;
+    }
+
+    /**
+     * 按衰减后的使用频率从高到低获取emoji，频率相同的最近使用的在前
+     * @param out 输出数组，长度不够时只输出前面的
+     * @return 输出的个数
+     */
+    int getRanked(int[] out) {
+        if (mSortScores == null) {
+            mSortScores = new float[mCapacity];
+        }
+        float[] scores = mSortScores;
+        int limit = Math.min(out.length, mSize);
+        int count = 0;
+        // 按最近使用的顺序遍历，插入排序只移动频率更低的，频率相同时最近使用的在前
+        for (int slot = mHead; slot != NONE && limit > 0; slot = mNext[slot]) {
+            float score = decayedScore(slot);
+            if (count == limit) {
+                if (score <= scores[limit - 1])
+                    continue;
+                count--;
+            }
+            int i = count - 1;
+            while (i >= 0 && scores[i] < score) {
+                scores[i + 1] = scores[i];
+                out[i + 1] = out[i];
+                i--;
+            }
+            scores[i + 1] = score;
+            out[i + 1] = mIds[slot];
+            count++;
+        }
+        return count;
+    }
+
+    void clear() {
+        for (int i = 0; i < mTable.length; i++) {
+            mTable[i] = 0;
+        }
+        mHead = NONE;
+        mTail = NONE;
+        mSize = 0;
+        mClock = 0;
+    }
+
+    /**
+     * 序列化：版本、时钟、个数，然后按最近使用的顺序保存每个emoji的id、频率和最后使用的时钟
+     */
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + mSize * ENTRY_BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(DATA_VERSION);
+            out.writeInt(mClock);
+            out.writeInt(mSize);
+            for (int slot = mHead; slot != NONE; slot = mNext[slot]) {
+                out.writeInt(mIds[slot]);
+                out.writeFloat(mScores[slot]);
+                out.writeInt(mLastTouch[slot]);
+            }
+        } catch (IOException e) {
+            // 内存中写入不会出错
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 读取 {@link #toByteArray()} 的数据，数据损坏时丢弃
+     */
+    void load(byte[] data) {
+        if (data == null || data.length == 0)
+            return;
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            if (in.readInt() != DATA_VERSION)
+                return;
+
+            int clock = in.readInt();
+            int count = in.readInt();
+            // 每一项12字节，个数和剩余的字节数对不上就是数据损坏
+            if (count < 0 || count > in.available() / ENTRY_BYTES)
+                return;
+
+            int[] ids = new int[count];
+            float[] scores = new float[count];
+            int[] lastTouch = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readInt();
+                scores[i] = in.readFloat();
+                lastTouch[i] = in.readInt();
+            }
+            // 从最久的开始插入，恢复原来的顺序
+            for (int i = count - 1; i >= 0; i--) {
+                mClock = lastTouch[i];
+                touchInternal(ids[i], 0f);
+                int slot = mTable[findPosition(ids[i])] - 1;
+                mScores[slot] = scores[i];
+            }
+            mClock = clock;
+        } catch (IOException | RuntimeException e) {
+            // 数据损坏，丢弃
+        }
+    }
+
+    private void touchInternal(int id, float increment) {
+        int pos = findPosition(id);
+        int slot;
+        if (mTable[pos] != 0) {
+            slot = mTable[pos] - 1;
+            mScores[slot] = decayedScore(slot) + increment;
+            unlink(slot);
+        } else {
+            if (mSize < mCapacity) {
+                slot = mSize++;
+            } else {
+                // 淘汰最久没有使用的
+                slot = mTail;
+                removeFromTable(findPosition(mIds[slot]));
+                unlink(slot);
+                pos = findPosition(id);
+            }
+            mIds[slot] = id;
+            mScores[slot] = increment;
+            mTable[pos] = slot + 1;
+        }
+        mLastTouch[slot] = mClock++;
+        linkFirst(slot);
+    }
+
+    private float decayedScore(int slot) {
+        int elapsed = mClock - mLastTouch[slot];
+        return elapsed <= 0 ? mScores[slot] : mScores[slot] * (float) Math.pow(DECAY, elapsed);
+    }
+
+    /**
+     * 哈希表中id所在的位置，不存在时返回应该插入的空位置
+     */
+    private int findPosition(int id) {
+        int pos = hash(id) & mMask;
+        while (mTable[pos] != 0 && mIds[mTable[pos] - 1] != id) {
+            pos = (pos + 1) & mMask;
+        }
+        return pos;
+    }
+
+    /**
+     * 线性探测的删除：把后面探测链上的元素向前移动，不需要墓碑标记
+     */
+    private void removeFromTable(int pos) {
+        mTable[pos] = 0;
+        int hole = pos;
+        int next = (pos + 1) & mMask;
+        while (mTable[next] != 0) {
+            int home = hash(mIds[mTable[next] - 1]) & mMask;
+            // home不在(hole, next]之间时，可以移到hole
+            boolean between = hole <= next ? (home > hole && home <= next) : (home > hole || home <= next);
+            if (!between) {
+                mTable[hole] = mTable[next];
+                mTable[next] = 0;
+                hole = next;
+            }
+            next = (next + 1) & mMask;
+        }
+    }
+
+    private void moveSlot(int from, int to) {
+        mIds[to] = mIds[from];
+        mScores[to] = mScores[from];
+        mLastTouch[to] = mLastTouch[from];
+        mPrev[to] = mPrev[from];
+        mNext[to] = mNext[from];
+        if (mPrev[to] != NONE) {
+            mNext[mPrev[to]] = to;
+        } else {
+            mHead = to;
+        }
+        if (mNext[to] != NONE) {
+            mPrev[mNext[to]] = to;
+        } else {
+            mTail = to;
+        }
+        mTable[findPosition(mIds[to])] = to + 1;
+    }
+
+    private void unlink(int slot) {
+        int prev = mPrev[slot];
+        int next = mNext[slot];
+        if (prev != NONE) {
+            mNext[prev] = next;
+        } else {
+            mHead = next;
+        }
+        if (next != NONE) {
+            mPrev[next] = prev;
+        } else {
+            mTail = prev;
+        }
+    }
+
+    private void linkFirst(int slot) {
+        mPrev[slot] = NONE;
+        mNext[slot] = mHead;
+        if (mHead != NONE) {
+            mPrev[mHead] = slot;
+        } else {
+            mTail = slot;
+        }
+        mHead = slot;
+    }
+
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,131 @@
+package com.missmess.emotionkeyboard;
+
+import android.content.Context;
+
+/**
+ * 最近使用的emoji，进程内唯一，通过 {@link #get(Context)} 获取。
+ * <p>
+ * emoji以int id表示，由使用者决定含义，比如 {@link com.missmess.emotionkeyboard.emoji.EmojiCatalog} 中的
+ * 位置，或者单个code point的emoji直接使用code point。
+ * <p>
+ * 固定容量的LRU（{@link RecentEmojiCache}），{@link #touch(int)} 的时间复杂度为O(1)，不分配内存。除了使用
+ * 顺序，还记录随时间衰减的使用频率，{@link #getRanked(int[])} 按频率排序，常用的emoji不会因为偶尔用了几个
+ * 别的就被挤到后面。
+ * <p>
+ * 和键盘高度保存在同一个文件中，改变后在后台线程延迟合并写入，连续点击多个emoji只会写一次文件。
+ * <p>
+ * 方法都是线程安全的。
+ *
+ * @author wl
+ * @since 2018/04/16 10:40
+ */
+public class RecentEmojis {
+    /** 默认容量 */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private static RecentEmojis sInstance;
+
+    private final KeyboardHeightStore mStore;
+    private final RecentEmojiCache mCache;
+
+    /**
+     * 获取进程内唯一的实例，第一次调用时从文件中读取
+     * @param context context
+     * @return RecentEmojis
+     */
+    public static RecentEmojis get(Context context) {
+        synchronized (RecentEmojis.class) {
+            if (sInstance == null) {
+                KeyboardHeightStore store = KeyboardHeightStore.get(context);
+                sInstance = new RecentEmojis(store, DEFAULT_CAPACITY);
+                sInstance.load(store.getRecentsData());
+                store.setRecents(sInstance);
+            }
+            return sInstance;
+        }
+    }
+
+    RecentEmojis(KeyboardHeightStore store, int capacity) {
+        mStore = store;
+        mCache = new RecentEmojiCache(capacity);
+    }
+
+    /**
+     * 使用了一个emoji，移到最前面并增加使用频率。已满时淘汰最久没有使用的。
+     * @param id emoji id
+     */
+    public void touch(int id) {
+        synchronized (this) {
+            mCache.touch(id);
+        }
+        if (mStore != null) {
+            mStore.notifyRecentsChanged();
+        }
+    }
+
+    /**
+     * 删除一个emoji
+     * @param id emoji id
+     * @return 是否存在
+     */
+    public boolean remove(int id) {
+        synchronized (this) {
+            if (!mCache.remove(id))
+                return false;
+        }
+        if (mStore != null) {
+            mStore.notifyRecentsChanged();
+        }
+        return true;
+    }
+
+    public synchronized boolean contains(int id) {
+        return mCache.contains(id);
+    }
+
+    public synchronized int size() {
+        return mCache.size();
+    }
+
+    public int getCapacity() {
+        return mCache.getCapacity();
+    }
+
+    /**
+     * 按最近使用的顺序获取emoji
+     * @param out 输出数组，长度不够时只输出前面的
+     * @return 输出的个数
+     */
+    public synchronized int getRecent(int[] out) {
+        return mCache.getRecent(out);
+    }
+
+    /**
+     * 按衰减后的使用频率从高到低获取emoji，频率相同的最近使用的在前
+     * @param out 输出数组，长度不够时只输出前面的
+     * @return 输出的个数
+     */
+    public synchronized int getRanked(int[] out) {
+        return mCache.getRanked(out);
+    }
+
+    /**
+     * 清空
+     */
+    public void clear() {
+        synchronized (this) {
+            mCache.clear();
+        }
+        if (mStore != null) {
+            mStore.notifyRecentsChanged();
+        }
+    }
+
+    synchronized byte[] toByteArray() {
+        return mCache.toByteArray();
+    }
+
+    synchronized void load(byte[] data) {
+        mCache.load(data);
+    }
+}
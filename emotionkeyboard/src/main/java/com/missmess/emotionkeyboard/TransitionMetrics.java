@@ -0,0 +1,199 @@
+package com.missmess.emotionkeyboard;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * 表情布局和软键盘切换的延迟统计，通过 {@link EmojiconKeyBoard.Builder#transitionMetrics(TransitionMetrics)}
+ * 设置后生效，没有设置时不会有任何开销。
+ * <p>
+ * 每种切换分别记录到一个 {@link LatencyHistogram} 中：
+ * <ul>
+ *     <li>{@link #TRANSITION_PANEL_SHOW}：点击表情按钮，到表情布局第一次绘制</li>
+ *     <li>{@link #TRANSITION_KEYBOARD_SHOW}：点击编辑框或者调用 {@link EmojiconKeyBoard#showSoftKeyboard()}，
+ *     到键盘完全弹出、输入栏的过渡动画结束</li>
+ *     <li>{@link #TRANSITION_KEYBOARD_HIDE}：调用 {@link EmojiconKeyBoard#hideSoftKeyboard()}，到键盘收起、
+ *     填充位置隐藏</li>
+ * </ul>
+ * 时间使用 {@link SystemClock#elapsedRealtimeNanos()}（API 17以下精度为毫秒）。每次切换完成后回调
+ * {@link OnTransitionListener}，也可以通过 {@link #getHistogram(int)} 或者 {@link #dump(PrintWriter)} 读取
+ * p50/p95/p99。只能在主线程使用。
+ *
+ * @author wl
+ * @since 2018/05/28 11:10
+ */
+public class TransitionMetrics {
+    public static final int TRANSITION_PANEL_SHOW = 0;
+    public static final int TRANSITION_KEYBOARD_SHOW = 1;
+    public static final int TRANSITION_KEYBOARD_HIDE = 2;
+    static final int TRANSITION_COUNT = 3;
+    private static final String[] TRANSITION_NAMES = {"panel_show", "keyboard_show", "keyboard_hide"};
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[TRANSITION_COUNT];
+    // 正在进行的切换的开始时间，-1代表没有
+    private final long[] mStartNanos = new long[TRANSITION_COUNT];
+    private final TheDrawWatcher[] mDrawWatchers = new TheDrawWatcher[TRANSITION_COUNT];
+    private OnTransitionListener mListener;
+
+    public TransitionMetrics() {
+        for (int i = 0; i < TRANSITION_COUNT; i++) {
+            mHistograms[i] = new LatencyHistogram();
+            mStartNanos[i] = -1;
+        }
+    }
+
+    /**
+     * 设置每次切换完成时的回调
+     * @param listener OnTransitionListener
+     */
+    public void setOnTransitionListener(OnTransitionListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 获取一种切换的延迟直方图
+     * @param transition {@link #TRANSITION_PANEL_SHOW} 等
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getHistogram(int transition) {
+        return mHistograms[transition];
+    }
+
+    /**
+     * 切换的名称，用于输出
+     * @param transition {@link #TRANSITION_PANEL_SHOW} 等
+     * @return 例如 "panel_show"
+     */
+    public static String getTransitionName(int transition) {
+        return TRANSITION_NAMES[transition];
+    }
+
+    /**
+     * 清空所有记录，正在进行的切换也会被丢弃
+     */
+    public void reset() {
+        for (int i = 0; i < TRANSITION_COUNT; i++) {
+            mHistograms[i].reset();
+            mStartNanos[i] = -1;
+        }
+    }
+
+    /**
+     * 输出每种切换的个数和p50/p95/p99/max，单位为毫秒
+     * @param writer PrintWriter
+     */
+    public void dump(PrintWriter writer) {
+        for (int i = 0; i < TRANSITION_COUNT; i++) {
+            LatencyHistogram histogram = mHistograms[i];
+            writer.println(String.format(Locale.US, "%s count=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                    TRANSITION_NAMES[i], histogram.getCount(),
+                    histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(95) / 1e6,
+                    histogram.getValueAtPercentile(99) / 1e6, histogram.getMaxNanos() / 1e6));
+        }
+        writer.flush();
+    }
+
+    /**
+     * 开始一次切换。同一种切换还没结束时，重新开始计时。
+     * @param transition {@link #TRANSITION_PANEL_SHOW} 等
+     */
+    void begin(int transition) {
+        mStartNanos[transition] = now();
+    }
+
+    /**
+     * 是否有正在进行的切换
+     * @param transition {@link #TRANSITION_PANEL_SHOW} 等
+     * @return boolean
+     */
+    boolean isPending(int transition) {
+        return mStartNanos[transition] >= 0;
+    }
+
+    /**
+     * 结束一次切换并记录延迟，没有开始的忽略
+     * @param transition {@link #TRANSITION_PANEL_SHOW} 等
+     */
+    void end(int transition) {
+        long start = mStartNanos[transition];
+        if (start < 0)
+            return;
+
+        mStartNanos[transition] = -1;
+        long latency = now() - start;
+        mHistograms[transition].record(latency);
+        if (mListener != null) {
+            mListener.onTransition(transition, latency);
+        }
+    }
+
+    /**
+     * view所在的窗口下一次绘制时结束切换
+     * @param transition {@link #TRANSITION_PANEL_SHOW} 等
+     * @param view view
+     */
+    void endOnNextDraw(int transition, View view) {
+        if (!isPending(transition))
+            return;
+
+        TheDrawWatcher watcher = mDrawWatchers[transition];
+        if (watcher == null) {
+            watcher = new TheDrawWatcher(transition);
+            mDrawWatchers[transition] = watcher;
+        }
+        watcher.watch(view);
+    }
+
+    private static long now() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+        return SystemClock.elapsedRealtime() * 1000000L;
+    }
+
+    /**
+     * 一次性的绘制监听，每种切换复用同一个对象
+     */
+    private class TheDrawWatcher implements ViewTreeObserver.OnPreDrawListener {
+        private final int transition;
+        private ViewTreeObserver observer;
+
+        TheDrawWatcher(int transition) {
+            this.transition = transition;
+        }
+
+        void watch(View view) {
+            if (observer != null)
+                return;
+
+            observer = view.getViewTreeObserver();
+            observer.addOnPreDrawListener(this);
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            if (observer.isAlive()) {
+                observer.removeOnPreDrawListener(this);
+            }
+            observer = null;
+            end(transition);
+            return true;
+        }
+    }
+
+    /**
+     * 切换完成的回调，在主线程中调用
+     */
+    public interface OnTransitionListener {
+        /**
+         * @param transition {@link #TRANSITION_PANEL_SHOW} 等
+         * @param latencyNanos 延迟，纳秒
+         */
+        void onTransition(int transition, long latencyNanos);
+    }
+}
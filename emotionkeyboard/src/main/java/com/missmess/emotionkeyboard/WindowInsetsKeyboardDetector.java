@@ -0,0 +1,99 @@
+package com.missmess.emotionkeyboard;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.view.View;
+import android.view.WindowInsets;
+import android.view.WindowManager;
+
+/**
+ * 通过WindowInsets获取键盘高度的检测策略，需要API 21以上。
+ * <p>
+ * 键盘高度等于window底部的system window inset减去stable inset（虚拟按键栏），是系统直接给出的精确
+ * 值，不需要猜测虚拟按键栏的高度，也不需要调用getWindowVisibleDisplayFrame。只有insets分发时才会通知
+ * {@link KeyboardInfo}，不会在每次全局布局时都检测一次。
+ * <p>
+ * <b>注意这个策略会给decorView设置 {@link View.OnApplyWindowInsetsListener}，如果你自己也给decorView
+ * 设置了，会被覆盖。</b>
+ *
+ * @author wl
+ * @since 2018/02/02 16:30
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class WindowInsetsKeyboardDetector implements KeyboardDetector {
+    private final Activity mActivity;
+    private final View mDecorView;
+    private final TheInsetsListener mInsetsListener;
+    private Callback mCallback;
+    /** 最后一次分发的insets中的键盘高度，-1代表还没有收到过 */
+    private int mImeHeight = -1;
+
+    public WindowInsetsKeyboardDetector(Activity activity) {
+        mActivity = activity;
+        mDecorView = activity.getWindow().getDecorView();
+        mInsetsListener = new TheInsetsListener();
+    }
+
+    /**
+     * 当前系统版本是否支持这个策略
+     * @return true - 支持
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    @Override
+    public void start(Callback callback) {
+        mCallback = callback;
+        mDecorView.setOnApplyWindowInsetsListener(mInsetsListener);
+        mDecorView.requestApplyInsets();
+    }
+
+    @Override
+    public void stop() {
+        mDecorView.setOnApplyWindowInsetsListener(null);
+        mCallback = null;
+        mImeHeight = -1;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        int softInputMode = mActivity.getWindow().getAttributes().softInputMode;
+        return isSupported() && (softInputMode & WindowManager.LayoutParams.SOFT_INPUT_ADJUST_NOTHING)
+                != WindowManager.LayoutParams.SOFT_INPUT_ADJUST_NOTHING;
+    }
+
+    @Override
+    public int detectKeyboardHeight() {
+        if (mImeHeight >= 0) {
+            return mImeHeight;
+        }
+        // 还没有收到insets分发，直接取当前的insets
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            WindowInsets insets = mDecorView.getRootWindowInsets();
+            if (insets != null) {
+                return getImeHeight(insets);
+            }
+        }
+        return 0;
+    }
+
+    private static int getImeHeight(WindowInsets insets) {
+        int height = insets.getSystemWindowInsetBottom() - insets.getStableInsetBottom();
+        return height > 0 ? height : 0;
+    }
+
+    private class TheInsetsListener implements View.OnApplyWindowInsetsListener {
+        @Override
+        public WindowInsets onApplyWindowInsets(View v, WindowInsets insets) {
+            int oldHeight = mImeHeight;
+            mImeHeight = getImeHeight(insets);
+            if (mImeHeight != oldHeight && mCallback != null) {
+                mCallback.onKeyboardMayChanged();
+            }
+            // 保持decorView默认的insets处理
+            return v.onApplyWindowInsets(insets);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 二进制格式的emoji目录（emoji序列、名称、关键字和分类），由emoji-catalog-generator模块在编译时生成。
+ * <p>
+ * 从JSON或者XML中解析目录需要在启动时创建大量短命的字符串。这里直接在 {@link ByteBuffer}（通常是
+ * 文件的 {@link java.nio.MappedByteBuffer}）上按偏移读取，不为每个emoji创建对象；分类中的emoji只有在
+ * 第一次显示时（{@link #getCategoryData(int)}）才解码为基本类型数组。
+ * <p>
+ * 文件格式（大端序）：
+ * <pre>
+ * header    int magic 'EKCT', short version, short categoryCount, int emojiCount, int stringPoolOffset,
+ *           int keywordCount, int keywordTableOffset（版本2）
+ * category  categoryCount个，每个12字节：int nameOffset, short nameLength, short reserved,
+ *           int firstEmoji, 以下一个分类的firstEmoji（或emojiCount）作为结束
+ * emoji     emojiCount个，按分类排列，每个20字节：int sequenceOffset, int nameOffset, int keywordsOffset,
+ *           short sequenceLength, short nameLength, short keywordsLength, short reserved
+ * keyword   keywordCount个，按关键字的字典序（UTF-16）排列，每个12字节：int keywordOffset, int emojiIndex,
+ *           short keywordLength, short reserved。用于 {@link EmojiSearchIndex} 的前缀搜索（版本2）
+ * pool      UTF-16字符串池，上面的offset和length都以char为单位，相对于stringPoolOffset
+ * </pre>
+ * 关键字之间以空格分隔，都是小写。版本1的文件没有关键字表，仍然可以读取。
+ * <p>
+ * 构造时检查所有表和字符串的偏移都在数据范围内，被截断或者损坏的文件抛出 {@link IOException}，之后的读取不会越界。
+ * <p>
+ * 构造后是只读的，可以在多个线程中使用。不依赖Android framework，从assets中读取见
+ * {@link EmojiCatalogs#openAsset(android.content.Context, String)}，显示一个分类见
+ * {@link EmojiGridView#factory(EmojiCatalog, int, EmojiGridView.OnEmojiClickListener)}。
+ *
+ * @author wl
+ * @since 2018/04/09 15:00
+ */
+public class EmojiCatalog {
+    static final int MAGIC = 0x454b4354;
+    static final int VERSION = 2;
+    private static final int HEADER_SIZE_V1 = 16;
+    private static final int HEADER_SIZE = 24;
+    private static final int CATEGORY_SIZE = 12;
+    private static final int EMOJI_SIZE = 20;
+    private static final int KEYWORD_SIZE = 12;
+
+    private final ByteBuffer mBuffer;
+    // 文件头的大小，和版本有关
+    private final int mHeaderSize;
+    private final int mCategoryCount;
+    private final int mEmojiCount;
+    private final int mEmojiTableOffset;
+    private final int mPoolOffset;
+    private final int mKeywordCount;
+    private final int mKeywordTableOffset;
+    // 已经解码的分类，没有解码的为null
+    private final CategoryData[] mCategories;
+
+    /**
+     * 从文件中读取，文件会被映射到内存中
+     * @param file 目录文件
+     * @return EmojiCatalog
+     * @throws IOException 读取失败或者格式不正确
+     */
+    public static EmojiCatalog open(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return new EmojiCatalog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * @param buffer 目录数据，从position开始读取，之后不能再修改
+     * @throws IOException 格式不正确，或者数据被截断
+     */
+    public EmojiCatalog(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer.slice();
+        if (mBuffer.remaining() < HEADER_SIZE_V1 || mBuffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an emoji catalog");
+        }
+        int version = mBuffer.getShort(4);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported emoji catalog version: " + version);
+        }
+        mHeaderSize = version >= 2 ? HEADER_SIZE : HEADER_SIZE_V1;
+        if (mBuffer.limit() < mHeaderSize) {
+            throw new IOException("Corrupted emoji catalog");
+        }
+        mCategoryCount = mBuffer.getShort(6);
+        mEmojiCount = mBuffer.getInt(8);
+        mPoolOffset = mBuffer.getInt(12);
+        mKeywordCount = version >= 2 ? mBuffer.getInt(16) : 0;
+        mKeywordTableOffset = version >= 2 ? mBuffer.getInt(20) : mPoolOffset;
+        mEmojiTableOffset = mHeaderSize + mCategoryCount * CATEGORY_SIZE;
+        // 用long计算，数量很大时不会溢出
+        if (mCategoryCount < 0 || mEmojiCount < 0 || mKeywordCount < 0
+                || mEmojiTableOffset + (long) mEmojiCount * EMOJI_SIZE > mKeywordTableOffset
+                || mKeywordTableOffset + (long) mKeywordCount * KEYWORD_SIZE > mPoolOffset
+                || mPoolOffset > mBuffer.limit()) {
+            throw new IOException("Corrupted emoji catalog");
+        }
+        checkEntries();
+        mCategories = new CategoryData[mCategoryCount];
+    }
+
+    /**
+     * 检查分类、emoji和关键字表中的字符串都在字符串池内，分类和关键字引用的emoji位置有效
+     */
+    private void checkEntries() throws IOException {
+        long poolLength = (mBuffer.limit() - mPoolOffset) / 2;
+        int lastStart = 0;
+        for (int i = 0; i < mCategoryCount; i++) {
+            int offset = mHeaderSize + i * CATEGORY_SIZE;
+            int start = mBuffer.getInt(offset + 8);
+            if (!isInPool(mBuffer.getInt(offset), mBuffer.getShort(offset + 4), poolLength)
+                    || start < lastStart || start > mEmojiCount) {
+                throw new IOException("Corrupted emoji catalog: category " + i);
+            }
+            lastStart = start;
+        }
+        for (int i = 0; i < mEmojiCount; i++) {
+            int offset = mEmojiTableOffset + i * EMOJI_SIZE;
+            if (!isInPool(mBuffer.getInt(offset), mBuffer.getShort(offset + 12), poolLength)
+                    || !isInPool(mBuffer.getInt(offset + 4), mBuffer.getShort(offset + 14), poolLength)
+                    || !isInPool(mBuffer.getInt(offset + 8), mBuffer.getShort(offset + 16), poolLength)) {
+                throw new IOException("Corrupted emoji catalog: emoji " + i);
+            }
+        }
+        for (int i = 0; i < mKeywordCount; i++) {
+            int offset = mKeywordTableOffset + i * KEYWORD_SIZE;
+            int emoji = mBuffer.getInt(offset + 4);
+            if (!isInPool(mBuffer.getInt(offset), mBuffer.getShort(offset + 8), poolLength)
+                    || emoji < 0 || emoji >= mEmojiCount) {
+                throw new IOException("Corrupted emoji catalog: keyword " + i);
+            }
+        }
+    }
+
+    private static boolean isInPool(int offset, int length, long poolLength) {
+        return offset >= 0 && length >= 0 && (long) offset + length <= poolLength;
+    }
+
+    public int getCategoryCount() {
+        return mCategoryCount;
+    }
+
+    public String getCategoryName(int category) {
+        int offset = categoryOffset(category);
+        return readString(mBuffer.getInt(offset), mBuffer.getShort(offset + 4));
+    }
+
+    /**
+     * 分类中第一个emoji的位置
+     * @param category 分类
+     * @return int
+     */
+    public int getCategoryStart(int category) {
+        return mBuffer.getInt(categoryOffset(category) + 8);
+    }
+
+    /**
+     * 分类中emoji的个数
+     * @param category 分类
+     * @return int
+     */
+    public int getCategorySize(int category) {
+        int end = category + 1 < mCategoryCount ? getCategoryStart(category + 1) : mEmojiCount;
+        return end - getCategoryStart(category);
+    }
+
+    public int getEmojiCount() {
+        return mEmojiCount;
+    }
+
+    /**
+     * 第index个emoji，会创建新的字符串。批量读取使用 {@link #getEmojiChars(int, char[], int)}。
+     * @param index 位置
+     * @return emoji
+     */
+    public String getEmoji(int index) {
+        int offset = emojiOffset(index);
+        return readString(mBuffer.getInt(offset), mBuffer.getShort(offset + 12));
+    }
+
+    /**
+     * 第index个emoji的char个数
+     * @param index 位置
+     * @return int
+     */
+    public int getEmojiLength(int index) {
+        return mBuffer.getShort(emojiOffset(index) + 12);
+    }
+
+    /**
+     * 把第index个emoji复制到dst中，不分配内存
+     * @param index 位置
+     * @param dst 目标数组，长度至少为dstOffset + {@link #getEmojiLength(int)}
+     * @param dstOffset 目标数组中的起始位置
+     * @return 复制的char个数
+     */
+    public int getEmojiChars(int index, char[] dst, int dstOffset) {
+        int offset = emojiOffset(index);
+        int length = mBuffer.getShort(offset + 12);
+        readChars(mBuffer.getInt(offset), length, dst, dstOffset);
+        return length;
+    }
+
+    public String getName(int index) {
+        int offset = emojiOffset(index);
+        return readString(mBuffer.getInt(offset + 4), mBuffer.getShort(offset + 14));
+    }
+
+    /**
+     * 第index个emoji的关键字
+     * @param index 位置
+     * @return 以空格分隔的小写关键字
+     */
+    public String getKeywords(int index) {
+        int offset = emojiOffset(index);
+        return readString(mBuffer.getInt(offset + 8), mBuffer.getShort(offset + 16));
+    }
+
+    /**
+     * 关键字表中的条目个数，每个条目是一个关键字和一个emoji
+     * @return 版本1的文件返回0
+     */
+    public int getKeywordCount() {
+        return mKeywordCount;
+    }
+
+    /**
+     * 关键字表中第entry个条目的关键字
+     * @param entry 条目位置
+     * @return 小写的关键字
+     */
+    public String getKeyword(int entry) {
+        int offset = keywordOffset(entry);
+        return readString(mBuffer.getInt(offset), mBuffer.getShort(offset + 8));
+    }
+
+    /**
+     * 关键字表中第entry个条目对应的emoji
+     * @param entry 条目位置
+     * @return emoji的位置
+     */
+    public int getKeywordEmoji(int entry) {
+        return mBuffer.getInt(keywordOffset(entry) + 4);
+    }
+
+    /**
+     * 比较第entry个条目的关键字和前缀，不分配内存
+     * @return 关键字以prefix开头返回0，否则返回关键字和prefix的字典序比较结果
+     */
+    int compareKeywordPrefix(int entry, char[] prefix, int prefixLength) {
+        int offset = keywordOffset(entry);
+        int position = mPoolOffset + mBuffer.getInt(offset) * 2;
+        int length = mBuffer.getShort(offset + 8);
+        int n = Math.min(length, prefixLength);
+        for (int i = 0; i < n; i++) {
+            char c = mBuffer.getChar(position + i * 2);
+            if (c != prefix[i])
+                return c - prefix[i];
+        }
+        return length >= prefixLength ? 0 : -1;
+    }
+
+    /**
+     * 解码后的分类，所有emoji的字符连续存放，第i个emoji为[starts[i], starts[i + 1])
+     */
+    CategoryData getCategoryData(int category) {
+        synchronized (mCategories) {
+            CategoryData data = mCategories[category];
+            if (data == null) {
+                data = decodeCategory(category);
+                mCategories[category] = data;
+            }
+            return data;
+        }
+    }
+
+    private CategoryData decodeCategory(int category) {
+        int first = getCategoryStart(category);
+        int count = getCategorySize(category);
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length += getEmojiLength(first + i);
+        }
+        char[] chars = new char[length];
+        int[] starts = new int[count + 1];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            starts[i] = offset;
+            offset += getEmojiChars(first + i, chars, offset);
+        }
+        starts[count] = offset;
+        return new CategoryData(chars, starts, count);
+    }
+
+    private int categoryOffset(int category) {
+        if (category < 0 || category >= mCategoryCount)
+            throw new IndexOutOfBoundsException("category " + category + ", count " + mCategoryCount);
+        return mHeaderSize + category * CATEGORY_SIZE;
+    }
+
+    private int emojiOffset(int index) {
+        if (index < 0 || index >= mEmojiCount)
+            throw new IndexOutOfBoundsException("index " + index + ", count " + mEmojiCount);
+        return mEmojiTableOffset + index * EMOJI_SIZE;
+    }
+
+    private int keywordOffset(int entry) {
+        if (entry < 0 || entry >= mKeywordCount)
+            throw new IndexOutOfBoundsException("entry " + entry + ", count " + mKeywordCount);
+        return mKeywordTableOffset + entry * KEYWORD_SIZE;
+    }
+
+    private void readChars(int poolOffset, int length, char[] dst, int dstOffset) {
+        int position = mPoolOffset + poolOffset * 2;
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = mBuffer.getChar(position + i * 2);
+        }
+    }
+
+    private String readString(int poolOffset, int length) {
+        char[] chars = new char[length];
+        readChars(poolOffset, length, chars, 0);
+        return new String(chars);
+    }
+
+    static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    static class CategoryData {
+        final char[] chars;
+        final int[] starts;
+        final int count;
+
+        CategoryData(char[] chars, int[] starts, int count) {
+            this.chars = chars;
+            this.starts = starts;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link EmojiCatalog} 中依赖Android framework的部分。EmojiCatalog本身只依赖JDK，可以直接在JVM上做基准测试。
+ *
+ * @author wl
+ * @since 2018/06/25 11:00
+ */
+public final class EmojiCatalogs {
+
+    private EmojiCatalogs() {
+    }
+
+    /**
+     * 从assets中读取。如果文件在apk中没有压缩（build.gradle中 aaptOptions { noCompress "bin" }），会直接
+     * 映射apk中的数据，否则读取到内存中。
+     * @param context context
+     * @param assetName assets中的文件名
+     * @return EmojiCatalog
+     * @throws IOException 读取失败或者格式不正确
+     */
+    public static EmojiCatalog openAsset(Context context, String assetName) throws IOException {
+        AssetFileDescriptor afd = null;
+        try {
+            afd = context.getAssets().openFd(assetName);
+        } catch (IOException e) {
+            // 压缩过的文件没有文件描述符
+        }
+        if (afd != null) {
+            FileInputStream in = afd.createInputStream();
+            try {
+                FileChannel channel = in.getChannel();
+                return new EmojiCatalog(channel.map(FileChannel.MapMode.READ_ONLY,
+                        afd.getStartOffset(), afd.getLength()));
+            } finally {
+                EmojiCatalog.closeQuietly(in);
+                afd.close();
+            }
+        }
+
+        InputStream in = context.getAssets().open(assetName);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new EmojiCatalog(ByteBuffer.wrap(out.toByteArray()));
+        } finally {
+            EmojiCatalog.closeQuietly(in);
+        }
+    }
+}
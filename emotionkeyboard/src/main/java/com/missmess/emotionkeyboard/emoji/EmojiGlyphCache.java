@@ -0,0 +1,247 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Build;
+import android.util.LruCache;
+
+import java.util.Arrays;
+
+/**
+ * emoji位图缓存。彩色emoji通过drawText绘制时，每次都要经过字体回退和光栅化，代价很高。这里把每个emoji
+ * 按照code point序列和像素大小光栅化一次，之后直接绘制位图。
+ * <p>
+ * 缓存按字节数限制大小，最近最少使用的先被淘汰。命中查找时使用可变的key对象，不会分配内存。
+ * <p>
+ * 被淘汰的位图不复用：硬件加速时位图被记录在view的display list中，没有重绘的view之后仍然会用它绘制，
+ * 修改它会让这些view显示错误的emoji。
+ * <p>
+ * 系统内存紧张时（{@link ComponentCallbacks2#onTrimMemory(int)}）会释放缓存。通过
+ * {@link #getHitCount()}、{@link #getMissCount()} 可以统计命中率来调整缓存大小。
+ * <p>
+ * 只能在主线程使用。
+ *
+ * @author wl
+ * @since 2018/03/19 14:20
+ */
+public class EmojiGlyphCache {
+    /** 位图边长相对于emoji大小的比例，留出余量防止被裁剪 */
+    private static final float BITMAP_SCALE = 1.25f;
+
+    private static EmojiGlyphCache sDefault;
+
+    private final GlyphLruCache mCache;
+    private final GlyphKey mLookupKey = new GlyphKey();
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint.FontMetricsInt mFontMetrics = new Paint.FontMetricsInt();
+    private final Canvas mCanvas = new Canvas();
+    private int mRasterizeCount;
+
+    /**
+     * 进程内默认的缓存，大小为可用内存的1/32，最多4MB
+     * @param context context
+     * @return EmojiGlyphCache
+     */
+    public static synchronized EmojiGlyphCache getDefault(Context context) {
+        if (sDefault == null) {
+            int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, 4 * 1024 * 1024);
+            sDefault = new EmojiGlyphCache(maxBytes);
+            context.getApplicationContext().registerComponentCallbacks(sDefault.new TheTrimCallbacks());
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param maxBytes 缓存的最大字节数
+     */
+    public EmojiGlyphCache(int maxBytes) {
+        mCache = new GlyphLruCache(maxBytes);
+    }
+
+    /**
+     * 获取emoji的位图，没有缓存时光栅化一个
+     * @param chars 字符数组
+     * @param start emoji在数组中的起始位置
+     * @param count emoji的char个数
+     * @param size emoji的像素大小
+     * @return 位图，边长为 {@link #getBitmapSize(int)}
+     */
+    public Bitmap get(char[] chars, int start, int count, int size) {
+        mLookupKey.set(chars, start, count, size);
+        Bitmap bitmap = mCache.get(mLookupKey);
+        if (bitmap == null) {
+            bitmap = rasterize(chars, start, count, size);
+            mCache.put(mLookupKey.copy(), bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * emoji位图的边长
+     * @param size emoji的像素大小
+     * @return 像素
+     */
+    public static int getBitmapSize(int size) {
+        return Math.max(1, (int) Math.ceil(size * BITMAP_SCALE));
+    }
+
+    public int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    public int getMissCount() {
+        return mCache.missCount();
+    }
+
+    public int getEvictionCount() {
+        return mCache.evictionCount();
+    }
+
+    /**
+     * 光栅化的次数
+     * @return int
+     */
+    public int getRasterizeCount() {
+        return mRasterizeCount;
+    }
+
+    /**
+     * 当前缓存的字节数
+     * @return int
+     */
+    public int getSizeInBytes() {
+        return mCache.size();
+    }
+
+    /**
+     * 释放所有缓存
+     */
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * 释放一部分缓存。API 17以下LruCache不能部分释放，会释放所有缓存
+     * @param maxBytes 释放后最多保留的字节数
+     */
+    public void trimToSize(int maxBytes) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            trimCacheToSize(maxBytes);
+        } else {
+            mCache.evictAll();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private void trimCacheToSize(int maxBytes) {
+        mCache.trimToSize(maxBytes);
+    }
+
+    private Bitmap rasterize(char[] chars, int start, int count, int size) {
+        mRasterizeCount++;
+        int bitmapSize = getBitmapSize(size);
+        Bitmap bitmap = Bitmap.createBitmap(bitmapSize, bitmapSize, Bitmap.Config.ARGB_8888);
+
+        mPaint.setTextSize(size);
+        mPaint.getFontMetricsInt(mFontMetrics);
+        float width = mPaint.measureText(chars, start, count);
+        float x = (bitmapSize - width) / 2;
+        float y = (bitmapSize - (mFontMetrics.descent - mFontMetrics.ascent)) / 2f - mFontMetrics.ascent;
+        mCanvas.setBitmap(bitmap);
+        mCanvas.drawText(chars, start, count, x, y, mPaint);
+        mCanvas.setBitmap(null);
+        return bitmap;
+    }
+
+    private class GlyphLruCache extends LruCache<GlyphKey, Bitmap> {
+        GlyphLruCache(int maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        protected int sizeOf(GlyphKey key, Bitmap value) {
+            return value.getByteCount();
+        }
+    }
+
+    private class TheTrimCallbacks implements ComponentCallbacks2 {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                clear();
+            } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW) {
+                trimToSize(mCache.size() / 2);
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            clear();
+        }
+    }
+
+    /**
+     * 缓存的key：emoji的code point序列（以char表示）加上像素大小。查找时复用同一个对象并引用原数组，
+     * 放入缓存时才复制一份。
+     */
+    private static class GlyphKey {
+        private char[] chars;
+        private int start;
+        private int count;
+        private int size;
+        private int hash;
+
+        void set(char[] chars, int start, int count, int size) {
+            this.chars = chars;
+            this.start = start;
+            this.count = count;
+            this.size = size;
+            int h = size;
+            for (int i = start; i < start + count; i++) {
+                h = 31 * h + chars[i];
+            }
+            this.hash = h;
+        }
+
+        GlyphKey copy() {
+            GlyphKey key = new GlyphKey();
+            key.chars = Arrays.copyOfRange(chars, start, start + count);
+            key.start = 0;
+            key.count = count;
+            key.size = size;
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof GlyphKey))
+                return false;
+
+            GlyphKey other = (GlyphKey) o;
+            if (hash != other.hash || size != other.size || count != other.count)
+                return false;
+            for (int i = 0; i < count; i++) {
+                if (chars[start + i] != other.chars[other.start + i])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
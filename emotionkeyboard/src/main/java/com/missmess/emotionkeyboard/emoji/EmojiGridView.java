@@ -0,0 +1,378 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.widget.OverScroller;
+
+import com.missmess.emotionkeyboard.EmojiconKeyBoard;
+
+/**
+ * 内置的emoji表情布局，一个View直接把emoji绘制到canvas上，不需要为每个emoji创建View。
+ * <p>
+ * 所有emoji的字符保存在一个char数组中，每个emoji在数组中的起止位置、以及布局后的绘制坐标都保存在int数组
+ * 中。布局只在宽度改变时计算一次，滚动和绘制时不会分配任何对象，只绘制可见行的emoji。
+ * <p>
+ * 设置了 {@link EmojiGlyphCache} 后，emoji会先光栅化为位图缓存起来，之后绘制位图，不再每次都经过字体光栅化。
+ * <p>
+ * 可以直接放在布局中通过 {@link EmojiconKeyBoard.Builder#addEmotionBtnAndLayout(View, View)} 添加，也可以
+ * 通过 {@link #factory(String[], OnEmojiClickListener)}、{@link #factory(EmojiCatalog, int, OnEmojiClickListener)}
+ * 延迟创建。
+ *
+ * @author wl
+ * @since 2018/03/12 10:05
+ */
+public class EmojiGridView extends View {
+    private static final float DEFAULT_EMOJI_SIZE_SP = 28;
+    /** 格子大小相对于emoji大小的比例 */
+    private static final float CELL_SCALE = 1.5f;
+
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint.FontMetricsInt mFontMetrics = new Paint.FontMetricsInt();
+    private final OverScroller mScroller;
+    private final int mTouchSlop;
+    private final int mMinFlingVelocity;
+    private final int mMaxFlingVelocity;
+    private VelocityTracker mVelocityTracker;
+    private OnEmojiClickListener mListener;
+    private EmojiGlyphCache mGlyphCache;
+
+    // 所有emoji的字符，以及每个emoji在其中的起始位置，第i个emoji为[mStarts[i], mStarts[i + 1])
+    private char[] mChars = new char[0];
+    private int[] mStarts = new int[1];
+    private int mCount;
+    // 布局结果：每个emoji绘制的x坐标和baseline
+    private int[] mGlyphX = new int[0];
+    private int[] mGlyphY = new int[0];
+    private int mLayoutWidth = -1;
+    private int mColumns;
+    private int mCellWidth;
+    private int mCellHeight;
+    private int mContentHeight;
+
+    private float mDownX;
+    private float mDownY;
+    private float mLastY;
+    private boolean isDragging;
+
+    public EmojiGridView(Context context) {
+        this(context, null);
+    }
+
+    public EmojiGridView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, DEFAULT_EMOJI_SIZE_SP,
+                context.getResources().getDisplayMetrics()));
+        mScroller = new OverScroller(context);
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+    }
+
+    /**
+     * 创建一个延迟创建EmojiGridView的工厂，用于 {@link EmojiconKeyBoard.Builder#addEmotionBtnAndLayout(View, EmojiconKeyBoard.PanelFactory)}
+     * @param emojis 要显示的emoji
+     * @param listener 点击监听
+     * @return PanelFactory
+     */
+    public static EmojiconKeyBoard.PanelFactory factory(final String[] emojis, final OnEmojiClickListener listener) {
+        return new EmojiconKeyBoard.PanelFactory() {
+            @Override
+            public View createPanel(ViewGroup parent) {
+                EmojiGridView view = new EmojiGridView(parent.getContext());
+                view.setEmojis(emojis);
+                view.setOnEmojiClickListener(listener);
+                return view;
+            }
+        };
+    }
+
+    /**
+     * 以EmojiGridView显示 {@link EmojiCatalog} 中的一个分类，分类在表情布局第一次显示时才解码
+     * @param catalog emoji目录
+     * @param category 分类
+     * @param listener 点击监听
+     * @return PanelFactory
+     */
+    public static EmojiconKeyBoard.PanelFactory factory(final EmojiCatalog catalog, final int category,
+                                                        final OnEmojiClickListener listener) {
+        return new EmojiconKeyBoard.PanelFactory() {
+            @Override
+            public View createPanel(ViewGroup parent) {
+                EmojiGridView view = new EmojiGridView(parent.getContext());
+                view.setEmojis(catalog, category);
+                view.setOnEmojiClickListener(listener);
+                return view;
+            }
+        };
+    }
+
+    /**
+     * 设置要显示的emoji，每个元素是一个emoji（可以是多个code point组成的序列）
+     * @param emojis emojis
+     */
+    public void setEmojis(String[] emojis) {
+        int length = 0;
+        for (String emoji : emojis) {
+            length += emoji.length();
+        }
+        char[] chars = new char[length];
+        int[] starts = new int[emojis.length + 1];
+        int offset = 0;
+        for (int i = 0; i < emojis.length; i++) {
+            starts[i] = offset;
+            emojis[i].getChars(0, emojis[i].length(), chars, offset);
+            offset += emojis[i].length();
+        }
+        starts[emojis.length] = offset;
+
+        mChars = chars;
+        mStarts = starts;
+        mCount = emojis.length;
+        invalidateGlyphLayout();
+    }
+
+    /**
+     * 显示 {@link EmojiCatalog} 中的一个分类，分类在这里才被解码，解码结果在多个view之间共享
+     * @param catalog emoji目录
+     * @param category 分类
+     */
+    public void setEmojis(EmojiCatalog catalog, int category) {
+        EmojiCatalog.CategoryData data = catalog.getCategoryData(category);
+        mChars = data.chars;
+        mStarts = data.starts;
+        mCount = data.count;
+        invalidateGlyphLayout();
+    }
+
+    /**
+     * 设置emoji的大小
+     * @param px 像素
+     */
+    public void setEmojiSize(float px) {
+        mPaint.setTextSize(px);
+        invalidateGlyphLayout();
+    }
+
+    /**
+     * 设置emoji位图缓存，设置后绘制缓存的位图，而不是每次都drawText。可以使用
+     * {@link EmojiGlyphCache#getDefault(Context)} 在多个表情布局之间共享。
+     * @param cache 为null时直接drawText
+     */
+    public void setGlyphCache(EmojiGlyphCache cache) {
+        mGlyphCache = cache;
+        invalidate();
+    }
+
+    public void setOnEmojiClickListener(OnEmojiClickListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * emoji的个数
+     * @return int
+     */
+    public int getEmojiCount() {
+        return mCount;
+    }
+
+    /**
+     * 获取第index个emoji
+     * @param index index
+     * @return emoji
+     */
+    public String getEmoji(int index) {
+        return new String(mChars, mStarts[index], mStarts[index + 1] - mStarts[index]);
+    }
+
+    private void invalidateGlyphLayout() {
+        mLayoutWidth = -1;
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        computeGlyphLayout(width);
+        int height = resolveSize(mContentHeight, heightMeasureSpec);
+        setMeasuredDimension(width, height);
+    }
+
+    /**
+     * 计算每个emoji的位置，只在宽度改变时计算
+     * @param width 宽度
+     */
+    private void computeGlyphLayout(int width) {
+        if (width == mLayoutWidth)
+            return;
+
+        mLayoutWidth = width;
+        float emojiSize = mPaint.getTextSize();
+        int cellSize = Math.max(1, (int) (emojiSize * CELL_SCALE));
+        int available = Math.max(0, width - getPaddingLeft() - getPaddingRight());
+        mColumns = Math.max(1, available / cellSize);
+        mCellWidth = Math.max(1, available / mColumns);
+        mCellHeight = cellSize;
+        int rows = (mCount + mColumns - 1) / mColumns;
+        mContentHeight = rows * mCellHeight + getPaddingTop() + getPaddingBottom();
+
+        if (mGlyphX.length < mCount) {
+            mGlyphX = new int[mCount];
+            mGlyphY = new int[mCount];
+        }
+        mPaint.getFontMetricsInt(mFontMetrics);
+        int baselineOffset = (mCellHeight - (mFontMetrics.descent - mFontMetrics.ascent)) / 2 - mFontMetrics.ascent;
+        for (int i = 0; i < mCount; i++) {
+            int row = i / mColumns;
+            int column = i % mColumns;
+            int start = mStarts[i];
+            float glyphWidth = mPaint.measureText(mChars, start, mStarts[i + 1] - start);
+            mGlyphX[i] = getPaddingLeft() + column * mCellWidth + (int) ((mCellWidth - glyphWidth) / 2);
+            mGlyphY[i] = getPaddingTop() + row * mCellHeight + baselineOffset;
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mCount == 0)
+            return;
+
+        // 只绘制可见的行
+        int scrollY = getScrollY();
+        int firstRow = Math.max(0, (scrollY - getPaddingTop()) / mCellHeight);
+        int lastRow = (scrollY + getHeight() - getPaddingTop()) / mCellHeight;
+        int first = firstRow * mColumns;
+        int last = Math.min(mCount, (lastRow + 1) * mColumns);
+        if (mGlyphCache != null) {
+            drawCachedGlyphs(canvas, first, last);
+            return;
+        }
+        char[] chars = mChars;
+        int[] starts = mStarts;
+        for (int i = first; i < last; i++) {
+            canvas.drawText(chars, starts[i], starts[i + 1] - starts[i], mGlyphX[i], mGlyphY[i], mPaint);
+        }
+    }
+
+    private void drawCachedGlyphs(Canvas canvas, int first, int last) {
+        int size = (int) mPaint.getTextSize();
+        int bitmapSize = EmojiGlyphCache.getBitmapSize(size);
+        int offsetX = getPaddingLeft() + (mCellWidth - bitmapSize) / 2;
+        int offsetY = getPaddingTop() + (mCellHeight - bitmapSize) / 2;
+        char[] chars = mChars;
+        int[] starts = mStarts;
+        for (int i = first; i < last; i++) {
+            Bitmap bitmap = mGlyphCache.get(chars, starts[i], starts[i + 1] - starts[i], size);
+            canvas.drawBitmap(bitmap, offsetX + (i % mColumns) * mCellWidth,
+                    offsetY + (i / mColumns) * mCellHeight, null);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mVelocityTracker.clear();
+                mScroller.forceFinished(true);
+                mDownX = event.getX();
+                mDownY = mLastY = event.getY();
+                isDragging = false;
+                break;
+            case MotionEvent.ACTION_MOVE:
+                float y = event.getY();
+                if (!isDragging && Math.abs(y - mDownY) > mTouchSlop) {
+                    isDragging = true;
+                    if (getParent() != null) {
+                        getParent().requestDisallowInterceptTouchEvent(true);
+                    }
+                }
+                if (isDragging) {
+                    scrollTo(0, clampScroll(getScrollY() + (int) (mLastY - y)));
+                }
+                mLastY = y;
+                break;
+            case MotionEvent.ACTION_UP:
+                if (isDragging) {
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                    int velocity = (int) -mVelocityTracker.getYVelocity();
+                    if (Math.abs(velocity) > mMinFlingVelocity) {
+                        mScroller.fling(0, getScrollY(), 0, velocity, 0, 0, 0, getMaxScroll());
+                        invalidate();
+                    }
+                } else {
+                    int index = findEmojiAt(mDownX, mDownY);
+                    if (index >= 0 && mListener != null) {
+                        mListener.onEmojiClick(this, index);
+                    }
+                }
+                break;
+        }
+        mVelocityTracker.addMovement(event);
+        return true;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mScroller.forceFinished(true);
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    @Override
+    public void computeScroll() {
+        if (mScroller.computeScrollOffset()) {
+            scrollTo(0, clampScroll(mScroller.getCurrY()));
+            invalidate();
+        }
+    }
+
+    private int findEmojiAt(float x, float y) {
+        if (mCount == 0)
+            return -1;
+
+        int column = (int) (x - getPaddingLeft()) / mCellWidth;
+        int row = (int) (y + getScrollY() - getPaddingTop()) / mCellHeight;
+        if (column < 0 || column >= mColumns || row < 0)
+            return -1;
+
+        int index = row * mColumns + column;
+        return index < mCount ? index : -1;
+    }
+
+    private int getMaxScroll() {
+        return Math.max(0, mContentHeight - getHeight());
+    }
+
+    private int clampScroll(int scrollY) {
+        return Math.max(0, Math.min(scrollY, getMaxScroll()));
+    }
+
+    /**
+     * emoji点击监听
+     */
+    public interface OnEmojiClickListener {
+        /**
+         * 点击了emoji
+         * @param view EmojiGridView
+         * @param index 点击的emoji位置，可以通过 {@link EmojiGridView#getEmoji(int)} 获取emoji
+         */
+        void onEmojiClick(EmojiGridView view, int index);
+    }
+}
@@ -0,0 +1,24 @@
+package com.missmess.emotionkeyboard.emoji;
+
+/**
+ * 在文本中识别emoji。实现类不能依赖Android framework，查找时不能分配内存。
+ *
+ * @author wl
+ * @since 2018/03/26 11:00
+ */
+public interface EmojiMatcher {
+    /**
+     * 文本从start位置开始，最长能匹配的emoji长度。
+     * @param text 文本
+     * @param start 开始位置
+     * @param end 匹配不能超过的位置
+     * @return emoji的char个数，不是emoji返回0
+     */
+    int match(CharSequence text, int start, int end);
+
+    /**
+     * 一个emoji最多有多少个char，用于确定增量匹配时需要回溯的范围
+     * @return int
+     */
+    int maxLength();
+}
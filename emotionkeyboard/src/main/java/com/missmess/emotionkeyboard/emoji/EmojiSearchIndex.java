@@ -0,0 +1,200 @@
+package com.missmess.emotionkeyboard.emoji;
+
+/**
+ * emoji关键字的前缀搜索。
+ * <p>
+ * 索引是 {@link EmojiCatalog} 中编译时生成的关键字表，按字典序排列，以关键字为前缀的条目在表中是连续的，
+ * 通过两次二分查找就能确定范围，不需要在运行时构建任何结构。比较直接读取目录的 {@link java.nio.ByteBuffer}，
+ * 不分配内存。
+ * <p>
+ * 用户边输入边搜索时，新的输入通常是上一次的延伸（"s" → "sm" → "smi"），{@link Query} 会记住上一次的
+ * 范围，只在这个范围内继续二分；删除字符或者改成其它输入时才从整个表开始。
+ * <p>
+ * 结果中最近使用的emoji（{@link com.missmess.emotionkeyboard.RecentEmojis#getRanked(int[])}，id为emoji在目录
+ * 中的位置）按使用频率排在最前，其余的按关键字的字典序排列，完全匹配的关键字排在以它开头的更长的关键字之前。
+ * <p>
+ * 不依赖Android framework。
+ * <p>
+ * 索引是只读的，可以被多个线程使用；{@link Query} 只能在一个线程中使用。
+ *
+ * @author wl
+ * @since 2018/04/23 14:10
+ */
+public class EmojiSearchIndex {
+    private final EmojiCatalog mCatalog;
+
+    /**
+     * @param catalog 包含关键字表的emoji目录
+     */
+    public EmojiSearchIndex(EmojiCatalog catalog) {
+        mCatalog = catalog;
+    }
+
+    /**
+     * 创建一个查询，在整个输入过程中复用
+     * @return Query
+     */
+    public Query newQuery() {
+        return new Query();
+    }
+
+    /**
+     * 一次增量查询，保存上一次输入和匹配的范围
+     */
+    public class Query {
+        private char[] mPrefix = new char[16];
+        private int mPrefixLength;
+        // 匹配的关键字条目范围[mStart, mEnd)
+        private int mStart;
+        private int mEnd;
+        // 结果去重用的标记，避免每次清空：等于mGeneration表示匹配，等于-mGeneration表示已输出
+        private int[] mStamps;
+        private int mGeneration;
+        private int mRefineCount;
+        private int mRestartCount;
+
+        Query() {
+        }
+
+        /**
+         * 更新输入。如果是上一次输入的延伸，只在上一次的结果范围内查找。
+         * @param text 输入，不区分大小写
+         * @return 匹配的关键字条目个数，一个emoji可能有多个关键字匹配
+         */
+        public int update(CharSequence text) {
+            int length = text.length();
+            boolean refine = mPrefixLength > 0 && length >= mPrefixLength;
+            if (mPrefix.length < length) {
+                char[] prefix = new char[Math.max(length, mPrefix.length * 2)];
+                System.arraycopy(mPrefix, 0, prefix, 0, mPrefixLength);
+                mPrefix = prefix;
+            }
+            for (int i = 0; i < length; i++) {
+                char c = Character.toLowerCase(text.charAt(i));
+                if (i < mPrefixLength && c != mPrefix[i]) {
+                    refine = false;
+                }
+                mPrefix[i] = c;
+            }
+            mPrefixLength = length;
+
+            if (length == 0) {
+                mStart = 0;
+                mEnd = 0;
+                return 0;
+            }
+            int from = 0;
+            int to = mCatalog.getKeywordCount();
+            if (refine) {
+                from = mStart;
+                to = mEnd;
+                mRefineCount++;
+            } else {
+                mRestartCount++;
+            }
+            mStart = lowerBound(from, to);
+            mEnd = upperBound(mStart, to);
+            return mEnd - mStart;
+        }
+
+        /**
+         * 当前的输入
+         * @return String
+         */
+        public String getText() {
+            return new String(mPrefix, 0, mPrefixLength);
+        }
+
+        /**
+         * 获取匹配的emoji，每个emoji只出现一次
+         * @param out 输出emoji在目录中的位置，长度不够时只输出排在前面的
+         * @param recents 按使用频率排列的最近使用的emoji，排在最前面，可以为null
+         * @param recentCount recents中的个数
+         * @return 输出的个数
+         */
+        public int getResults(int[] out, int[] recents, int recentCount) {
+            if (mStart >= mEnd || out.length == 0)
+                return 0;
+
+            int emojiCount = mCatalog.getEmojiCount();
+            if (mStamps == null || mStamps.length < emojiCount) {
+                mStamps = new int[emojiCount];
+            }
+            if (mGeneration == Integer.MAX_VALUE) {
+                mGeneration = 0;
+                for (int i = 0; i < mStamps.length; i++) {
+                    mStamps[i] = 0;
+                }
+            }
+            int generation = ++mGeneration;
+            for (int entry = mStart; entry < mEnd; entry++) {
+                mStamps[mCatalog.getKeywordEmoji(entry)] = generation;
+            }
+
+            int count = 0;
+            if (recents != null) {
+                for (int i = 0; i < recentCount && count < out.length; i++) {
+                    int id = recents[i];
+                    if (id >= 0 && id < emojiCount && mStamps[id] == generation) {
+                        mStamps[id] = -generation;
+                        out[count++] = id;
+                    }
+                }
+            }
+            for (int entry = mStart; entry < mEnd && count < out.length; entry++) {
+                int id = mCatalog.getKeywordEmoji(entry);
+                if (mStamps[id] == generation) {
+                    mStamps[id] = -generation;
+                    out[count++] = id;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 在上一次结果范围内查找的次数
+         * @return int
+         */
+        public int getRefineCount() {
+            return mRefineCount;
+        }
+
+        /**
+         * 从整个关键字表开始查找的次数
+         * @return int
+         */
+        public int getRestartCount() {
+            return mRestartCount;
+        }
+
+        // 第一个不小于前缀的条目
+        private int lowerBound(int from, int to) {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mCatalog.compareKeywordPrefix(mid, mPrefix, mPrefixLength) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // 第一个大于前缀（且不以前缀开头）的条目
+        private int upperBound(int from, int to) {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mCatalog.compareKeywordPrefix(mid, mPrefix, mPrefixLength) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.style.ReplacementSpan;
+
+/**
+ * 以 {@link EmojiGlyphCache} 中的位图绘制emoji的span，由 {@link EmojiSpanEngine} 设置。
+ * <p>
+ * 行高和文字一致，设置或者移除span不会改变行高。span对象不记录位置，从文本中移除后可以被复用。
+ *
+ * @author wl
+ * @since 2018/03/26 11:00
+ */
+public class EmojiSpan extends ReplacementSpan {
+    private final EmojiGlyphCache mGlyphCache;
+    private final Paint.FontMetricsInt mFontMetrics = new Paint.FontMetricsInt();
+    private char[] mChars = new char[4];
+    private int mLength;
+
+    EmojiSpan(EmojiGlyphCache glyphCache) {
+        mGlyphCache = glyphCache;
+    }
+
+    /**
+     * 设置span覆盖的emoji
+     */
+    void set(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (mChars.length < length) {
+            mChars = new char[length];
+        }
+        for (int i = 0; i < length; i++) {
+            mChars[i] = text.charAt(start + i);
+        }
+        mLength = length;
+    }
+
+    /**
+     * span覆盖的emoji
+     * @return String
+     */
+    public String getEmoji() {
+        return new String(mChars, 0, mLength);
+    }
+
+    @Override
+    public int getSize(Paint paint, CharSequence text, int start, int end, Paint.FontMetricsInt fm) {
+        if (fm != null) {
+            paint.getFontMetricsInt(fm);
+        }
+        return EmojiGlyphCache.getBitmapSize(getEmojiSize(paint));
+    }
+
+    @Override
+    public void draw(Canvas canvas, CharSequence text, int start, int end, float x, int top, int y,
+                     int bottom, Paint paint) {
+        int size = getEmojiSize(paint);
+        Bitmap bitmap = mGlyphCache.get(mChars, 0, mLength, size);
+        // 位图中心和文字中心对齐
+        paint.getFontMetricsInt(mFontMetrics);
+        float centerY = y + (mFontMetrics.ascent + mFontMetrics.descent) / 2f;
+        canvas.drawBitmap(bitmap, x, centerY - bitmap.getHeight() / 2f, null);
+    }
+
+    private static int getEmojiSize(Paint paint) {
+        return Math.max(1, Math.round(paint.getTextSize()));
+    }
+}
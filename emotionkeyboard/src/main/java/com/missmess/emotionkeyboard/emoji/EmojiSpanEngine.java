@@ -0,0 +1,147 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import android.content.Context;
+import android.text.Editable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.widget.EditText;
+
+import java.util.ArrayList;
+
+/**
+ * 把编辑框中的emoji增量转换为 {@link EmojiSpan}。
+ * <p>
+ * 通常的做法是在afterTextChanged中重新扫描整个文本、重建所有span，每输入一个字符的代价和文本长度成正比，
+ * 长消息输入会卡顿。这里只重新解析 {@link #onTextChanged(CharSequence, int, int, int)} 报告的修改范围，
+ * 向前后各扩展 {@link EmojiMatcher#maxLength()} 个char（修改可能和相邻字符组成新的emoji，比如肤色修饰符、
+ * 零宽连接符），并对齐到范围边界上已有的span。每次输入的代价只和修改的长度有关，和文本长度无关。
+ * <p>
+ * 修改范围的累计和解析在 {@link EmojiSpanParser} 中，不依赖Android framework，可以在JVM上做基准测试。
+ * <p>
+ * 被移除的span会放入复用池，重新解析时优先复用，不会为每个emoji分配新对象。
+ * <p>
+ * 只能在主线程使用。
+ *
+ * @author wl
+ * @since 2018/03/26 11:00
+ */
+public class EmojiSpanEngine implements TextWatcher {
+    /** 复用池中最多保留的span个数 */
+    private static final int MAX_POOLED_SPANS = 32;
+
+    private final EmojiSpanParser mParser;
+    private final EmojiGlyphCache mGlyphCache;
+    private final ArrayList<EmojiSpan> mSpanPool = new ArrayList<>();
+    private final TheEditableSpans mSpans = new TheEditableSpans();
+    private EditText mEditText;
+
+    /**
+     * 使用 {@link UnicodeEmojiMatcher} 和进程内默认的 {@link EmojiGlyphCache}
+     * @param context context
+     */
+    public EmojiSpanEngine(Context context) {
+        this(new UnicodeEmojiMatcher(), EmojiGlyphCache.getDefault(context));
+    }
+
+    /**
+     * @param matcher 识别emoji
+     * @param glyphCache 绘制emoji的位图缓存
+     */
+    public EmojiSpanEngine(EmojiMatcher matcher, EmojiGlyphCache glyphCache) {
+        mParser = new EmojiSpanParser(matcher);
+        mGlyphCache = glyphCache;
+    }
+
+    /**
+     * 绑定编辑框，编辑框中已有的文本会被完整解析一次
+     * @param editText editText
+     */
+    public void attach(EditText editText) {
+        if (mEditText == editText)
+            return;
+
+        detach();
+        mEditText = editText;
+        editText.addTextChangedListener(this);
+        Editable text = editText.getText();
+        if (text != null) {
+            mSpans.mText = text;
+            mParser.parse(text, 0, text.length(), mSpans);
+            mSpans.mText = null;
+        }
+    }
+
+    /**
+     * 解除绑定，已设置的span会保留
+     */
+    public void detach() {
+        if (mEditText != null) {
+            mEditText.removeTextChangedListener(this);
+            mEditText = null;
+        }
+        mParser.reset();
+    }
+
+    /**
+     * 累计解析过的char个数，可以用来验证每次输入的解析代价
+     * @return int
+     */
+    public int getParsedCharCount() {
+        return mParser.getParsedCharCount();
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        mParser.textChanged(start, before, count);
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        mSpans.mText = s;
+        mParser.parseDirty(s, mSpans);
+        mSpans.mText = null;
+    }
+
+    private void recycleSpan(Editable text, EmojiSpan span) {
+        text.removeSpan(span);
+        if (mSpanPool.size() < MAX_POOLED_SPANS) {
+            mSpanPool.add(span);
+        }
+    }
+
+    private EmojiSpan obtainSpan() {
+        int size = mSpanPool.size();
+        if (size > 0) {
+            return mSpanPool.remove(size - 1);
+        }
+        return new EmojiSpan(mGlyphCache);
+    }
+
+    /**
+     * 编辑框文本上的span，只在解析期间持有文本
+     */
+    private class TheEditableSpans implements EmojiSpanParser.Spans {
+        private Editable mText;
+
+        @Override
+        public void removeSpans(int from, int to, int[] bounds) {
+            EmojiSpan[] spans = mText.getSpans(from, to, EmojiSpan.class);
+            for (EmojiSpan span : spans) {
+                bounds[0] = Math.min(bounds[0], mText.getSpanStart(span));
+                bounds[1] = Math.max(bounds[1], mText.getSpanEnd(span));
+                recycleSpan(mText, span);
+            }
+        }
+
+        @Override
+        public void addSpan(int start, int end) {
+            EmojiSpan span = obtainSpan();
+            span.set(mText, start, end);
+            mText.setSpan(span, start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+    }
+}
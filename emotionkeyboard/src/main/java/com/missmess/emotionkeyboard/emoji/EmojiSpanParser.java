@@ -0,0 +1,138 @@
+package com.missmess.emotionkeyboard.emoji;
+
+/**
+ * {@link EmojiSpanEngine} 中不依赖Android framework的部分：累计一次编辑的修改范围，重新解析修改范围附近的文本。
+ * span的移除和添加交给 {@link Spans}，编辑框中是Editable，在JVM上可以用数组实现，直接测量长消息中每次输入的解析代价。
+ * <p>
+ * 不是线程安全的。
+ *
+ * @author wl
+ * @since 2018/06/25 11:00
+ */
+final class EmojiSpanParser {
+
+    /**
+     * 文本上的emoji span
+     */
+    interface Spans {
+        /**
+         * 移除和[from, to)相交的emoji span
+         * @param from 开始
+         * @param to 结束
+         * @param bounds 调用时是[from, to)，需要扩展到包含被移除的span的范围
+         */
+        void removeSpans(int from, int to, int[] bounds);
+
+        /**
+         * 在[start, end)上添加emoji span
+         * @param start 开始
+         * @param end 结束
+         */
+        void addSpan(int start, int end);
+    }
+
+    private final EmojiMatcher mMatcher;
+    private final int[] mBounds = new int[2];
+    // 从onTextChanged到afterTextChanged之间累计的修改范围
+    private int mDirtyStart = -1;
+    private int mDirtyEnd = -1;
+    private int mParsedChars;
+
+    EmojiSpanParser(EmojiMatcher matcher) {
+        mMatcher = matcher;
+    }
+
+    /**
+     * 累计解析过的char个数
+     * @return int
+     */
+    int getParsedCharCount() {
+        return mParsedChars;
+    }
+
+    /**
+     * 记录一次修改，参数和TextWatcher.onTextChanged相同
+     * @param start 修改的开始
+     * @param before 被替换的长度
+     * @param count 新文本的长度
+     */
+    void textChanged(int start, int before, int count) {
+        int end = start + count;
+        if (mDirtyStart < 0) {
+            mDirtyStart = start;
+            mDirtyEnd = end;
+        } else {
+            // 之前记录的范围在这次修改之后的部分需要偏移
+            if (mDirtyEnd > start) {
+                mDirtyEnd = Math.max(start, mDirtyEnd + count - before);
+            }
+            mDirtyStart = Math.min(mDirtyStart, start);
+            mDirtyEnd = Math.max(mDirtyEnd, end);
+        }
+    }
+
+    /**
+     * 丢弃记录的修改范围
+     */
+    void reset() {
+        mDirtyStart = -1;
+        mDirtyEnd = -1;
+    }
+
+    /**
+     * 重新解析记录的修改范围附近的文本，在TextWatcher.afterTextChanged时调用
+     * @param text 修改之后的文本
+     * @param spans text上的span
+     */
+    void parseDirty(CharSequence text, Spans spans) {
+        if (mDirtyStart < 0)
+            return;
+
+        int length = text.length();
+        int start = Math.min(mDirtyStart, length);
+        int end = Math.min(mDirtyEnd, length);
+        reset();
+        parse(text, start, end, spans);
+    }
+
+    /**
+     * 重新解析[start, end)附近的文本：向前后各扩展 {@link EmojiMatcher#maxLength()} 个char，并对齐到已有span的边界
+     * @param text 文本
+     * @param start 开始
+     * @param end 结束
+     * @param spans text上的span
+     */
+    void parse(CharSequence text, int start, int end, Spans spans) {
+        int length = text.length();
+        int margin = mMatcher.maxLength();
+        int[] bounds = mBounds;
+        bounds[0] = Math.max(0, start - margin);
+        bounds[1] = Math.min(length, end + margin);
+
+        // 移除范围内的span，范围扩展到这些span的边界，保证从一个emoji的开头开始解析
+        spans.removeSpans(bounds[0], bounds[1], bounds);
+        int from = bounds[0];
+        int to = bounds[1];
+
+        int i = from;
+        while (i < to) {
+            int len = mMatcher.match(text, i, length);
+            if (len > 0) {
+                if (i + len > to) {
+                    // emoji超出了解析范围，移除超出部分原有的span，继续解析到这些span的结尾
+                    bounds[0] = to;
+                    bounds[1] = i + len;
+                    spans.removeSpans(to, i + len, bounds);
+                    to = bounds[1];
+                }
+                spans.addSpan(i, i + len);
+                i += len;
+            } else {
+                // 不成对的高代理只跳过自己，后面可能紧跟着emoji
+                i += Character.isHighSurrogate(text.charAt(i)) && i + 1 < length
+                        && Character.isLowSurrogate(text.charAt(i + 1)) ? 2 : 1;
+            }
+        }
+        mParsedChars += to - from;
+    }
+}
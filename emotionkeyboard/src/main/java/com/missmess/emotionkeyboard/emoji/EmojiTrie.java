@@ -0,0 +1,239 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+/**
+ * 以code point为边的emoji前缀树，用于在文本中查找emoji。
+ * <p>
+ * 正则或者 {@code HashMap<String, ...>} 查找需要为每个位置截取子串，这里在构造时把所有emoji（包括ZWJ序列、
+ * 肤色修饰符、国旗、键帽）建成前缀树，并按广度优先顺序压缩到几个int数组中：每个节点的子边在数组中是连续的，
+ * 按code point排序，查找子边时二分；第k条边指向第k+1个节点，不需要额外保存边的目标。查找时直接在
+ * {@link CharSequence} 上按code point前进，取最长匹配，不分配任何内存。
+ * <p>
+ * 变体选择符U+FE0F在文本中是可选的：当前节点没有U+FE0F的子边时会跳过它，因此表中的"❤"也能匹配文本中的"❤️"。
+ * <p>
+ * 不依赖Android framework，构造后是只读的，可以在多个线程中使用。
+ *
+ * @author wl
+ * @since 2018/04/02 10:30
+ */
+public class EmojiTrie implements EmojiMatcher {
+    private static final int VARIATION_SELECTOR_16 = 0xFE0F;
+
+    /** 节点k的子边为 [mChildStart[k], mChildStart[k + 1]) */
+    private final int[] mChildStart;
+    /** 每条边的code point，第k条边指向节点k + 1 */
+    private final int[] mEdgeCodePoints;
+    /** 节点对应的emoji在构造数组中的位置，不是完整emoji的节点为-1 */
+    private final int[] mValues;
+    private final int mMaxLength;
+
+    /**
+     * @param emojis 所有要识别的emoji，重复的以第一个为准
+     */
+    public EmojiTrie(String[] emojis) {
+        BuildNode root = new BuildNode();
+        int maxLength = 0;
+        for (int i = 0; i < emojis.length; i++) {
+            String emoji = emojis[i];
+            if (emoji == null || emoji.isEmpty())
+                continue;
+
+            BuildNode node = root;
+            for (int j = 0; j < emoji.length(); ) {
+                int cp = emoji.codePointAt(j);
+                node = node.child(cp);
+                j += Character.charCount(cp);
+            }
+            if (node.value < 0) {
+                node.value = i;
+            }
+            maxLength = Math.max(maxLength, emoji.length());
+        }
+        mMaxLength = maxLength;
+
+        // 广度优先展开，节点编号等于指向它的边的编号+1
+        ArrayList<BuildNode> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            BuildNode node = nodes.get(i);
+            if (node.children != null) {
+                nodes.addAll(node.children.values());
+            }
+        }
+        int nodeCount = nodes.size();
+        mChildStart = new int[nodeCount + 1];
+        mEdgeCodePoints = new int[nodeCount - 1];
+        mValues = new int[nodeCount];
+        int edge = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            BuildNode node = nodes.get(i);
+            mChildStart[i] = edge;
+            mValues[i] = node.value;
+            if (node.children != null) {
+                for (Integer cp : node.children.keySet()) {
+                    mEdgeCodePoints[edge++] = cp;
+                }
+            }
+        }
+        mChildStart[nodeCount] = edge;
+    }
+
+    @Override
+    public int match(CharSequence text, int start, int end) {
+        long result = find(text, start, end);
+        return result < 0 ? 0 : (int) result;
+    }
+
+    @Override
+    public int maxLength() {
+        // 文本中可能多出被跳过的U+FE0F
+        return mMaxLength * 2;
+    }
+
+    /**
+     * 文本从start位置开始，最长匹配的emoji在构造数组中的位置
+     * @param text 文本
+     * @param start 开始位置
+     * @param end 匹配不能超过的位置
+     * @return 没有匹配返回-1
+     */
+    public int indexOf(CharSequence text, int start, int end) {
+        long result = find(text, start, end);
+        return result < 0 ? -1 : (int) (result >>> 32);
+    }
+
+    /**
+     * 把文本切分为emoji，依次回调每个emoji的位置。不分配内存。
+     * @param text 文本
+     * @param start 开始位置
+     * @param end 结束位置
+     * @param callback 回调
+     * @return emoji个数
+     */
+    public int tokenize(CharSequence text, int start, int end, Callback callback) {
+        int count = 0;
+        int i = start;
+        while (i < end) {
+            long result = find(text, i, end);
+            if (result >= 0) {
+                int length = (int) result;
+                if (callback != null) {
+                    callback.onEmoji(i, i + length, (int) (result >>> 32));
+                }
+                count++;
+                i += length;
+            } else {
+                // 不成对的高代理只跳过自己，后面可能紧跟着emoji
+                i += Character.isHighSurrogate(text.charAt(i)) && i + 1 < end
+                        && Character.isLowSurrogate(text.charAt(i + 1)) ? 2 : 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 节点个数，可以用来估计占用的内存
+     * @return int
+     */
+    public int getNodeCount() {
+        return mValues.length;
+    }
+
+    /**
+     * 最长匹配
+     * @return 高32位为emoji的位置，低32位为匹配的char个数；没有匹配返回-1
+     */
+    private long find(CharSequence text, int start, int end) {
+        int node = 0;
+        int matchValue = -1;
+        int matchLength = 0;
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            int cp = c;
+            int charCount = 1;
+            if (Character.isHighSurrogate(c) && i + 1 < end) {
+                char low = text.charAt(i + 1);
+                if (Character.isLowSurrogate(low)) {
+                    cp = Character.toCodePoint(c, low);
+                    charCount = 2;
+                }
+            }
+
+            int child = findChild(node, cp);
+            if (child < 0) {
+                if (cp != VARIATION_SELECTOR_16 || node == 0)
+                    break;
+                // 跳过表中没有的变体选择符
+                i += charCount;
+                if (mValues[node] >= 0) {
+                    matchValue = mValues[node];
+                    matchLength = i - start;
+                }
+                continue;
+            }
+
+            node = child;
+            i += charCount;
+            if (mValues[node] >= 0) {
+                matchValue = mValues[node];
+                matchLength = i - start;
+            }
+        }
+        if (matchValue < 0)
+            return -1;
+        return ((long) matchValue << 32) | matchLength;
+    }
+
+    private int findChild(int node, int cp) {
+        int low = mChildStart[node];
+        int high = mChildStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = mEdgeCodePoints[mid];
+            if (value < cp) {
+                low = mid + 1;
+            } else if (value > cp) {
+                high = mid - 1;
+            } else {
+                return mid + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * {@link #tokenize(CharSequence, int, int, Callback)} 的回调
+     */
+    public interface Callback {
+        /**
+         * 找到一个emoji
+         * @param start emoji的开始位置
+         * @param end emoji的结束位置
+         * @param index emoji在构造数组中的位置
+         */
+        void onEmoji(int start, int end, int index);
+    }
+
+    /**
+     * 构造时使用的节点，展开后丢弃
+     */
+    private static class BuildNode {
+        TreeMap<Integer, BuildNode> children;
+        int value = -1;
+
+        BuildNode child(int cp) {
+            if (children == null) {
+                children = new TreeMap<>();
+            }
+            BuildNode node = children.get(cp);
+            if (node == null) {
+                node = new BuildNode();
+                children.put(cp, node);
+            }
+            return node;
+        }
+    }
+}
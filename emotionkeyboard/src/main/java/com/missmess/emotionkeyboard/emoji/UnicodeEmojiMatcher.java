@@ -0,0 +1,189 @@
+package com.missmess.emotionkeyboard.emoji;
+
+/**
+ * 根据Unicode emoji的组成规则识别emoji，不需要emoji表：
+ * <ul>
+ *     <li>基本emoji，可以带变体选择符U+FE0F和肤色修饰符U+1F3FB~U+1F3FF</li>
+ *     <li>用零宽连接符U+200D连接的序列，比如家庭、职业emoji</li>
+ *     <li>两个区域指示符组成的国旗</li>
+ *     <li>键帽：[0-9#*] U+FE0F? U+20E3</li>
+ *     <li>标签序列组成的地区旗帜，比如英格兰旗</li>
+ * </ul>
+ * 对于默认以文字形式显示的符号（比如©），只有带了U+FE0F才算作emoji。
+ *
+ * @author wl
+ * @since 2018/03/26 11:00
+ */
+public class UnicodeEmojiMatcher implements EmojiMatcher {
+    private static final int ZWJ = 0x200D;
+    private static final int VARIATION_SELECTOR_16 = 0xFE0F;
+    private static final int COMBINING_KEYCAP = 0x20E3;
+    private static final int TAG_END = 0xE007F;
+    /** 默认以emoji形式显示的BMP字符 */
+    private static final int[] BMP_EMOJI_PRESENTATION = {
+            0x231A, 0x231B, 0x23E9, 0x23EA, 0x23EB, 0x23EC, 0x23F0, 0x23F3, 0x25FD, 0x25FE,
+            0x2614, 0x2615, 0x2648, 0x2649, 0x264A, 0x264B, 0x264C, 0x264D, 0x264E, 0x264F,
+            0x2650, 0x2651, 0x2652, 0x2653, 0x267F, 0x2693, 0x26A1, 0x26AA, 0x26AB, 0x26BD,
+            0x26BE, 0x26C4, 0x26C5, 0x26CE, 0x26D4, 0x26EA, 0x26F2, 0x26F3, 0x26F5, 0x26FA,
+            0x26FD, 0x2705, 0x270A, 0x270B, 0x2728, 0x274C, 0x274E, 0x2753, 0x2754, 0x2755,
+            0x2757, 0x2795, 0x2796, 0x2797, 0x27B0, 0x27BF, 0x2B1B, 0x2B1C, 0x2B50, 0x2B55
+    };
+    /** 一个emoji最多的char个数，足够容纳最长的ZWJ序列 */
+    private static final int MAX_LENGTH = 32;
+
+    @Override
+    public int match(CharSequence text, int start, int end) {
+        if (start >= end)
+            return 0;
+
+        int cp = codePointAt(text, start, end);
+        int i = start + Character.charCount(cp);
+
+        // 键帽
+        if (isKeycapBase(cp)) {
+            int j = i;
+            if (j < end && text.charAt(j) == VARIATION_SELECTOR_16) {
+                j++;
+            }
+            if (j < end && text.charAt(j) == COMBINING_KEYCAP) {
+                return j + 1 - start;
+            }
+            return 0;
+        }
+
+        // 国旗
+        if (isRegionalIndicator(cp)) {
+            if (i < end) {
+                int next = codePointAt(text, i, end);
+                if (isRegionalIndicator(next)) {
+                    return i + Character.charCount(next) - start;
+                }
+            }
+            return 0;
+        }
+
+        int len = matchElement(text, start, end, cp);
+        if (len == 0)
+            return 0;
+
+        i = start + len;
+        // ZWJ序列
+        while (i + 1 < end && text.charAt(i) == ZWJ) {
+            int next = codePointAt(text, i + 1, end);
+            int nextLen = matchElement(text, i + 1, end, next);
+            if (nextLen == 0)
+                break;
+            i = i + 1 + nextLen;
+        }
+        return i - start;
+    }
+
+    @Override
+    public int maxLength() {
+        return MAX_LENGTH;
+    }
+
+    /**
+     * 匹配一个emoji元素：基本emoji + 可选的变体选择符 + 可选的肤色修饰符 + 可选的标签序列
+     */
+    private static int matchElement(CharSequence text, int start, int end, int cp) {
+        int i = start + Character.charCount(cp);
+        boolean hasVariation = i < end && text.charAt(i) == VARIATION_SELECTOR_16;
+        if (cp >= 0x1F000) {
+            if (!isSupplementaryEmoji(cp))
+                return 0;
+        } else if (!isBmpEmojiPresentation(cp) && !(hasVariation && isBmpEmojiCandidate(cp))) {
+            return 0;
+        }
+        if (hasVariation) {
+            i++;
+        }
+        if (i < end) {
+            int next = codePointAt(text, i, end);
+            if (isSkinTone(next)) {
+                i += Character.charCount(next);
+            } else if (isTag(next)) {
+                // 标签序列，以U+E007F结束
+                int j = i;
+                while (j < end) {
+                    int tag = codePointAt(text, j, end);
+                    if (!isTag(tag))
+                        break;
+                    j += Character.charCount(tag);
+                    if (tag == TAG_END) {
+                        i = j;
+                        break;
+                    }
+                }
+            }
+        }
+        return i - start;
+    }
+
+    private static int codePointAt(CharSequence text, int index, int end) {
+        char c = text.charAt(index);
+        if (Character.isHighSurrogate(c) && index + 1 < end) {
+            char low = text.charAt(index + 1);
+            if (Character.isLowSurrogate(low)) {
+                return Character.toCodePoint(c, low);
+            }
+        }
+        return c;
+    }
+
+    private static boolean isKeycapBase(int cp) {
+        return (cp >= '0' && cp <= '9') || cp == '#' || cp == '*';
+    }
+
+    private static boolean isRegionalIndicator(int cp) {
+        return cp >= 0x1F1E6 && cp <= 0x1F1FF;
+    }
+
+    private static boolean isSkinTone(int cp) {
+        return cp >= 0x1F3FB && cp <= 0x1F3FF;
+    }
+
+    private static boolean isTag(int cp) {
+        return cp >= 0xE0020 && cp <= TAG_END;
+    }
+
+    private static boolean isSupplementaryEmoji(int cp) {
+        return (cp >= 0x1F000 && cp <= 0x1F0FF)
+                || (cp >= 0x1F170 && cp <= 0x1F1E5)
+                || (cp >= 0x1F200 && cp <= 0x1F2FF)
+                || (cp >= 0x1F300 && cp <= 0x1F3FA)
+                || (cp >= 0x1F400 && cp <= 0x1FAFF);
+    }
+
+    private static boolean isBmpEmojiPresentation(int cp) {
+        int low = 0;
+        int high = BMP_EMOJI_PRESENTATION.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = BMP_EMOJI_PRESENTATION[mid];
+            if (value < cp) {
+                low = mid + 1;
+            } else if (value > cp) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 带上U+FE0F后可以以emoji形式显示的BMP字符
+     */
+    private static boolean isBmpEmojiCandidate(int cp) {
+        return cp == 0x00A9 || cp == 0x00AE || cp == 0x203C || cp == 0x2049
+                || cp == 0x2122 || cp == 0x2139 || cp == 0x24C2 || cp == 0x3030
+                || cp == 0x303D || cp == 0x3297 || cp == 0x3299
+                || (cp >= 0x2194 && cp <= 0x21AA)
+                || (cp >= 0x2300 && cp <= 0x23FF)
+                || (cp >= 0x25AA && cp <= 0x25FE)
+                || (cp >= 0x2600 && cp <= 0x27BF)
+                || (cp >= 0x2934 && cp <= 0x2935)
+                || (cp >= 0x2B05 && cp <= 0x2B55);
+    }
+}
@@ -0,0 +1,52 @@
+package com.missmess.emotionkeyboard.sticker;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+
+/**
+ * 表情包GridView的adapter，格子为 {@link StickerView}，复用时自动释放原来的表情包。
+ *
+ * @author wl
+ * @since 2018/04/30 10:20
+ */
+public class StickerAdapter extends BaseAdapter {
+    private final StickerLoader mLoader;
+    private final String[] mStickers;
+
+    /**
+     * @param loader 解码用的loader
+     * @param stickers 表情包路径
+     */
+    public StickerAdapter(StickerLoader loader, String[] stickers) {
+        mLoader = loader;
+        mStickers = stickers;
+    }
+
+    @Override
+    public int getCount() {
+        return mStickers.length;
+    }
+
+    @Override
+    public String getItem(int position) {
+        return mStickers[position];
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        StickerView view = (StickerView) convertView;
+        if (view == null) {
+            view = new StickerView(parent.getContext());
+            int padding = (int) (8 * parent.getResources().getDisplayMetrics().density);
+            view.setPadding(padding, padding, padding, padding);
+        }
+        view.setSticker(mLoader, mStickers[position]);
+        return view;
+    }
+}
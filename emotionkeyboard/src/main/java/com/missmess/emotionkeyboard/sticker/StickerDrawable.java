@@ -0,0 +1,227 @@
+package com.missmess.emotionkeyboard.sticker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Movie;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+/**
+ * 一个表情包格子的内容。解码和绘制下一帧在 {@link StickerLoader} 的后台线程中进行，完成后在主线程交换前后
+ * 两个位图并重绘，之后再安排下一帧。同一时刻最多只有一个任务，后台线程只访问后台位图和解码状态，主线程只访问
+ * 前台位图，两者通过任务的提交和回调交接，不需要加锁。
+ * <p>
+ * 只有在 {@link #setActive(boolean)} 为true且loader没有暂停时才会解码，否则不占用任何CPU。
+ *
+ * @author wl
+ * @since 2018/04/30 10:20
+ */
+class StickerDrawable extends Drawable {
+    /** 动画帧间隔，约15帧每秒 */
+    private static final int FRAME_INTERVAL_MS = 66;
+
+    private final StickerLoader mLoader;
+    private final String mPath;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Runnable mDecodeTask = new Runnable() {
+        @Override
+        public void run() {
+            decodeNextFrame();
+            mLoader.getMainHandler().post(mFrameReady);
+        }
+    };
+    private final Runnable mFrameReady = new Runnable() {
+        @Override
+        public void run() {
+            onFrameReady();
+        }
+    };
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            isTickPending = false;
+            scheduleDecode();
+        }
+    };
+
+    // 以下只在主线程访问
+    private Bitmap mFront;
+    private boolean isActive;
+    private boolean isReleased;
+    private boolean isTaskRunning;
+    private boolean isTickPending;
+    private boolean isFinished;
+
+    // 以下只在执行任务时访问，任务之间通过主线程交接
+    private Movie mMovie;
+    private Bitmap mBack;
+    private Canvas mCanvas;
+    private int mTimeMs;
+    private boolean isStatic;
+    private boolean isFailed;
+
+    StickerDrawable(StickerLoader loader, String path) {
+        mLoader = loader;
+        mPath = path;
+    }
+
+    String getPath() {
+        return mPath;
+    }
+
+    /**
+     * 格子是否显示在屏幕上
+     */
+    void setActive(boolean active) {
+        if (isActive == active || isReleased)
+            return;
+
+        isActive = active;
+        if (active) {
+            mLoader.register(this);
+        } else {
+            mLoader.unregister(this);
+        }
+        updateRunning();
+    }
+
+    /**
+     * 格子被回收，位图放回复用池
+     */
+    void release() {
+        if (isReleased)
+            return;
+
+        setActive(false);
+        isReleased = true;
+        if (!isTaskRunning) {
+            recycleBitmaps();
+        }
+        // 否则等任务结束后在onFrameReady中回收
+    }
+
+    /**
+     * 根据当前状态开始或者停止解码
+     */
+    void updateRunning() {
+        if (shouldRun()) {
+            if (!isTaskRunning && !isTickPending) {
+                scheduleDecode();
+            }
+        } else {
+            if (isTickPending) {
+                mLoader.getMainHandler().removeCallbacks(mTick);
+                isTickPending = false;
+            }
+            if (isTaskRunning && mLoader.cancel(mDecodeTask)) {
+                isTaskRunning = false;
+            }
+        }
+    }
+
+    private boolean shouldRun() {
+        return isActive && !isReleased && !isFinished && !mLoader.isPaused();
+    }
+
+    private void scheduleDecode() {
+        if (!shouldRun() || isTaskRunning)
+            return;
+
+        isTaskRunning = true;
+        mLoader.execute(mDecodeTask);
+    }
+
+    private void decodeNextFrame() {
+        if (mMovie == null && !isStatic && !isFailed) {
+            byte[] data = mLoader.loadData(mPath);
+            if (data == null) {
+                isFailed = true;
+                return;
+            }
+            Movie movie = Movie.decodeByteArray(data, 0, data.length);
+            if (movie != null && movie.duration() > 0 && movie.width() > 0 && movie.height() > 0) {
+                mMovie = movie;
+                mCanvas = new Canvas();
+            } else {
+                // 静态图片只解码一次
+                mBack = BitmapFactory.decodeByteArray(data, 0, data.length);
+                isStatic = true;
+                isFailed = mBack == null;
+                return;
+            }
+        }
+        if (mMovie == null)
+            return;
+
+        if (mBack == null) {
+            mBack = mLoader.obtainBitmap(mMovie.width(), mMovie.height());
+        }
+        mBack.eraseColor(Color.TRANSPARENT);
+        mCanvas.setBitmap(mBack);
+        mMovie.setTime(mTimeMs % mMovie.duration());
+        mMovie.draw(mCanvas, 0, 0);
+        mTimeMs += FRAME_INTERVAL_MS;
+    }
+
+    private void onFrameReady() {
+        isTaskRunning = false;
+        if (isReleased) {
+            recycleBitmaps();
+            return;
+        }
+
+        if (mBack != null) {
+            Bitmap front = mFront;
+            mFront = mBack;
+            mBack = isStatic ? null : front;
+            invalidateSelf();
+        }
+        if (isStatic || isFailed) {
+            isFinished = true;
+            return;
+        }
+        if (shouldRun()) {
+            isTickPending = true;
+            mLoader.getMainHandler().postDelayed(mTick, FRAME_INTERVAL_MS);
+        }
+    }
+
+    private void recycleBitmaps() {
+        if (mFront != null) {
+            mLoader.recycleBitmap(mFront);
+            mFront = null;
+        }
+        if (mBack != null) {
+            mLoader.recycleBitmap(mBack);
+            mBack = null;
+        }
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mFront != null) {
+            canvas.drawBitmap(mFront, null, getBounds(), mPaint);
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
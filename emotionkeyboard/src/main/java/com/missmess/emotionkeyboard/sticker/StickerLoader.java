@@ -0,0 +1,325 @@
+package com.missmess.emotionkeyboard.sticker;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.GridView;
+
+import com.missmess.emotionkeyboard.EmojiconKeyBoard;
+import com.missmess.emotionkeyboard.PanelLifecycle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 表情包（GIF动图和静态图片）的后台解码和动画调度。
+ * <p>
+ * 所有解码和逐帧绘制都在固定数量的后台线程中进行，主线程只负责交换已经绘制好的帧，不会拖慢表情布局的弹出动画。
+ * 每个格子（{@link StickerView}）只有在显示在屏幕上时才会解码，同一时刻最多只有一个解码任务，因此任务队列的
+ * 长度不会超过屏幕上的格子数。每个格子使用两个位图交替绘制，格子回收时位图放回复用池，由下一个格子继续使用。
+ * <p>
+ * 表情布局隐藏时调用 {@link #pause()}，所有动画和排队的解码任务立即停止，不再占用任何CPU；显示时调用
+ * {@link #resume()}。loader本身实现了 {@link PanelLifecycle}，通过
+ * {@link EmojiconKeyBoard.Builder#panelLifecycle(int, PanelLifecycle)} 注册后，只有表情布局真正显示在屏幕上
+ * 时才会播放动画，被键盘挡住或者activity进入后台时都会暂停，内存紧张时释放缓存。也可以通过
+ * {@link #bindToPanel(int, EmojiconKeyBoard.OnEmotionLayoutStateChangeListener)} 只跟表情布局的显示隐藏关联。
+ * <p>
+ * 除了后台线程，所有方法只能在主线程调用。
+ *
+ * @author wl
+ * @since 2018/04/30 10:20
+ */
+public class StickerLoader implements PanelLifecycle {
+    private static final String TAG = "StickerLoader";
+    /** 后台解码线程数 */
+    private static final int DECODE_THREADS = 2;
+    /** 复用池中最多保留的位图个数 */
+    private static final int MAX_REUSABLE_BITMAPS = 8;
+    /** 缓存的原始文件数据的最大字节数 */
+    private static final int MAX_DATA_CACHE_BYTES = 2 * 1024 * 1024;
+
+    private final Context mContext;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // 原始文件数据，后台线程读写
+    private final LruCache<String, byte[]> mDataCache;
+    // 复用池，后台线程取出，主线程放回
+    private final ArrayList<Bitmap> mReusableBitmaps = new ArrayList<>();
+    private final ArrayList<StickerDrawable> mDrawables = new ArrayList<>();
+    private boolean isPaused;
+
+    /**
+     * @param context context
+     */
+    public StickerLoader(Context context) {
+        mContext = context.getApplicationContext();
+        mExecutor = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new TheThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+        mDataCache = new LruCache<String, byte[]>(MAX_DATA_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+    }
+
+    /**
+     * 暂停所有动画，排队中的解码任务被取消。表情布局隐藏时调用。
+     */
+    public void pause() {
+        if (isPaused)
+            return;
+
+        isPaused = true;
+        for (int i = 0; i < mDrawables.size(); i++) {
+            mDrawables.get(i).updateRunning();
+        }
+    }
+
+    /**
+     * 恢复屏幕上格子的动画。表情布局显示时调用。
+     */
+    public void resume() {
+        if (!isPaused)
+            return;
+
+        isPaused = false;
+        for (int i = 0; i < mDrawables.size(); i++) {
+            mDrawables.get(i).updateRunning();
+        }
+    }
+
+    public boolean isPaused() {
+        return isPaused;
+    }
+
+    /**
+     * 跟表情布局的显示隐藏关联：第panelIndex个表情布局显示时恢复，隐藏或者切换到其它表情布局时暂停。
+     * 调用后处于暂停状态，直到表情布局显示。
+     * @param panelIndex 显示表情包的表情布局的位置
+     * @param delegate 原来的监听，可以为null
+     * @return 传给 {@link EmojiconKeyBoard.Builder#emotionPanelStateCallback(EmojiconKeyBoard.OnEmotionLayoutStateChangeListener)}
+     */
+    public EmojiconKeyBoard.OnEmotionLayoutStateChangeListener bindToPanel(
+            final int panelIndex, final EmojiconKeyBoard.OnEmotionLayoutStateChangeListener delegate) {
+        pause();
+        return new EmojiconKeyBoard.OnEmotionLayoutStateChangeListener() {
+            @Override
+            public void onEmotionLayoutShow(View newEmotionLayout, int newEmotionLayoutIndex, int oldEmotionLayoutIndex) {
+                if (newEmotionLayoutIndex == panelIndex) {
+                    resume();
+                } else {
+                    pause();
+                }
+                if (delegate != null) {
+                    delegate.onEmotionLayoutShow(newEmotionLayout, newEmotionLayoutIndex, oldEmotionLayoutIndex);
+                }
+            }
+
+            @Override
+            public void onEmotionLayoutHide(int oldEmotionLayoutIndex) {
+                pause();
+                if (delegate != null) {
+                    delegate.onEmotionLayoutHide(oldEmotionLayoutIndex);
+                }
+            }
+        };
+    }
+
+    /**
+     * 以GridView显示表情包的表情布局，在表情布局第一次显示时创建
+     * @param stickers 表情包路径，见 {@link StickerView#setSticker(StickerLoader, String)}
+     * @param numColumns 列数
+     * @param listener 点击回调，position为stickers中的位置，可以为null
+     * @return 传给 {@link EmojiconKeyBoard.Builder#addEmotionBtnAndLayout(View, EmojiconKeyBoard.PanelFactory)}
+     */
+    public EmojiconKeyBoard.PanelFactory panelFactory(final String[] stickers, final int numColumns,
+                                                      final AdapterView.OnItemClickListener listener) {
+        return new EmojiconKeyBoard.PanelFactory() {
+            @Override
+            public View createPanel(ViewGroup parent) {
+                GridView grid = new GridView(parent.getContext());
+                grid.setNumColumns(numColumns);
+                grid.setAdapter(new StickerAdapter(StickerLoader.this, stickers));
+                grid.setOnItemClickListener(listener);
+                return grid;
+            }
+        };
+    }
+
+    @Override
+    public void onPanelCreated(View panel, int index) {
+        // 在第一次显示之前不播放
+        pause();
+    }
+
+    @Override
+    public void onPanelAttached(View panel, int index) {
+    }
+
+    @Override
+    public void onPanelDetached(View panel, int index) {
+    }
+
+    @Override
+    public void onPanelVisible(View panel, int index) {
+        resume();
+    }
+
+    @Override
+    public void onPanelTransit(View panel, int index) {
+        pause();
+    }
+
+    @Override
+    public void onPanelHidden(View panel, int index) {
+        pause();
+    }
+
+    @Override
+    public void onPanelTrimmed(View panel, int index, int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mDataCache.evictAll();
+            synchronized (mReusableBitmaps) {
+                mReusableBitmaps.clear();
+            }
+        }
+    }
+
+    /**
+     * 停止所有解码线程，释放缓存。调用后不能再使用。
+     */
+    public void shutdown() {
+        pause();
+        mExecutor.shutdownNow();
+        mDataCache.evictAll();
+        synchronized (mReusableBitmaps) {
+            mReusableBitmaps.clear();
+        }
+    }
+
+    StickerDrawable createDrawable(String path) {
+        return new StickerDrawable(this, path);
+    }
+
+    void register(StickerDrawable drawable) {
+        if (!mDrawables.contains(drawable)) {
+            mDrawables.add(drawable);
+        }
+    }
+
+    void unregister(StickerDrawable drawable) {
+        mDrawables.remove(drawable);
+    }
+
+    void execute(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * 取消还在排队的任务
+     * @return 是否取消成功，false代表任务已经开始执行
+     */
+    boolean cancel(Runnable task) {
+        return mExecutor.remove(task);
+    }
+
+    Handler getMainHandler() {
+        return mMainHandler;
+    }
+
+    /**
+     * 读取表情包的原始数据，在后台线程调用
+     */
+    byte[] loadData(String path) {
+        byte[] data = mDataCache.get(path);
+        if (data != null)
+            return data;
+
+        InputStream in = null;
+        try {
+            in = path.startsWith(File.separator) ? new FileInputStream(path) : mContext.getAssets().open(path);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            data = out.toByteArray();
+            mDataCache.put(path, data);
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "failed to load sticker " + path, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 取出一个可复用的位图，没有则新建，在后台线程调用
+     */
+    Bitmap obtainBitmap(int width, int height) {
+        synchronized (mReusableBitmaps) {
+            for (int i = mReusableBitmaps.size() - 1; i >= 0; i--) {
+                Bitmap bitmap = mReusableBitmaps.get(i);
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                    mReusableBitmaps.remove(i);
+                    return bitmap;
+                }
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * 位图放回复用池。静态图片由BitmapFactory解码，是不可修改的，不能用来绘制动画帧，直接丢弃。
+     */
+    void recycleBitmap(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.getConfig() != Bitmap.Config.ARGB_8888)
+            return;
+
+        synchronized (mReusableBitmaps) {
+            if (mReusableBitmaps.size() < MAX_REUSABLE_BITMAPS) {
+                mReusableBitmaps.add(bitmap);
+            }
+        }
+    }
+
+    private static class TheThreadFactory implements ThreadFactory {
+        private int mCount;
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "EmotionKeyboard-sticker-" + (++mCount));
+        }
+    }
+}
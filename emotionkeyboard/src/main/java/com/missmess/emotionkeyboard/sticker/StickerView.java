@@ -0,0 +1,122 @@
+package com.missmess.emotionkeyboard.sticker;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * 显示一个表情包的正方形格子。只有在窗口中可见时才会解码和播放动画，移出屏幕、被列表回收或者隐藏时立即停止。
+ *
+ * @author wl
+ * @since 2018/04/30 10:20
+ */
+public class StickerView extends View {
+    private StickerDrawable mDrawable;
+    private boolean isTemporaryDetached;
+
+    public StickerView(Context context) {
+        super(context);
+    }
+
+    public StickerView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * 设置要显示的表情包，原来的表情包会被释放
+     * @param loader 解码用的loader
+     * @param path assets中的路径，或者以/开头的文件路径
+     */
+    public void setSticker(StickerLoader loader, String path) {
+        if (mDrawable != null) {
+            if (mDrawable.getPath().equals(path))
+                return;
+
+            mDrawable.setCallback(null);
+            mDrawable.release();
+        }
+        mDrawable = loader.createDrawable(path);
+        mDrawable.setCallback(this);
+        updateDrawableBounds();
+        updateActive();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+        setMeasuredDimension(width, resolveSize(width, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateDrawableBounds();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mDrawable != null) {
+            mDrawable.draw(canvas);
+        }
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return who == mDrawable || super.verifyDrawable(who);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        updateActive();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        updateActive();
+    }
+
+    @Override
+    public void onStartTemporaryDetach() {
+        super.onStartTemporaryDetach();
+        // 被列表放入回收站
+        isTemporaryDetached = true;
+        updateActive();
+    }
+
+    @Override
+    public void onFinishTemporaryDetach() {
+        super.onFinishTemporaryDetach();
+        isTemporaryDetached = false;
+        updateActive();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateActive();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateActive();
+    }
+
+    private void updateActive() {
+        if (mDrawable != null) {
+            mDrawable.setActive(getWindowToken() != null && !isTemporaryDetached && isShown());
+        }
+    }
+
+    private void updateDrawableBounds() {
+        if (mDrawable != null) {
+            mDrawable.setBounds(getPaddingLeft(), getPaddingTop(),
+                    getWidth() - getPaddingRight(), getHeight() - getPaddingBottom());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.missmess.emotionkeyboard;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 统计当前线程的内存分配，用来检查每次布局都会执行的代码有没有分配内存。
+ * <p>
+ * 依赖HotSpot的 {@code com.sun.management.ThreadMXBean}，不支持时 {@link #isSupported()} 返回false，
+ * 测试应该跳过。统计包含测量本身的开销，比较时用 {@link #measure(Runnable, int)} 测一个基准一起比较。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+final class AllocationMeter {
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN;
+
+    static {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean sunBean = null;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (!sunBean.isThreadAllocatedMemorySupported()) {
+                sunBean = null;
+            } else {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        THREAD_BEAN = sunBean;
+    }
+
+    private AllocationMeter() {
+    }
+
+    static boolean isSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    /**
+     * 当前线程累计分配的字节数
+     * @return long
+     */
+    static long allocatedBytes() {
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * 先预热runs次，再统计runs次执行分配的总字节数
+     * @param body 被测的代码
+     * @param runs 次数
+     * @return 字节数
+     */
+    static long measure(Runnable body, int runs) {
+        for (int i = 0; i < runs; i++) {
+            body.run();
+        }
+        long start = allocatedBytes();
+        for (int i = 0; i < runs; i++) {
+            body.run();
+        }
+        return allocatedBytes() - start;
+    }
+}
@@ -0,0 +1,157 @@
+package com.missmess.emotionkeyboard;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+
+import org.robolectric.Robolectric;
+
+/**
+ * 测试用的聊天界面：内容布局、编辑框、两个表情按钮以及对应的表情布局，和demo中的布局结构一样。
+ * <p>
+ * 内容布局和表情布局会统计自己的measure、layout次数。主线程是暂停的，修改后调用 {@link #runFrames()} 才会
+ * 执行布局遍历以及其它提交到主线程的消息；键盘通过 {@link #ime} 弹出、收起。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+final class ChatScreen {
+    static final int PANEL_COUNT = 2;
+
+    final Activity activity;
+    final LinearLayout root;
+    final TheCountingLayout content;
+    final EditText editText;
+    final Button[] buttons = new Button[PANEL_COUNT];
+    final TheCountingLayout[] panels = new TheCountingLayout[PANEL_COUNT];
+    final ImeSession ime;
+
+    ChatScreen() {
+        this(Robolectric.setupActivity(Activity.class), null);
+    }
+
+    /**
+     * 在host的activity中再创建一个聊天界面，比如同一个activity中的两个fragment，和host共用同一个键盘
+     * @param host 已经创建的聊天界面
+     */
+    ChatScreen(ChatScreen host) {
+        this(host.activity, host.ime);
+    }
+
+    private ChatScreen(Activity activity, ImeSession ime) {
+        this.activity = activity;
+        root = new LinearLayout(activity);
+        root.setOrientation(LinearLayout.VERTICAL);
+        content = new TheCountingLayout(activity);
+        root.addView(content, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 1f));
+        editText = new EditText(activity);
+        root.addView(editText, ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        for (int i = 0; i < PANEL_COUNT; i++) {
+            buttons[i] = new Button(activity);
+            root.addView(buttons[i], ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        }
+        for (int i = 0; i < PANEL_COUNT; i++) {
+            panels[i] = new TheCountingLayout(activity);
+            panels[i].setVisibility(View.GONE);
+            root.addView(panels[i], ViewGroup.LayoutParams.MATCH_PARENT, 0);
+        }
+        if (ime == null) {
+            activity.setContentView(root);
+            this.ime = new ImeSession(activity);
+        } else {
+            activity.addContentView(root, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                    ViewGroup.LayoutParams.MATCH_PARENT));
+            this.ime = ime;
+        }
+    }
+
+    /**
+     * 使用这个界面创建EmojiconKeyBoard
+     * @param translation 是否只通过translationY切换表情布局
+     * @return Builder，还需要调用build
+     */
+    EmojiconKeyBoard.Builder keyboardBuilder(boolean translation) {
+        EmojiconKeyBoard.Builder builder = new EmojiconKeyBoard.Builder(activity)
+                .contentLayout(content)
+                .editText(editText)
+                .switchPanelsByTranslation(translation);
+        for (int i = 0; i < PANEL_COUNT; i++) {
+            builder.addEmotionBtnAndLayout(buttons[i], panels[i]);
+        }
+        return builder;
+    }
+
+    /**
+     * 使用这个界面创建已经废弃的EmotionKeyboard
+     * @return Builder，还需要调用build
+     */
+    @SuppressWarnings("deprecation")
+    EmotionKeyboard.Builder emotionKeyboardBuilder() {
+        EmotionKeyboard.Builder builder = new EmotionKeyboard.Builder(activity)
+                .contentLayout(content)
+                .editText(editText);
+        for (int i = 0; i < PANEL_COUNT; i++) {
+            builder.addEmotionBtnAndLayout(buttons[i], panels[i]);
+        }
+        return builder;
+    }
+
+    /**
+     * 执行主线程中已经提交的消息和帧回调，包括布局遍历，见 {@link ImeSession#runFrames()}
+     */
+    void runFrames() {
+        ImeSession.runFrames();
+    }
+
+    void resetPanelCounts() {
+        for (TheCountingLayout panel : panels) {
+            panel.reset();
+        }
+    }
+
+    /**
+     * 所有表情布局的layout次数
+     * @return int
+     */
+    int panelLayoutCount() {
+        int count = 0;
+        for (TheCountingLayout panel : panels) {
+            count += panel.layoutCount;
+        }
+        return count;
+    }
+
+    /**
+     * 统计measure、layout次数的布局
+     */
+    static class TheCountingLayout extends FrameLayout {
+        int measureCount;
+        int layoutCount;
+
+        TheCountingLayout(Context context) {
+            super(context);
+        }
+
+        void reset() {
+            measureCount = 0;
+            layoutCount = 0;
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            measureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+            layoutCount++;
+            super.onLayout(changed, left, top, right, bottom);
+        }
+    }
+}
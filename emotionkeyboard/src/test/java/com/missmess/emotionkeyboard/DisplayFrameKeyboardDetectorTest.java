@@ -0,0 +1,108 @@
+package com.missmess.emotionkeyboard;
+
+import android.app.Activity;
+import android.graphics.Rect;
+import android.view.View;
+import android.view.WindowManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * {@link DisplayFrameKeyboardDetector} 的测试，键盘由 {@link ShadowImeSession} 模拟。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+@RunWith(ImeTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class DisplayFrameKeyboardDetectorTest {
+    private static final int IME_HEIGHT = 600;
+    private static final int RUNS = 10000;
+
+    private Activity mActivity;
+    private DisplayFrameKeyboardDetector mDetector;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.setupActivity(Activity.class);
+        ShadowImeSession.removeNavigationBar(mActivity);
+        mDetector = new DisplayFrameKeyboardDetector(mActivity);
+    }
+
+    @Test
+    public void detectsNothingWhenImeIsHidden() {
+        assertEquals(0, mDetector.detectKeyboardHeight());
+    }
+
+    @Test
+    public void detectsImeHeight() {
+        ShadowImeSession.setImeHeight(IME_HEIGHT);
+        assertEquals(IME_HEIGHT, mDetector.detectKeyboardHeight());
+
+        ShadowImeSession.setImeHeight(0);
+        assertEquals(0, mDetector.detectKeyboardHeight());
+    }
+
+    @Test
+    public void isUnavailableInAdjustNothingMode() {
+        assertTrue(mDetector.isAvailable());
+        mActivity.getWindow().setSoftInputMode(WindowManager.LayoutParams.SOFT_INPUT_ADJUST_NOTHING);
+        assertFalse(mDetector.isAvailable());
+    }
+
+    @Test
+    public void notifiesOnGlobalLayoutUntilStopped() {
+        final int[] calls = new int[1];
+        mDetector.start(new KeyboardDetector.Callback() {
+            @Override
+            public void onKeyboardMayChanged() {
+                calls[0]++;
+            }
+        });
+        View decorView = mActivity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().dispatchOnGlobalLayout();
+        assertEquals(1, calls[0]);
+
+        mDetector.stop();
+        decorView.getViewTreeObserver().dispatchOnGlobalLayout();
+        assertEquals(1, calls[0]);
+    }
+
+    /**
+     * 每次全局布局都会检测一次，检测本身不能分配内存。获取可见区域的平台调用在Robolectric中会分配内存，
+     * 作为基准扣除。
+     */
+    @Test
+    public void detectKeyboardHeightDoesNotAllocate() {
+        assumeTrue(AllocationMeter.isSupported());
+        ShadowImeSession.setImeHeight(IME_HEIGHT);
+        final View decorView = mActivity.getWindow().getDecorView();
+        final Rect frame = new Rect();
+
+        long platformBytes = AllocationMeter.measure(new Runnable() {
+            @Override
+            public void run() {
+                decorView.getWindowVisibleDisplayFrame(frame);
+            }
+        }, RUNS);
+        long detectorBytes = AllocationMeter.measure(new Runnable() {
+            @Override
+            public void run() {
+                mDetector.detectKeyboardHeight();
+            }
+        }, RUNS);
+
+        long extraBytesPerRun = (detectorBytes - platformBytes) / RUNS;
+        assertTrue("detectKeyboardHeight allocated " + extraBytesPerRun + " bytes per call",
+                extraBytesPerRun <= 0);
+    }
+}
@@ -0,0 +1,158 @@
+package com.missmess.emotionkeyboard;
+
+import android.os.SystemClock;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 按脚本驱动一次聊天界面的使用过程：弹出键盘、切换到表情布局、切换表情布局、切回键盘、收起键盘。检查
+ * {@link EmojiconKeyBoard} 的回调次数、布局次数以及切换表情布局时的内存分配，超过预算测试失败。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+@RunWith(ImeTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class EmojiconKeyBoardSessionTest {
+    private static final int IME_HEIGHT = 700;
+    private static final long DEBOUNCE_MILLIS = 100;
+    /** 整个脚本中库调用引起的layout次数 */
+    private static final int LAYOUT_PASS_BUDGET = 5;
+    /** 整个脚本中表情布局的layout次数：只通过translationY切换，每个表情布局只在第一次显示时布局一次 */
+    private static final int PANEL_LAYOUT_BUDGET = ChatScreen.PANEL_COUNT;
+    /** 第一次显示之后，每次切换表情布局允许分配的字节数 */
+    private static final long SWITCH_ALLOCATION_BUDGET = 0;
+    private static final int RUNS = 2000;
+
+    private ChatScreen mScreen;
+    private LayoutPassTracker mTracker;
+    private EmojiconKeyBoard mKeyboard;
+    // 回调次数，计数而不是记录字符串，统计内存分配时不会算上测试自己的分配
+    private int mKeyboardShownCount;
+    private int mKeyboardHiddenCount;
+    private int mPanelShownCount;
+    private int mPanelHiddenCount;
+
+    @Before
+    public void setUp() {
+        mScreen = new ChatScreen();
+        mTracker = new LayoutPassTracker();
+        mKeyboard = mScreen.keyboardBuilder(true)
+                .layoutPassTracker(mTracker)
+                .keyboardStateCallback(new KeyboardInfo.OnSoftKeyboardChangeListener() {
+                    @Override
+                    public void onSoftKeyboardStateChanged(boolean shown, int height) {
+                        if (shown) {
+                            mKeyboardShownCount++;
+                        } else {
+                            mKeyboardHiddenCount++;
+                        }
+                    }
+                })
+                .emotionPanelStateCallback(new EmojiconKeyBoard.OnEmotionLayoutStateChangeListener() {
+                    @Override
+                    public void onEmotionLayoutShow(View newEmotionLayout, int newEmotionLayoutIndex,
+                                                    int oldEmotionLayoutIndex) {
+                        mPanelShownCount++;
+                    }
+
+                    @Override
+                    public void onEmotionLayoutHide(int oldEmotionLayoutIndex) {
+                        mPanelHiddenCount++;
+                    }
+                })
+                .build();
+        mScreen.runFrames();
+        mTracker.reset();
+        mScreen.resetPanelCounts();
+    }
+
+    @After
+    public void tearDown() {
+        mKeyboard.release();
+    }
+
+    @Test
+    public void chatSessionStaysInBudget() {
+        ImeSession ime = mScreen.ime;
+        mKeyboard.showSoftKeyboard();
+        ime.show(IME_HEIGHT);
+        // 键盘 -> 表情布局0
+        mScreen.buttons[0].performClick();
+        ime.hide();
+        // 表情布局0 -> 表情布局1
+        mScreen.buttons[1].performClick();
+        mScreen.runFrames();
+        // 表情布局1 -> 键盘
+        mScreen.buttons[1].performClick();
+        ime.show(IME_HEIGHT);
+        // 收起键盘
+        mKeyboard.hideSoftKeyboard();
+        ime.hide();
+
+        // 每次键盘状态改变回调一次；切换到表情布局0、1各一次，切回键盘时隐藏一次
+        assertEquals(2, mKeyboardShownCount);
+        assertEquals(2, mKeyboardHiddenCount);
+        assertEquals(2, mPanelShownCount);
+        assertEquals(1, mPanelHiddenCount);
+        assertEquals(0, mTracker.getSystemLayoutPassCount());
+        assertEquals(0, mTracker.getRelayoutCount());
+        assertTrue("layout passes " + mTracker.getLayoutPassCount() + ", budget is " + LAYOUT_PASS_BUDGET,
+                mTracker.getLayoutPassCount() <= LAYOUT_PASS_BUDGET);
+        assertTrue("panel layouts " + mScreen.panelLayoutCount() + ", budget is " + PANEL_LAYOUT_BUDGET,
+                mScreen.panelLayoutCount() <= PANEL_LAYOUT_BUDGET);
+    }
+
+    @Test
+    public void imeTransitionStartsAtFirstSample() {
+        // 状态要等合并窗口结束才确定，输入栏的动画仍然从键盘开始移动的时间算起
+        KeyboardInfo.from(mScreen.activity).setDispatchDebounce(DEBOUNCE_MILLIS);
+        mKeyboard.showSoftKeyboard();
+        long start = SystemClock.uptimeMillis();
+        mScreen.ime.beginShow(IME_HEIGHT);
+
+        boolean moved = false;
+        long elapsed = 0;
+        while (elapsed < DEBOUNCE_MILLIS + ImeTransition.DEFAULT_DURATION * 2) {
+            ImeSession.advanceFrame();
+            elapsed = SystemClock.uptimeMillis() - start;
+            if (mScreen.editText.getTranslationY() > 0) {
+                moved = true;
+            } else if (moved) {
+                break;
+            }
+        }
+        assertTrue("input bar did not move", moved);
+        assertTrue("transition ended " + elapsed + "ms after the IME started moving",
+                elapsed <= ImeTransition.DEFAULT_DURATION + 2 * ImeSession.FRAME_MILLIS);
+        assertEquals(1, mKeyboardShownCount);
+    }
+
+    @Test
+    public void panelSwitchStaysInAllocationBudget() {
+        assumeTrue(AllocationMeter.isSupported());
+        mKeyboard.showEmotionLayout(0);
+        mKeyboard.showEmotionLayout(1);
+        mScreen.runFrames();
+        Runnable switchPanels = new Runnable() {
+            @Override
+            public void run() {
+                mKeyboard.showEmotionLayout(0);
+                mKeyboard.showEmotionLayout(1);
+            }
+        };
+
+        long bytesPerSwitch = AllocationMeter.measure(switchPanels, RUNS) / (RUNS * 2);
+        assertTrue("switching panels allocated " + bytesPerSwitch + " bytes, budget is "
+                + SWITCH_ALLOCATION_BUDGET, bytesPerSwitch <= SWITCH_ALLOCATION_BUDGET);
+    }
+}
@@ -0,0 +1,97 @@
+package com.missmess.emotionkeyboard;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 和 {@link EmojiconKeyBoardSessionTest} 同样的脚本驱动已经废弃的 {@link EmotionKeyboard}，检查回调次数以及
+ * 内容布局、表情布局的layout次数，超过预算测试失败。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+@SuppressWarnings("deprecation")
+@RunWith(ImeTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class EmotionKeyboardSessionTest {
+    private static final int IME_HEIGHT = 700;
+    /** 整个脚本中内容布局的layout次数：键盘和表情布局切换时锁定、解锁高度都会重新布局 */
+    private static final int CONTENT_LAYOUT_BUDGET = 4;
+    /** 整个脚本中表情布局的layout次数：通过visibility切换，每次显示都要布局 */
+    private static final int PANEL_LAYOUT_BUDGET = 3;
+
+    private ChatScreen mScreen;
+    private EmotionKeyboard mKeyboard;
+    private int mKeyboardShownCount;
+    private int mKeyboardHiddenCount;
+    private int mPanelShownCount;
+    private int mPanelHiddenCount;
+
+    @Before
+    public void setUp() {
+        mScreen = new ChatScreen();
+        mKeyboard = mScreen.emotionKeyboardBuilder()
+                .keyboardStateCallback(new KeyboardInfo.OnSoftKeyboardChangeListener() {
+                    @Override
+                    public void onSoftKeyboardStateChanged(boolean shown, int height) {
+                        if (shown) {
+                            mKeyboardShownCount++;
+                        } else {
+                            mKeyboardHiddenCount++;
+                        }
+                    }
+                })
+                .emotionPanelStateCallback(new EmotionKeyboard.OnEmotionLayoutStateChangeListener() {
+                    @Override
+                    public void onEmotionLayoutShow(View newEmotionLayout, int newEmotionLayoutIndex,
+                                                    int oldEmotionLayoutIndex) {
+                        mPanelShownCount++;
+                    }
+
+                    @Override
+                    public void onEmotionLayoutHide(int oldEmotionLayoutIndex) {
+                        mPanelHiddenCount++;
+                    }
+                })
+                .build();
+        mScreen.runFrames();
+        mScreen.content.reset();
+        mScreen.resetPanelCounts();
+    }
+
+    @Test
+    public void chatSessionStaysInBudget() {
+        ImeSession ime = mScreen.ime;
+        mKeyboard.showSoftKeyboard();
+        ime.show(IME_HEIGHT);
+        // 键盘 -> 表情布局0
+        mScreen.buttons[0].performClick();
+        ime.hide();
+        // 表情布局0 -> 表情布局1
+        mScreen.buttons[1].performClick();
+        mScreen.runFrames();
+        // 表情布局1 -> 键盘
+        mScreen.buttons[1].performClick();
+        ime.show(IME_HEIGHT);
+        // 收起键盘
+        mKeyboard.hideSoftKeyboard();
+        ime.hide();
+
+        assertEquals(2, mKeyboardShownCount);
+        assertEquals(2, mKeyboardHiddenCount);
+        // 切换表情布局时先隐藏旧的再显示新的
+        assertEquals(2, mPanelShownCount);
+        assertEquals(2, mPanelHiddenCount);
+        assertTrue("content layouts " + mScreen.content.layoutCount + ", budget is " + CONTENT_LAYOUT_BUDGET,
+                mScreen.content.layoutCount <= CONTENT_LAYOUT_BUDGET);
+        assertTrue("panel layouts " + mScreen.panelLayoutCount() + ", budget is " + PANEL_LAYOUT_BUDGET,
+                mScreen.panelLayoutCount() <= PANEL_LAYOUT_BUDGET);
+    }
+}
@@ -0,0 +1,130 @@
+package com.missmess.emotionkeyboard;
+
+import android.app.Activity;
+import android.view.View;
+
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.Scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按脚本弹出、收起软键盘，需要使用 {@link ImeTestRunner}。
+ * <p>
+ * 每次键盘高度改变时，和adjustResize一样让窗口重新布局，检测策略在全局布局时检测到新的高度。主线程是暂停的，
+ * 只有 {@link #advanceFrame()} 和 {@link #runFrames()} 时才按16ms一帧向前推进，执行布局遍历、帧回调以及
+ * 其它提交到主线程的消息。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+final class ImeSession {
+    static final long FRAME_MILLIS = 16;
+    // runFrames最多推进的帧数，防止一直有帧回调时死循环
+    private static final int MAX_FRAMES = 200;
+
+    private final View mDecorView;
+    private int mHeight;
+
+    ImeSession(Activity activity) {
+        mDecorView = activity.getWindow().getDecorView();
+        ShadowImeSession.removeNavigationBar(activity);
+        ShadowLooper.pauseMainLooper();
+        runFrames();
+    }
+
+    /**
+     * 当前的键盘高度
+     * @return 0代表没有显示
+     */
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 弹出键盘，或者键盘显示时改变高度：窗口只调整一次大小
+     * @param height 键盘高度
+     */
+    void show(int height) {
+        resize(height);
+        runFrames();
+    }
+
+    /**
+     * 收起键盘
+     */
+    void hide() {
+        resize(0);
+        runFrames();
+    }
+
+    /**
+     * 弹出键盘，窗口调整一次大小，但是不推进帧，之后由调用者逐帧推进
+     * @param height 键盘高度
+     */
+    void beginShow(int height) {
+        resize(height);
+    }
+
+    /**
+     * 键盘逐帧滑入，每一帧都调整一次窗口大小（有些ROM的输入法是这样的）
+     * @param height 最终的键盘高度
+     * @param frames 帧数
+     */
+    void slideIn(int height, int frames) {
+        int from = mHeight;
+        for (int i = 1; i <= frames; i++) {
+            resize(from + (height - from) * i / frames);
+            advanceFrame();
+        }
+        runFrames();
+    }
+
+    /**
+     * 键盘逐帧滑出
+     * @param frames 帧数
+     */
+    void slideOut(int frames) {
+        int from = mHeight;
+        for (int i = 1; i <= frames; i++) {
+            resize(from - from * i / frames);
+            advanceFrame();
+        }
+        runFrames();
+    }
+
+    /**
+     * 键盘显示时输入法切换候选栏，一帧内报告收起，下一帧又恢复原来的高度
+     */
+    void flicker() {
+        int height = mHeight;
+        resize(0);
+        advanceFrame();
+        resize(height);
+        runFrames();
+    }
+
+    private void resize(int height) {
+        mHeight = height;
+        ShadowImeSession.setImeHeight(height);
+        mDecorView.requestLayout();
+    }
+
+    /**
+     * 推进一帧
+     */
+    static void advanceFrame() {
+        Robolectric.getForegroundThreadScheduler().advanceBy(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 一帧一帧推进，直到主线程没有需要执行的消息，包括延迟的消息和动画
+     */
+    static void runFrames() {
+        Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        for (int i = 0; i < MAX_FRAMES && scheduler.size() > 0; i++) {
+            advanceFrame();
+        }
+    }
+}
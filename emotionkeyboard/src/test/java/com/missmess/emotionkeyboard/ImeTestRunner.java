@@ -0,0 +1,171 @@
+package com.missmess.emotionkeyboard;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.accessibility.AccessibilityManager;
+
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.AndroidInterceptors;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.internal.bytecode.Interceptor;
+import org.robolectric.internal.bytecode.MethodRef;
+import org.robolectric.internal.bytecode.MethodSignature;
+import org.robolectric.shadows.ShadowAccessibilityManager;
+import org.robolectric.shadows.ShadowChoreographer;
+import org.robolectric.util.Function;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 可以模拟软键盘的Robolectric runner。
+ * <p>
+ * Robolectric默认把framework中对IWindowSession的调用全部替换为空操作，window的可见区域永远拿不到；
+ * 这里去掉这个替换，并加上 {@link ShadowImeSession}，由它提供可见区域。测试中通过
+ * {@link ShadowImeSession#setImeHeight(int)} 弹出、收起键盘。
+ * <p>
+ * 另外缓存AccessibilityManager，见 {@link TheAccessibilityManager}；帧时间和设备上一样使用uptimeMillis的时间基准，
+ * 见 {@link TheChoreographer}。
+ * <p>
+ * 不同runner创建的sandbox不能在同一个JVM中共存，模块中所有需要Android framework的测试都使用这个runner。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+public class ImeTestRunner extends RobolectricTestRunner {
+    private static final String WINDOW_SESSION = "android.view.IWindowSession";
+
+    public ImeTestRunner(Class<?> testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    @Override
+    protected Collection<Interceptor> findInterceptors() {
+        Collection<Interceptor> interceptors = super.findInterceptors();
+        List<Interceptor> result = new ArrayList<>(interceptors.size());
+        for (Interceptor interceptor : interceptors) {
+            if (interceptor instanceof AndroidInterceptors.NoOpInterceptor) {
+                result.add(new TheNoOpInterceptor());
+            } else {
+                result.add(interceptor);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected Class<?>[] getExtraShadows(FrameworkMethod frameworkMethod) {
+        return new Class<?>[]{ShadowImeSession.class, ShadowImeSession.TheWindowManagerGlobal.class,
+                TheAccessibilityManager.class, TheChoreographer.class};
+    }
+
+    private static MethodRef[] withoutWindowSession(MethodRef[] methodRefs) {
+        List<MethodRef> result = new ArrayList<>(methodRefs.length);
+        for (MethodRef methodRef : methodRefs) {
+            if (!WINDOW_SESSION.equals(methodRef.className)) {
+                result.add(methodRef);
+            }
+        }
+        return result.toArray(new MethodRef[result.size()]);
+    }
+
+    /**
+     * 和Robolectric原来的空操作一样，只是不再包括IWindowSession。Robolectric会在sandbox中通过无参构造方法
+     * 重新创建它，所以必须是public的。
+     */
+    public static class TheNoOpInterceptor extends Interceptor {
+        private final Interceptor mDelegate;
+
+        public TheNoOpInterceptor() {
+            this(new AndroidInterceptors.NoOpInterceptor());
+        }
+
+        private TheNoOpInterceptor(Interceptor delegate) {
+            super(withoutWindowSession(delegate.getMethodRefs()));
+            mDelegate = delegate;
+        }
+
+        @Override
+        public Function<Object, Object> handle(MethodSignature methodSignature) {
+            return mDelegate.handle(methodSignature);
+        }
+
+        @Override
+        public MethodHandle getMethodHandle(String methodName, MethodType type)
+                throws NoSuchMethodException, IllegalAccessException {
+            return mDelegate.getMethodHandle(methodName, type);
+        }
+    }
+
+    /**
+     * Robolectric每次获取AccessibilityManager都会新建一个，还会注册一组广播接收器。view的translation、
+     * visibility等改变时都会获取，测试中这部分分配和注册会越来越多，掩盖库本身的分配。这里和设备上一样
+     * 只创建一次。
+     */
+    @Implements(AccessibilityManager.class)
+    public static class TheAccessibilityManager extends ShadowAccessibilityManager {
+        private static AccessibilityManager sInstance;
+
+        @Implementation
+        public static AccessibilityManager getInstance(Context context) throws Exception {
+            if (sInstance == null) {
+                sInstance = ShadowAccessibilityManager.getInstance(context);
+            }
+            return sInstance;
+        }
+
+        @Resetter
+        public static void reset() {
+            sInstance = null;
+        }
+    }
+
+    /**
+     * Robolectric中帧时间是一个每次加10ms的计数，和 {@link SystemClock#uptimeMillis()} 无关，帧回调也在当前时间
+     * 立即执行。设备上帧时间和uptimeMillis是同一个时间基准，按uptimeMillis计时的动画（比如从键盘开始移动的时间算起的
+     * 过渡动画）依赖这一点。这里帧时间使用uptimeMillis，帧回调在下一帧（{@link ImeSession#FRAME_MILLIS}之后）执行，
+     * 否则一直请求下一帧的动画在同一时间无限循环。
+     */
+    @Implements(className = "android.view.Choreographer")
+    public static class TheChoreographer extends ShadowChoreographer {
+        private Handler mHandler;
+
+        @Override
+        @Implementation
+        public void postFrameCallbackDelayed(final Choreographer.FrameCallback callback, long delayMillis) {
+            if (mHandler == null) {
+                mHandler = new Handler(Looper.getMainLooper());
+            }
+            mHandler.postAtTime(new Runnable() {
+                @Override
+                public void run() {
+                    callback.doFrame(getFrameTimeNanos());
+                }
+            }, callback, SystemClock.uptimeMillis() + Math.max(delayMillis, ImeSession.FRAME_MILLIS));
+        }
+
+        @Override
+        @Implementation
+        public void removeFrameCallback(Choreographer.FrameCallback callback) {
+            if (mHandler != null) {
+                mHandler.removeCallbacksAndMessages(callback);
+            }
+        }
+
+        @Override
+        @Implementation
+        public long getFrameTimeNanos() {
+            return SystemClock.uptimeMillis() * 1000000L;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.missmess.emotionkeyboard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link KeyboardHeightStore} 的写文件次数：只有值真正改变时才写，一段时间内的多次改变合并为一次。
+ * 以及读到损坏的文件时丢弃数据并删除文件。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+@RunWith(ImeTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class KeyboardHeightStoreTest {
+    private static final String PORTRAIT = "1|ime|360@480|0";
+    private static final String LANDSCAPE = "2|ime|360@480|0";
+    private static final int FILE_MAGIC = 0x454b4850;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Context mContext;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = RuntimeEnvironment.application;
+        mFile = new File(mFolder.getRoot(), "height.bin");
+    }
+
+    @Test
+    public void nothingIsWrittenWithoutChanges() {
+        KeyboardHeightStore store = new KeyboardHeightStore(mContext, mFile);
+        assertEquals(0, store.getHeight(PORTRAIT));
+
+        store.flush();
+        assertEquals(0, store.getWriteCount());
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void unchangedHeightIsNotWrittenAgain() {
+        KeyboardHeightStore store = new KeyboardHeightStore(mContext, mFile);
+        store.putHeight(PORTRAIT, 800);
+        store.flush();
+        assertEquals(1, store.getWriteCount());
+
+        for (int i = 0; i < 10; i++) {
+            store.putHeight(PORTRAIT, 800);
+        }
+        store.flush();
+        assertEquals(1, store.getWriteCount());
+    }
+
+    @Test
+    public void burstOfChangesIsWrittenOnce() {
+        KeyboardHeightStore store = new KeyboardHeightStore(mContext, mFile);
+        for (int i = 0; i < 50; i++) {
+            store.putHeight(PORTRAIT, 700 + i);
+            store.putHeight(LANDSCAPE, 400 + i);
+            store.notifyRecentsChanged();
+        }
+        assertEquals(0, store.getWriteCount());
+
+        store.flush();
+        assertEquals(1, store.getWriteCount());
+        // 没有新的改变，再次flush不会写
+        store.flush();
+        assertEquals(1, store.getWriteCount());
+    }
+
+    @Test
+    public void recentsAndHeightsShareOneWrite() {
+        KeyboardHeightStore store = new KeyboardHeightStore(mContext, mFile);
+        RecentEmojis recents = new RecentEmojis(store, RecentEmojis.DEFAULT_CAPACITY);
+        store.setRecents(recents);
+        recents.touch(0x1F600);
+        recents.touch(0x1F601);
+        store.putHeight(PORTRAIT, 800);
+        store.flush();
+        assertEquals(1, store.getWriteCount());
+
+        KeyboardHeightStore reloaded = new KeyboardHeightStore(mContext, mFile);
+        assertEquals(800, reloaded.getHeight(PORTRAIT));
+        RecentEmojis reloadedRecents = new RecentEmojis(reloaded, RecentEmojis.DEFAULT_CAPACITY);
+        reloadedRecents.load(reloaded.getRecentsData());
+        int[] out = new int[2];
+        assertEquals(2, reloadedRecents.getRecent(out));
+        assertEquals(0x1F601, out[0]);
+        assertEquals(0x1F600, out[1]);
+    }
+
+    @Test
+    public void reloadedValuesAreNotWrittenAgain() {
+        KeyboardHeightStore store = new KeyboardHeightStore(mContext, mFile);
+        store.putHeight(PORTRAIT, 800);
+        store.putHeight(LANDSCAPE, 500);
+        store.flush();
+
+        KeyboardHeightStore reloaded = new KeyboardHeightStore(mContext, mFile);
+        reloaded.putHeight(PORTRAIT, 800);
+        reloaded.putHeight(LANDSCAPE, 500);
+        reloaded.flush();
+        assertEquals(0, reloaded.getWriteCount());
+        assertEquals(800, reloaded.getHeight(PORTRAIT));
+        assertEquals(500, reloaded.getHeight(LANDSCAPE));
+    }
+
+    @Test
+    public void burstOfRecentTouchesIsWrittenOnce() {
+        KeyboardHeightStore store = new KeyboardHeightStore(mContext, mFile);
+        RecentEmojis recents = new RecentEmojis(store, RecentEmojis.DEFAULT_CAPACITY);
+        store.setRecents(recents);
+        for (int i = 0; i < 100; i++) {
+            recents.touch(0x1F600 + i % 40);
+        }
+        recents.remove(0x1F600);
+        assertEquals(0, store.getWriteCount());
+
+        store.flush();
+        assertEquals(1, store.getWriteCount());
+    }
+
+    @Test
+    public void corruptFileIsDeleted() throws IOException {
+        // 最近使用的数据长度远大于文件
+        writeFile(FILE_MAGIC, 3, 800, Integer.MAX_VALUE);
+        KeyboardHeightStore store = new KeyboardHeightStore(mContext, mFile);
+        assertEquals(0, store.getHeight());
+        assertNull(store.getRecentsData());
+        assertFalse(mFile.exists());
+
+        // 高度个数远大于文件，之前读到的数据也要丢弃
+        writeFile(FILE_MAGIC, 3, 800, 0, 1000000);
+        store = new KeyboardHeightStore(mContext, mFile);
+        assertEquals(0, store.getHeight());
+        assertFalse(mFile.exists());
+
+        // 截断的文件
+        writeFile(FILE_MAGIC, 3, 800);
+        store = new KeyboardHeightStore(mContext, mFile);
+        assertEquals(0, store.getHeight());
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void storeWorksAfterCorruptFile() throws IOException {
+        writeFile(FILE_MAGIC, 3, 800, -1);
+        KeyboardHeightStore store = new KeyboardHeightStore(mContext, mFile);
+        store.putHeight(PORTRAIT, 900);
+        store.flush();
+        assertEquals(1, store.getWriteCount());
+
+        KeyboardHeightStore reloaded = new KeyboardHeightStore(mContext, mFile);
+        assertEquals(900, reloaded.getHeight(PORTRAIT));
+    }
+
+    @Test
+    public void corruptRecentsDataIsIgnored() throws IOException {
+        // 文件格式正确，但是最近使用的数据中个数是错的
+        ByteArrayOutputStream recents = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(recents);
+        out.writeInt(1);
+        out.writeInt(0);
+        out.writeInt(Integer.MAX_VALUE);
+        byte[] recentsData = recents.toByteArray();
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        out = new DataOutputStream(file);
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(3);
+        out.writeInt(800);
+        out.writeInt(recentsData.length);
+        out.write(recentsData);
+        out.writeInt(0);
+        FileOutputStream fos = new FileOutputStream(mFile);
+        fos.write(file.toByteArray());
+        fos.close();
+
+        KeyboardHeightStore store = new KeyboardHeightStore(mContext, mFile);
+        assertEquals(800, store.getHeight());
+        RecentEmojis loaded = new RecentEmojis(store, RecentEmojis.DEFAULT_CAPACITY);
+        loaded.load(store.getRecentsData());
+        assertEquals(0, loaded.size());
+    }
+
+    @Test
+    public void migratesFromSharedPreferences() {
+        SharedPreferences sp = mContext.getSharedPreferences("EmotionKeyboard", Context.MODE_PRIVATE);
+        sp.edit().putInt("soft_input_height", 765).commit();
+
+        KeyboardHeightStore store = new KeyboardHeightStore(mContext, mFile);
+        assertEquals(765, store.getHeight());
+        store.flush();
+        assertEquals(1, store.getWriteCount());
+        assertTrue(mFile.exists());
+        assertFalse(sp.contains("soft_input_height"));
+
+        // 迁移只发生一次，之后从文件中读取
+        KeyboardHeightStore reloaded = new KeyboardHeightStore(mContext, mFile);
+        assertEquals(765, reloaded.getHeight());
+        reloaded.flush();
+        assertEquals(0, reloaded.getWriteCount());
+    }
+
+    private void writeFile(int... ints) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+        for (int i : ints) {
+            out.writeInt(i);
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,151 @@
+package com.missmess.emotionkeyboard;
+
+import android.app.Activity;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 按脚本弹出、收起键盘驱动 {@link KeyboardInfo}，检查回调次数和内存分配的预算，超过预算测试失败。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+@RunWith(ImeTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class KeyboardInfoSessionTest {
+    private static final int IME_HEIGHT = 700;
+    private static final int DEBOUNCE_MILLIS = 100;
+    /** 键盘稳定显示时，每次全局布局的检测允许分配的字节数 */
+    private static final long LAYOUT_ALLOCATION_BUDGET = 0;
+    private static final int RUNS = 10000;
+
+    private Activity mActivity;
+    private ImeSession mIme;
+    private KeyboardInfo mInfo;
+    private final List<String> mEvents = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.setupActivity(Activity.class);
+        mIme = new ImeSession(mActivity);
+        mInfo = KeyboardInfo.from(mActivity);
+        mInfo.addOnKeyboardChangeListener(new KeyboardInfo.OnSoftKeyboardChangeListener() {
+            @Override
+            public void onSoftKeyboardStateChanged(boolean shown, int height) {
+                mEvents.add((shown ? "shown " : "hidden ") + height);
+            }
+        });
+        mInfo.addOnKeyboardHeightChangeListener(new KeyboardInfo.OnSoftKeyboardHeightChangeListener() {
+            @Override
+            public void onSoftKeyboardHeightChanged(int oldHeight, int newHeight) {
+                mEvents.add("height " + oldHeight + "->" + newHeight);
+            }
+        });
+        mInfo.startListening();
+    }
+
+    @After
+    public void tearDown() {
+        mInfo.detach();
+    }
+
+    @Test
+    public void oneCallbackPerTransition() {
+        for (int i = 0; i < 3; i++) {
+            mIme.show(IME_HEIGHT);
+            assertTrue(mInfo.isKeyboardShowing());
+            mIme.hide();
+            assertFalse(mInfo.isKeyboardShowing());
+        }
+        assertEquals(Arrays.asList("shown 700", "hidden 0", "shown 700", "hidden 0", "shown 700", "hidden 0"),
+                mEvents);
+        assertEquals(IME_HEIGHT, mInfo.getSoftKeyboardHeight());
+    }
+
+    @Test
+    public void heightChangeWhileShown() {
+        mIme.show(IME_HEIGHT);
+        mIme.show(IME_HEIGHT + 60);
+        assertEquals(Arrays.asList("shown 700", "height 700->760"), mEvents);
+        assertEquals(IME_HEIGHT + 60, mInfo.getSoftKeyboardHeight());
+    }
+
+    @Test
+    public void slideWithDebounceDispatchesOnlyFinalState() {
+        mInfo.setDispatchDebounce(DEBOUNCE_MILLIS);
+        mIme.slideIn(IME_HEIGHT, 5);
+        mIme.slideOut(5);
+        assertEquals(Arrays.asList("shown 700", "hidden 0"), mEvents);
+    }
+
+    @Test
+    public void flickerWithDebounceDispatchesNothing() {
+        mInfo.setDispatchDebounce(DEBOUNCE_MILLIS);
+        mIme.show(IME_HEIGHT);
+        for (int i = 0; i < 5; i++) {
+            mIme.flicker();
+        }
+        assertEquals(Arrays.asList("shown 700"), mEvents);
+    }
+
+    @Test
+    public void noCallbacksAfterStopListening() {
+        mInfo.stopListening();
+        mIme.show(IME_HEIGHT);
+        mIme.hide();
+        assertTrue(mEvents.isEmpty());
+    }
+
+    /**
+     * 键盘显示期间每次布局都会检测一次高度，高度没有改变时不能分配内存。以停止监听后只调用同样的平台方法
+     * （取窗口属性、可见区域和时间）的全局布局作为基准，扣除Robolectric调用shadow本身的分配。
+     */
+    @Test
+    public void steadyLayoutStaysInAllocationBudget() {
+        assumeTrue(AllocationMeter.isSupported());
+        mIme.show(IME_HEIGHT);
+        final View decorView = mActivity.getWindow().getDecorView();
+        Runnable layout = new Runnable() {
+            @Override
+            public void run() {
+                decorView.getViewTreeObserver().dispatchOnGlobalLayout();
+            }
+        };
+
+        long listeningBytes = AllocationMeter.measure(layout, RUNS);
+        mInfo.stopListening();
+        final Rect frame = new Rect();
+        decorView.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
+            @Override
+            public void onGlobalLayout() {
+                mActivity.getWindow().getAttributes();
+                decorView.getWindowVisibleDisplayFrame(frame);
+                SystemClock.uptimeMillis();
+            }
+        });
+        long baselineBytes = AllocationMeter.measure(layout, RUNS);
+
+        long bytesPerLayout = (listeningBytes - baselineBytes) / RUNS;
+        assertTrue("KeyboardInfo allocated " + bytesPerLayout + " bytes per layout, budget is "
+                + LAYOUT_ALLOCATION_BUDGET, bytesPerLayout <= LAYOUT_ALLOCATION_BUDGET);
+        assertEquals(Arrays.asList("shown 700"), mEvents);
+    }
+}
@@ -0,0 +1,201 @@
+package com.missmess.emotionkeyboard;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用合成的高度序列驱动 {@link KeyboardStateMachine}，不需要Android framework。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+public class KeyboardStateMachineTest {
+    private static final long WINDOW = 100;
+    private static final long FRAME = 16;
+
+    private final List<String> mEvents = new ArrayList<>();
+    private KeyboardStateMachine mMachine;
+    private long mNow;
+
+    @Before
+    public void setUp() {
+        mMachine = new KeyboardStateMachine(new KeyboardStateMachine.Callback() {
+            @Override
+            public void onKeyboardStateChanged(boolean shown, int height) {
+                mEvents.add((shown ? "shown " : "hidden ") + height);
+            }
+
+            @Override
+            public void onKeyboardHeightChanged(int oldHeight, int newHeight) {
+                mEvents.add("height " + oldHeight + "->" + newHeight);
+            }
+        });
+    }
+
+    @Test
+    public void slideInSettlesOnce() {
+        // 键盘滑入，每一帧一个中间高度
+        for (int height = 50; height <= 800; height += 50) {
+            sample(height);
+        }
+        assertTrue(mEvents.isEmpty());
+
+        idle(WINDOW);
+        assertEquals(events("shown 800"), mEvents);
+        assertTrue(mMachine.isShowing());
+        assertEquals(800, mMachine.getHeight());
+    }
+
+    @Test
+    public void settledChangeRemembersItsFirstSample() {
+        assertEquals(-1, mMachine.getSettledSince());
+        long start = mNow;
+        for (int height = 50; height <= 800; height += 50) {
+            sample(height);
+        }
+        idle(WINDOW);
+        assertEquals(start, mMachine.getSettledSince());
+
+        // 抖动没有确定任何变化
+        sample(0);
+        sample(800);
+        idle(WINDOW);
+        assertEquals(start, mMachine.getSettledSince());
+
+        long hide = mNow;
+        hideAndSettle();
+        assertEquals(hide, mMachine.getSettledSince());
+    }
+
+    @Test
+    public void flickerIsSuppressed() {
+        showAndSettle(800);
+
+        // 隐藏后马上又显示为原来的高度
+        sample(0);
+        sample(800);
+        assertFalse(mMachine.hasPending());
+        idle(WINDOW);
+        assertEquals(events("shown 800"), mEvents);
+
+        // 隐藏状态下短暂的显示
+        hideAndSettle();
+        sample(600);
+        sample(0);
+        idle(WINDOW);
+        assertEquals(events("shown 800", "hidden 0"), mEvents);
+    }
+
+    @Test
+    public void heightChangeWhileShowing() {
+        showAndSettle(800);
+        // 候选栏变高
+        sample(900);
+        idle(WINDOW);
+        assertEquals(events("shown 800", "height 800->900"), mEvents);
+        assertEquals(900, mMachine.getHeight());
+    }
+
+    @Test
+    public void continuousChangeSettlesWithinMaxWait() {
+        long start = mNow;
+        long due = -1;
+        // 高度一直在变化，每次都推迟合并窗口
+        for (int i = 0; i < 100; i++) {
+            due = mMachine.onHeightSampled(300 + i, mNow, WINDOW);
+            mMachine.settle(mNow);
+            if (!mEvents.isEmpty())
+                break;
+            mNow += FRAME;
+        }
+        assertEquals(1, mEvents.size());
+        // 在最长等待时间之后的第一帧确定
+        assertTrue("settled at " + (mNow - start), mNow - start < WINDOW * 3 + FRAME);
+        assertEquals(start + WINDOW * 3, due);
+    }
+
+    @Test
+    public void hideKeepsLastHeight() {
+        showAndSettle(800);
+        hideAndSettle();
+        assertEquals(events("shown 800", "hidden 0"), mEvents);
+        assertFalse(mMachine.isShowing());
+        // 隐藏后仍然保留最后的高度
+        assertEquals(800, mMachine.getHeight());
+
+        // 再次显示为同样的高度，是状态改变而不是高度改变
+        showAndSettle(800);
+        assertEquals(events("shown 800", "hidden 0", "shown 800"), mEvents);
+    }
+
+    @Test
+    public void settleBeforeDueTimeDoesNothing() {
+        long due = mMachine.onHeightSampled(800, mNow, WINDOW);
+        assertEquals(mNow + WINDOW, due);
+        assertFalse(mMachine.settle(due - 1));
+        assertTrue(mMachine.settle(due));
+        assertFalse(mMachine.settle(due + WINDOW));
+        assertEquals(events("shown 800"), mEvents);
+    }
+
+    @Test
+    public void cancelDropsPendingChange() {
+        sample(800);
+        mMachine.cancel();
+        idle(WINDOW);
+        assertTrue(mEvents.isEmpty());
+        assertFalse(mMachine.isShowing());
+    }
+
+    @Test
+    public void zeroWindowSettlesOnNextSettle() {
+        assertEquals(mNow, mMachine.onHeightSampled(800, mNow, 0));
+        assertTrue(mMachine.settle(mNow));
+        assertEquals(events("shown 800"), mEvents);
+    }
+
+    private void showAndSettle(int height) {
+        sample(height);
+        idle(WINDOW);
+    }
+
+    private void hideAndSettle() {
+        sample(0);
+        idle(WINDOW);
+    }
+
+    /**
+     * 一帧检测到一个高度
+     */
+    private void sample(int height) {
+        mMachine.onHeightSampled(height, mNow, WINDOW);
+        mMachine.settle(mNow);
+        mNow += FRAME;
+    }
+
+    /**
+     * 一段时间内没有新的高度，每一帧尝试确定一次
+     */
+    private void idle(long duration) {
+        long end = mNow + duration;
+        while (mNow <= end) {
+            mMachine.settle(mNow);
+            mNow += FRAME;
+        }
+    }
+
+    private static List<String> events(String... events) {
+        List<String> list = new ArrayList<>();
+        for (String event : events) {
+            list.add(event);
+        }
+        return list;
+    }
+}
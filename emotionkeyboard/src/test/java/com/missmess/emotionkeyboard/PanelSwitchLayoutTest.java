@@ -0,0 +1,103 @@
+package com.missmess.emotionkeyboard;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 切换表情布局引起的布局次数：只通过translationY切换时，第一次显示后再切换不会引起任何measure/layout；
+ * 通过visibility切换时每次都要重新布局。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+@RunWith(ImeTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class PanelSwitchLayoutTest {
+    private ChatScreen mScreen;
+
+    @Before
+    public void setUp() {
+        mScreen = new ChatScreen();
+    }
+
+    @Test
+    public void switchingByTranslationDoesNotLayout() {
+        EmojiconKeyBoard keyboard = mScreen.keyboardBuilder(true).build();
+        mScreen.runFrames();
+        keyboard.showEmotionLayout(0);
+        mScreen.runFrames();
+        mScreen.resetPanelCounts();
+
+        for (int i = 0; i < 10; i++) {
+            keyboard.showEmotionLayout(1);
+            assertFalse("switching requested a layout", mScreen.root.isLayoutRequested());
+            mScreen.runFrames();
+            keyboard.showEmotionLayout(0);
+            assertFalse("switching requested a layout", mScreen.root.isLayoutRequested());
+            mScreen.runFrames();
+        }
+        assertEquals(0, mScreen.panelLayoutCount());
+        assertEquals(0, mScreen.panels[0].measureCount + mScreen.panels[1].measureCount);
+        assertEquals(0f, mScreen.panels[0].getTranslationY(), 0f);
+        assertTrue(mScreen.panels[1].getTranslationY() > 0);
+        assertEquals(View.VISIBLE, mScreen.panels[1].getVisibility());
+        keyboard.release();
+    }
+
+    @Test
+    public void growingKeyboardKeepsPanelsOffscreen() {
+        EmojiconKeyBoard keyboard = mScreen.keyboardBuilder(true).build();
+        mScreen.runFrames();
+        View container = (View) mScreen.panels[0].getParent();
+        keyboard.showSoftKeyboard();
+        mScreen.ime.show(300);
+        mScreen.ime.hide();
+        assertEquals(300, container.getLayoutParams().height);
+
+        // 没有表情布局显示时弹出更高的键盘，容器改为键盘高度
+        mScreen.ime.show(400);
+        assertEquals(400, container.getLayoutParams().height);
+        assertPanelsTranslatedBy(400);
+
+        // 键盘显示期间再变高
+        mScreen.ime.show(500);
+        assertEquals(500, container.getLayoutParams().height);
+        assertPanelsTranslatedBy(500);
+        keyboard.release();
+    }
+
+    private void assertPanelsTranslatedBy(int offscreen) {
+        for (View panel : mScreen.panels) {
+            assertEquals(offscreen, panel.getTranslationY(), 0f);
+        }
+    }
+
+    @Test
+    public void switchingByVisibilityLaysOutEveryTime() {
+        EmojiconKeyBoard keyboard = mScreen.keyboardBuilder(false).build();
+        mScreen.runFrames();
+        keyboard.showEmotionLayout(0);
+        mScreen.runFrames();
+        mScreen.resetPanelCounts();
+
+        for (int i = 0; i < 10; i++) {
+            keyboard.showEmotionLayout(1);
+            assertTrue(mScreen.root.isLayoutRequested());
+            mScreen.runFrames();
+            keyboard.showEmotionLayout(0);
+            assertTrue(mScreen.root.isLayoutRequested());
+            mScreen.runFrames();
+        }
+        assertEquals(20, mScreen.panelLayoutCount());
+        assertEquals(View.GONE, mScreen.panels[1].getVisibility());
+        keyboard.release();
+    }
+}
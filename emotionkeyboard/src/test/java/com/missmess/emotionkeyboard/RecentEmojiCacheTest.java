@@ -0,0 +1,190 @@
+package com.missmess.emotionkeyboard;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link RecentEmojiCache} 的LRU顺序、淘汰、删除、频率排序以及序列化，不涉及Android framework。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+public class RecentEmojiCacheTest {
+
+    @Test
+    public void mostRecentComesFirst() {
+        RecentEmojiCache recents = new RecentEmojiCache(8);
+        recents.touch(1);
+        recents.touch(2);
+        recents.touch(3);
+        assertArrayEquals(new int[]{3, 2, 1}, recent(recents));
+
+        recents.touch(1);
+        assertArrayEquals(new int[]{1, 3, 2}, recent(recents));
+        assertEquals(3, recents.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        RecentEmojiCache recents = new RecentEmojiCache(3);
+        recents.touch(1);
+        recents.touch(2);
+        recents.touch(3);
+        // 1重新使用后，最久没有使用的是2
+        recents.touch(1);
+        recents.touch(4);
+        assertFalse(recents.contains(2));
+        assertArrayEquals(new int[]{4, 1, 3}, recent(recents));
+        assertEquals(3, recents.size());
+    }
+
+    @Test
+    public void removeKeepsOrder() {
+        RecentEmojiCache recents = new RecentEmojiCache(8);
+        for (int id = 1; id <= 5; id++) {
+            recents.touch(id);
+        }
+        assertTrue(recents.remove(3));
+        assertTrue(recents.remove(5));
+        assertTrue(recents.remove(1));
+        assertFalse(recents.remove(1));
+        assertArrayEquals(new int[]{4, 2}, recent(recents));
+
+        recents.touch(3);
+        assertArrayEquals(new int[]{3, 4, 2}, recent(recents));
+    }
+
+    @Test
+    public void outputIsLimitedByArrayLength() {
+        RecentEmojiCache recents = new RecentEmojiCache(8);
+        for (int id = 1; id <= 5; id++) {
+            recents.touch(id);
+        }
+        int[] out = new int[2];
+        assertEquals(2, recents.getRecent(out));
+        assertArrayEquals(new int[]{5, 4}, out);
+    }
+
+    /**
+     * 随机操作，和LinkedHashMap实现的LRU比较，覆盖哈希冲突和删除后的探测链
+     */
+    @Test
+    public void matchesReferenceLru() {
+        int capacity = 16;
+        RecentEmojiCache recents = new RecentEmojiCache(capacity);
+        LinkedHashMap<Integer, Boolean> reference = new LinkedHashMap<>(capacity, 0.75f, true);
+        Random random = new Random(42);
+        for (int step = 0; step < 20000; step++) {
+            // 取值范围比容量大一些，同时包含负数和很大的code point
+            int id = (random.nextInt(40) - 8) * 0x10001;
+            if (random.nextInt(5) == 0) {
+                assertEquals(reference.remove(id) != null, recents.remove(id));
+            } else {
+                recents.touch(id);
+                reference.put(id, Boolean.TRUE);
+                if (reference.size() > capacity) {
+                    reference.remove(reference.keySet().iterator().next());
+                }
+            }
+            List<Integer> expected = new ArrayList<>(reference.keySet());
+            Collections.reverse(expected);
+            int[] actual = recent(recents);
+            assertEquals(expected.size(), actual.length);
+            for (int i = 0; i < actual.length; i++) {
+                assertEquals("step " + step, (int) expected.get(i), actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void frequentlyUsedRanksFirst() {
+        RecentEmojiCache recents = new RecentEmojiCache(8);
+        for (int i = 0; i < 5; i++) {
+            recents.touch(7);
+        }
+        recents.touch(1);
+        recents.touch(2);
+        int[] out = new int[3];
+        assertEquals(3, recents.getRanked(out));
+        assertEquals(7, out[0]);
+        // 频率相同时最近使用的在前
+        assertEquals(2, out[1]);
+        assertEquals(1, out[2]);
+    }
+
+    @Test
+    public void serializationKeepsOrderAndRanking() {
+        RecentEmojiCache recents = new RecentEmojiCache(8);
+        for (int i = 0; i < 5; i++) {
+            recents.touch(7);
+        }
+        recents.touch(1);
+        recents.touch(2);
+
+        RecentEmojiCache loaded = new RecentEmojiCache(8);
+        loaded.load(recents.toByteArray());
+        assertArrayEquals(recent(recents), recent(loaded));
+        assertArrayEquals(ranked(recents), ranked(loaded));
+    }
+
+    @Test
+    public void corruptDataIsIgnored() throws IOException {
+        RecentEmojiCache recents = new RecentEmojiCache(8);
+        // 个数远大于实际的数据
+        recents.load(data(1, 0, Integer.MAX_VALUE));
+        assertEquals(0, recents.size());
+        recents.load(data(1, 0, -1));
+        assertEquals(0, recents.size());
+        // 未知版本
+        recents.load(data(99, 0, 0));
+        assertEquals(0, recents.size());
+
+        // 截断的数据
+        RecentEmojiCache valid = new RecentEmojiCache(8);
+        valid.touch(1);
+        valid.touch(2);
+        byte[] bytes = valid.toByteArray();
+        byte[] truncated = new byte[bytes.length - 4];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        recents.load(truncated);
+        assertEquals(0, recents.size());
+    }
+
+    private static int[] recent(RecentEmojiCache recents) {
+        int[] out = new int[recents.getCapacity()];
+        int count = recents.getRecent(out);
+        int[] result = new int[count];
+        System.arraycopy(out, 0, result, 0, count);
+        return result;
+    }
+
+    private static int[] ranked(RecentEmojiCache recents) {
+        int[] out = new int[recents.getCapacity()];
+        int count = recents.getRanked(out);
+        int[] result = new int[count];
+        System.arraycopy(out, 0, result, 0, count);
+        return result;
+    }
+
+    private static byte[] data(int... ints) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i : ints) {
+            out.writeInt(i);
+        }
+        return bytes.toByteArray();
+    }
+}
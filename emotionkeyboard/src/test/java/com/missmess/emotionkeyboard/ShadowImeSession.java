@@ -0,0 +1,108 @@
+package com.missmess.emotionkeyboard;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.view.Display;
+import android.view.WindowManager;
+
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.shadows.ShadowDisplay;
+import org.robolectric.shadows.ShadowWindowManagerGlobal;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * 模拟软键盘的shadow，由 {@link ImeTestRunner} 安装。Robolectric中window没有IWindowSession，
+ * {@link android.view.View#getWindowVisibleDisplayFrame(Rect)} 拿不到可见区域；这里给所有window提供一个
+ * IWindowSession，可见区域为屏幕减去 {@link #setImeHeight(int)} 设置的键盘高度。
+ * <p>
+ * 修改键盘高度后需要触发一次全局布局，{@link KeyboardDetector} 才会检测到变化。
+ * <p>
+ * session必须是Robolectric插桩过的framework类的实例，framework代码对它的调用才会交给shadow处理，
+ * 所以这里shadow的是aidl生成的IWindowSession.Stub.Proxy，除了getDisplayFrame其它方法都什么也不做。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+@Implements(className = "android.view.IWindowSession$Stub$Proxy", callThroughByDefault = false,
+        looseSignatures = true)
+public class ShadowImeSession {
+    private static int sImeHeight;
+    private static Object sSession;
+
+    /**
+     * 设置键盘高度，0代表键盘收起
+     * @param height 像素
+     */
+    public static void setImeHeight(int height) {
+        sImeHeight = height;
+    }
+
+    public static int getImeHeight() {
+        return sImeHeight;
+    }
+
+    /**
+     * Robolectric默认的屏幕有54像素的虚拟按键栏，{@link DisplayFrameKeyboardDetector} 会从键盘高度中
+     * 减去它。这里模拟没有虚拟按键栏的设备，检测到的高度就等于设置的键盘高度。要在开始检测前调用。
+     * @param context Context
+     */
+    public static void removeNavigationBar(Context context) {
+        Display display = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+        ShadowDisplay shadowDisplay = Shadows.shadowOf(display);
+        DisplayMetrics metrics = new DisplayMetrics();
+        display.getMetrics(metrics);
+        shadowDisplay.setRealWidth(metrics.widthPixels);
+        shadowDisplay.setRealHeight(metrics.heightPixels);
+    }
+
+    @Resetter
+    public static void reset() {
+        sImeHeight = 0;
+        sSession = null;
+    }
+
+    @Implementation
+    public void getDisplayFrame(Object window, Object outDisplayFrame) {
+        DisplayMetrics metrics = RuntimeEnvironment.application.getResources().getDisplayMetrics();
+        ((Rect) outDisplayFrame).set(0, 0, metrics.widthPixels, Math.max(0, metrics.heightPixels - sImeHeight));
+    }
+
+    private static Object getSession() {
+        if (sSession == null) {
+            try {
+                Class<?> proxyClass = Class.forName("android.view.IWindowSession$Stub$Proxy");
+                Constructor<?> constructor = proxyClass.getDeclaredConstructor(IBinder.class);
+                constructor.setAccessible(true);
+                sSession = constructor.newInstance(new Binder());
+            } catch (Exception e) {
+                throw new IllegalStateException("can not create IWindowSession", e);
+            }
+        }
+        return sSession;
+    }
+
+    /**
+     * 让所有window都使用 {@link ShadowImeSession}
+     */
+    @Implements(className = "android.view.WindowManagerGlobal", isInAndroidSdk = false)
+    public static class TheWindowManagerGlobal extends ShadowWindowManagerGlobal {
+        @Implementation
+        public static Object getWindowSession() {
+            return getSession();
+        }
+
+        @Implementation
+        public static Object getWindowSession(Looper looper) {
+            return getSession();
+        }
+    }
+}
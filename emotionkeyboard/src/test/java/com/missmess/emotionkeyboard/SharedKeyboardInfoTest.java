@@ -0,0 +1,121 @@
+package com.missmess.emotionkeyboard;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 同一个activity中的两个 {@link EmojiconKeyBoard} 共用一个 {@link KeyboardInfo}：其中一个停止监听或者释放后，
+ * 另一个仍然能收到键盘状态的变化，最后一个释放后才停止检测。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+@RunWith(ImeTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25)
+public class SharedKeyboardInfoTest {
+    private static final int IME_HEIGHT = 700;
+
+    private ChatScreen mFirstScreen;
+    private ChatScreen mSecondScreen;
+    private EmojiconKeyBoard mFirst;
+    private EmojiconKeyBoard mSecond;
+    private KeyboardInfo mInfo;
+    private final List<String> mFirstEvents = new ArrayList<>();
+    private final List<String> mSecondEvents = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mFirstScreen = new ChatScreen();
+        mSecondScreen = new ChatScreen(mFirstScreen);
+        mFirst = mFirstScreen.keyboardBuilder(true)
+                .keyboardStateCallback(new TheRecordingListener(mFirstEvents))
+                .build();
+        mSecond = mSecondScreen.keyboardBuilder(true)
+                .keyboardStateCallback(new TheRecordingListener(mSecondEvents))
+                .build();
+        mFirstScreen.runFrames();
+        mInfo = KeyboardInfo.from(mFirstScreen.activity);
+    }
+
+    @After
+    public void tearDown() {
+        mFirst.release();
+        mSecond.release();
+        mInfo.detach();
+    }
+
+    @Test
+    public void bothKeyboardsListen() {
+        assertEquals(2, mInfo.getListeningCount());
+        mFirstScreen.ime.show(IME_HEIGHT);
+        mFirstScreen.ime.hide();
+
+        List<String> expected = Arrays.asList("shown 700", "hidden 0");
+        assertEquals(expected, mFirstEvents);
+        assertEquals(expected, mSecondEvents);
+    }
+
+    @Test
+    public void backPressOnOneKeyboardKeepsTheOtherListening() {
+        assertFalse(mFirst.interceptBackPress());
+        // 多次返回只释放一次
+        assertFalse(mFirst.interceptBackPress());
+        assertEquals(1, mInfo.getListeningCount());
+
+        mFirstScreen.ime.show(IME_HEIGHT);
+        mFirstScreen.ime.hide();
+        assertEquals(Arrays.<String>asList(), mFirstEvents);
+        assertEquals(Arrays.asList("shown 700", "hidden 0"), mSecondEvents);
+    }
+
+    @Test
+    public void releaseOnOneKeyboardKeepsTheOtherListening() {
+        mSecond.release();
+        mSecond.release();
+        assertEquals(1, mInfo.getListeningCount());
+
+        mFirstScreen.ime.show(IME_HEIGHT);
+        assertEquals(Arrays.asList("shown 700"), mFirstEvents);
+        assertEquals(Arrays.<String>asList(), mSecondEvents);
+
+        // 最后一个使用者释放后停止检测
+        mFirst.release();
+        assertEquals(0, mInfo.getListeningCount());
+        mFirstScreen.ime.hide();
+        assertEquals(Arrays.asList("shown 700"), mFirstEvents);
+    }
+
+    @Test
+    public void keyboardDetectorDoesNotReplaceTheSharedOne() {
+        KeyboardDetector detector = mInfo.getKeyboardDetector();
+        EmojiconKeyBoard third = new ChatScreen(mFirstScreen).keyboardBuilder(true)
+                .keyboardDetector(new WindowInsetsKeyboardDetector(mFirstScreen.activity))
+                .build();
+        assertSame(detector, mInfo.getKeyboardDetector());
+        third.release();
+    }
+
+    private static class TheRecordingListener implements KeyboardInfo.OnSoftKeyboardChangeListener {
+        private final List<String> mEvents;
+
+        TheRecordingListener(List<String> events) {
+            mEvents = events;
+        }
+
+        @Override
+        public void onSoftKeyboardStateChanged(boolean shown, int height) {
+            mEvents.add((shown ? "shown " : "hidden ") + height);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 读取emoji-catalog-generator生成的版本1、2目录，以及拒绝被截断、偏移越界的文件，不涉及Android framework。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+public class EmojiCatalogTest {
+    private static final String TEXT = "# 测试用目录\n"
+            + "@笑脸\n"
+            + "1F600\tgrinning face\tsmile happy\n"
+            + "1F602\tface with tears of joy\tlaugh Happy\n"
+            + "\n"
+            + "@人物\n"
+            + "1F468 200D 1F469 200D 1F467\tfamily\tfamily\n"
+            + "1F44D 1F3FD\tthumbs up\tlike ok\n";
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+    private byte[] mVersion2;
+
+    @Before
+    public void setUp() throws IOException {
+        mVersion2 = TestCatalogs.generate(mFolder.getRoot(), TEXT);
+    }
+
+    @Test
+    public void readsVersion2() throws IOException {
+        EmojiCatalog catalog = TestCatalogs.open(mVersion2);
+        assertCatalog(catalog);
+
+        // 关键字表按字典序排列，每个条目的关键字都来自对应emoji的关键字或者名称
+        assertEquals(16, catalog.getKeywordCount());
+        String last = "";
+        for (int entry = 0; entry < catalog.getKeywordCount(); entry++) {
+            String keyword = catalog.getKeyword(entry);
+            assertTrue(last + " > " + keyword, last.compareTo(keyword) <= 0);
+            int emoji = catalog.getKeywordEmoji(entry);
+            String words = " " + catalog.getKeywords(emoji) + " " + catalog.getName(emoji).toLowerCase() + " ";
+            assertTrue(keyword + " not in " + words, words.contains(" " + keyword + " "));
+            last = keyword;
+        }
+    }
+
+    @Test
+    public void readsVersion1() throws IOException {
+        EmojiCatalog catalog = TestCatalogs.open(TestCatalogs.toVersion1(mVersion2));
+        assertCatalog(catalog);
+        assertEquals(0, catalog.getKeywordCount());
+    }
+
+    @Test
+    public void rejectsTruncatedFiles() {
+        assertRejectsTruncated(mVersion2);
+        assertRejectsTruncated(TestCatalogs.toVersion1(mVersion2));
+    }
+
+    @Test
+    public void rejectsOutOfRangeOffsets() {
+        // 文件头24字节，2个分类各12字节，之后是emoji表
+        int emojiTable = 24 + 2 * 12;
+        ByteBuffer buffer = ByteBuffer.wrap(mVersion2.clone());
+        buffer.putInt(emojiTable + 20, Integer.MAX_VALUE);
+        assertRejected(buffer.array());
+
+        buffer = ByteBuffer.wrap(mVersion2.clone());
+        buffer.putShort(emojiTable + 16, Short.MAX_VALUE);
+        assertRejected(buffer.array());
+
+        // 第二个分类从不存在的emoji开始
+        buffer = ByteBuffer.wrap(mVersion2.clone());
+        buffer.putInt(24 + 12 + 8, 5);
+        assertRejected(buffer.array());
+
+        // 关键字指向不存在的emoji
+        buffer = ByteBuffer.wrap(mVersion2.clone());
+        buffer.putInt(buffer.getInt(20) + 4, 4);
+        assertRejected(buffer.array());
+
+        // emoji数量超出文件
+        buffer = ByteBuffer.wrap(mVersion2.clone());
+        buffer.putInt(8, Integer.MAX_VALUE / 4);
+        assertRejected(buffer.array());
+
+        buffer = ByteBuffer.wrap(mVersion2.clone());
+        buffer.putInt(0, 0);
+        assertRejected(buffer.array());
+    }
+
+    private static void assertCatalog(EmojiCatalog catalog) {
+        assertEquals(2, catalog.getCategoryCount());
+        assertEquals("笑脸", catalog.getCategoryName(0));
+        assertEquals("人物", catalog.getCategoryName(1));
+        assertEquals(0, catalog.getCategoryStart(0));
+        assertEquals(2, catalog.getCategorySize(0));
+        assertEquals(2, catalog.getCategoryStart(1));
+        assertEquals(2, catalog.getCategorySize(1));
+
+        assertEquals(4, catalog.getEmojiCount());
+        assertEquals("😀", catalog.getEmoji(0));
+        assertEquals("👨‍👩‍👧", catalog.getEmoji(2));
+        assertEquals("👍🏽", catalog.getEmoji(3));
+        assertEquals("face with tears of joy", catalog.getName(1));
+        assertEquals("laugh happy", catalog.getKeywords(1));
+
+        char[] chars = new char[10];
+        int length = catalog.getEmojiChars(2, chars, 1);
+        assertEquals(catalog.getEmojiLength(2), length);
+        assertEquals(catalog.getEmoji(2), new String(chars, 1, length));
+
+        EmojiCatalog.CategoryData data = catalog.getCategoryData(1);
+        assertEquals(2, data.count);
+        assertEquals(catalog.getEmoji(3), new String(data.chars, data.starts[1], data.starts[2] - data.starts[1]));
+    }
+
+    private static void assertRejectsTruncated(byte[] catalog) {
+        for (int length = 0; length < catalog.length; length++) {
+            assertRejected(Arrays.copyOf(catalog, length));
+        }
+    }
+
+    private static void assertRejected(byte[] catalog) {
+        try {
+            TestCatalogs.open(catalog);
+            fail("accepted a corrupted catalog of " + catalog.length + " bytes");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
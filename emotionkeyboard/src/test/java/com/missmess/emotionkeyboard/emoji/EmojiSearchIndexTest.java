@@ -0,0 +1,251 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 用随机的输入序列（延伸、删除、替换、大小写混合）驱动 {@link EmojiSearchIndex.Query}，和逐个扫描关键字表的
+ * 结果对比，同时检查在上一次范围内查找和从头查找的次数，不涉及Android framework。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+public class EmojiSearchIndexTest {
+    private static final String[] WORDS = {
+            "s", "sm", "smile", "smiley", "smiling", "smirk", "sun", "sunny", "star", "face", "fac", "fire",
+            "heart", "hearts", "hand", "happy", "cat", "cats", "car", "ok", "o", "zzz"
+    };
+    private static final int EMOJI_COUNT = 300;
+    private static final int STEPS = 3000;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+    private EmojiCatalog mCatalog;
+    private EmojiSearchIndex mIndex;
+
+    @Before
+    public void setUp() throws IOException {
+        mCatalog = TestCatalogs.open(TestCatalogs.generate(mFolder.getRoot(), generateText(new Random(0))));
+        mIndex = new EmojiSearchIndex(mCatalog);
+    }
+
+    @Test
+    public void typingMatchesFullScan() {
+        EmojiSearchIndex.Query query = mIndex.newQuery();
+        assertQuery(query, "s", null, 10);
+        assertQuery(query, "Sm", null, 10);
+        assertQuery(query, "SMI", null, 10);
+        assertQuery(query, "smile", null, 10);
+        // 第一个字母从整个表开始，之后的都是延伸
+        assertEquals(3, query.getRefineCount());
+        assertEquals(1, query.getRestartCount());
+
+        // 删除字符、改成其它输入、清空都从整个表开始
+        assertQuery(query, "smil", null, 10);
+        assertQuery(query, "sun", null, 10);
+        assertQuery(query, "", null, 10);
+        assertQuery(query, "x", null, 10);
+        assertEquals(3, query.getRefineCount());
+        assertEquals(4, query.getRestartCount());
+    }
+
+    @Test
+    public void randomEditsMatchFullScan() {
+        Random random = new Random(1);
+        EmojiSearchIndex.Query query = mIndex.newQuery();
+        StringBuilder text = new StringBuilder();
+        String last = "";
+        int refines = 0;
+        int restarts = 0;
+        for (int step = 0; step < STEPS; step++) {
+            int op = random.nextInt(4);
+            if (op == 0 || text.length() == 0) {
+                // 输入一个字母，可能是大写
+                String word = WORDS[random.nextInt(WORDS.length)];
+                char c = text.length() < word.length() ? word.charAt(text.length()) : 'e';
+                text.append(random.nextBoolean() ? Character.toUpperCase(c) : c);
+            } else if (op == 1) {
+                text.setLength(text.length() - 1);
+            } else if (op == 2) {
+                // 替换为另一个词的前缀
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.setLength(0);
+                text.append(mixCase(random, word.substring(0, 1 + random.nextInt(word.length()))));
+            } else {
+                text.setLength(random.nextInt(text.length() + 1));
+            }
+
+            String lower = text.toString().toLowerCase(Locale.ROOT);
+            if (lower.length() > 0) {
+                if (last.length() > 0 && lower.startsWith(last)) {
+                    refines++;
+                } else {
+                    restarts++;
+                }
+            }
+            last = lower;
+
+            int[] recents = randomRecents(random);
+            assertQuery(query, text.toString(), recents, random.nextInt(12));
+            assertEquals("step " + step, refines, query.getRefineCount());
+            assertEquals("step " + step, restarts, query.getRestartCount());
+        }
+    }
+
+    @Test
+    public void recentsComeFirstOnce() {
+        EmojiSearchIndex.Query query = mIndex.newQuery();
+        query.update("s");
+        int[] all = new int[EMOJI_COUNT];
+        int count = query.getResults(all, null, 0);
+        int[] recents = {all[count - 1], -1, all[count - 1], EMOJI_COUNT, all[0], findUnmatched("s")};
+        int[] out = new int[count];
+
+        assertEquals(count, query.getResults(out, recents, recents.length));
+        assertEquals(all[count - 1], out[0]);
+        assertEquals(all[0], out[1]);
+        assertEquals(all[1], out[2]);
+        assertEquals(new LinkedHashSet<>(toList(out, count)).size(), count);
+
+        // 只使用前recentCount个
+        assertEquals(count, query.getResults(out, recents, 0));
+        assertArrayEquals(all, Arrays.copyOf(out, EMOJI_COUNT));
+    }
+
+    @Test
+    public void shortOutputKeepsTheFirstResults() {
+        EmojiSearchIndex.Query query = mIndex.newQuery();
+        query.update("h");
+        int[] recents = {5, 7};
+        int[] expected = expectedResults("h", recents, EMOJI_COUNT);
+        for (int length = 0; length <= 3; length++) {
+            int[] out = new int[length];
+            int count = query.getResults(out, recents, recents.length);
+            assertEquals(Math.min(length, expected.length), count);
+            assertArrayEquals(Arrays.copyOf(expected, count), out);
+        }
+    }
+
+    private void assertQuery(EmojiSearchIndex.Query query, String text, int[] recents, int outLength) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        int matched = query.update(text);
+        assertEquals(lower, query.getText());
+        assertEquals(text, countEntries(lower), matched);
+
+        int[] out = new int[outLength];
+        int count = query.getResults(out, recents, recents != null ? recents.length : 0);
+        int[] expected = expectedResults(lower, recents, outLength);
+        assertArrayEquals(text, expected, Arrays.copyOf(out, count));
+    }
+
+    // 逐个扫描关键字表：以prefix开头的条目个数
+    private int countEntries(String prefix) {
+        if (prefix.isEmpty())
+            return 0;
+        int count = 0;
+        for (int entry = 0; entry < mCatalog.getKeywordCount(); entry++) {
+            if (mCatalog.getKeyword(entry).startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // 逐个扫描关键字表：最近使用的在前，其余按关键字表的顺序，每个emoji只出现一次
+    private int[] expectedResults(String prefix, int[] recents, int limit) {
+        LinkedHashSet<Integer> matched = new LinkedHashSet<>();
+        if (!prefix.isEmpty()) {
+            for (int entry = 0; entry < mCatalog.getKeywordCount(); entry++) {
+                if (mCatalog.getKeyword(entry).startsWith(prefix)) {
+                    matched.add(mCatalog.getKeywordEmoji(entry));
+                }
+            }
+        }
+        LinkedHashSet<Integer> results = new LinkedHashSet<>();
+        if (recents != null) {
+            for (int id : recents) {
+                if (matched.contains(id)) {
+                    results.add(id);
+                }
+            }
+        }
+        results.addAll(matched);
+        int[] expected = new int[Math.min(limit, results.size())];
+        int i = 0;
+        for (Integer id : results) {
+            if (i == expected.length)
+                break;
+            expected[i++] = id;
+        }
+        return expected;
+    }
+
+    private int findUnmatched(String prefix) {
+        for (int id = 0; id < EMOJI_COUNT; id++) {
+            if (expectedResults(prefix, new int[]{id}, 1)[0] != id) {
+                return id;
+            }
+        }
+        return 0;
+    }
+
+    private static int[] randomRecents(Random random) {
+        if (random.nextInt(4) == 0)
+            return null;
+        int[] recents = new int[random.nextInt(8)];
+        for (int i = 0; i < recents.length; i++) {
+            // 包含重复和无效的id
+            recents[i] = random.nextInt(EMOJI_COUNT + 4) - 2;
+        }
+        return recents;
+    }
+
+    private static String mixCase(Random random, String word) {
+        StringBuilder builder = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            builder.append(random.nextBoolean() ? Character.toUpperCase(c) : c);
+        }
+        return builder.toString();
+    }
+
+    private static List<Integer> toList(int[] values, int count) {
+        List<Integer> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(values[i]);
+        }
+        return list;
+    }
+
+    private static String generateText(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < EMOJI_COUNT; i++) {
+            if (i % 50 == 0) {
+                text.append("@category ").append(i).append('\n');
+            }
+            text.append(Integer.toHexString(0x1F300 + i)).append('\t')
+                    .append(WORDS[random.nextInt(WORDS.length)]).append(' ')
+                    .append(WORDS[random.nextInt(WORDS.length)]).append('\t');
+            int keywords = 1 + random.nextInt(3);
+            for (int k = 0; k < keywords; k++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(k == 0 ? mixCase(random, word) : word).append(' ');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
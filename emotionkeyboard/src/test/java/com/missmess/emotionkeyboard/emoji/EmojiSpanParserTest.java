@@ -0,0 +1,162 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 随机编辑文本（插入、删除、替换，可能拆开emoji和代理对），每次编辑后 {@link EmojiSpanParser} 增量解析的span
+ * 必须和重新解析整个文本的结果相同，不涉及Android framework。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+public class EmojiSpanParserTest {
+    /** 插入的片段：完整的emoji、emoji的一部分（修饰符、ZWJ、U+FE0F、半个代理对）以及普通文字 */
+    private static final String[] PIECES = {
+            "😀", "👍", "👍🏽", "🏽", "👨\u200D👩\u200D👧", "\u200D", "👩", "❤", "\uFE0F", "❤\uFE0F", "🇨🇳", "🇨",
+            "1\uFE0F\u20E3", "1", "\u20E3", "#", "\uD83D", "\uDE00", "a", "你好", " ", "ok\n"
+    };
+    private static final int STEPS = 3000;
+
+    @Test
+    public void incrementalParseMatchesFullParseWithUnicodeMatcher() {
+        assertIncrementalMatchesFull(new UnicodeEmojiMatcher(), new Random(0));
+    }
+
+    @Test
+    public void incrementalParseMatchesFullParseWithTrie() {
+        EmojiTrie trie = new EmojiTrie(new String[]{
+                "😀", "👍", "👍🏽", "👨", "👩", "👧", "👨\u200D👩\u200D👧", "❤", "❤\u200D🔥", "🇨🇳", "1\uFE0F\u20E3"
+        });
+        assertIncrementalMatchesFull(trie, new Random(1));
+    }
+
+    @Test
+    public void mergesEditsUntilParsed() {
+        EmojiSpanParser parser = new EmojiSpanParser(new UnicodeEmojiMatcher());
+        TheListSpans spans = new TheListSpans();
+        StringBuilder text = new StringBuilder("ab");
+        parser.parse(text, 0, text.length(), spans);
+
+        // 一个emoji分两次输入，中间不解析
+        edit(text, spans, parser, 1, 0, "\uD83D");
+        edit(text, spans, parser, 2, 0, "\uDE00");
+        parser.parseDirty(text, spans);
+        assertEquals("[1-3]", spans.toString());
+
+        // 删除后面的文字，之前记录的范围跟着移动
+        edit(text, spans, parser, 0, 0, "xyz");
+        edit(text, spans, parser, 6, 1, "");
+        parser.parseDirty(text, spans);
+        assertEquals("[4-6]", spans.toString());
+    }
+
+    private static void assertIncrementalMatchesFull(EmojiMatcher matcher, Random random) {
+        EmojiSpanParser parser = new EmojiSpanParser(matcher);
+        TheListSpans spans = new TheListSpans();
+        StringBuilder text = new StringBuilder();
+        for (int step = 0; step < STEPS; step++) {
+            // 一次afterTextChanged之前可能有多次修改，比如输入法替换组合文字
+            int edits = 1 + random.nextInt(3);
+            for (int e = 0; e < edits; e++) {
+                int start = random.nextInt(text.length() + 1);
+                int before = random.nextInt(4) == 0 ? 0 : random.nextInt(Math.min(6, text.length() - start) + 1);
+                String inserted = random.nextInt(3) == 0 ? "" : PIECES[random.nextInt(PIECES.length)];
+                if (text.length() > 200) {
+                    inserted = "";
+                }
+                edit(text, spans, parser, start, before, inserted);
+            }
+            parser.parseDirty(text, spans);
+
+            TheListSpans expected = new TheListSpans();
+            EmojiSpanParser fullParser = new EmojiSpanParser(matcher);
+            fullParser.parse(text, 0, text.length(), expected);
+            assertEquals("step " + step + " text " + escape(text), expected.toString(), spans.toString());
+        }
+    }
+
+    private static void edit(StringBuilder text, TheListSpans spans, EmojiSpanParser parser,
+                             int start, int before, String inserted) {
+        text.replace(start, start + before, inserted);
+        spans.replace(start, before, inserted.length());
+        parser.textChanged(start, before, inserted.length());
+    }
+
+    private static String escape(CharSequence text) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            builder.append(String.format("\\u%04X", (int) text.charAt(i)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 和Editable中SPAN_EXCLUSIVE_EXCLUSIVE的span一样随文本修改移动：修改之后的span向后偏移，和修改范围相交的
+     * span伸缩到修改的边界，变为空的span被移除
+     */
+    private static class TheListSpans implements EmojiSpanParser.Spans {
+        private final List<int[]> mSpans = new ArrayList<>();
+
+        void replace(int start, int before, int count) {
+            int delta = count - before;
+            for (int i = mSpans.size() - 1; i >= 0; i--) {
+                int[] span = mSpans.get(i);
+                if (span[1] <= start)
+                    continue;
+                if (span[0] >= start + before) {
+                    span[0] += delta;
+                    span[1] += delta;
+                } else {
+                    span[0] = Math.min(span[0], start);
+                    span[1] = Math.max(start + count, span[1] + delta);
+                }
+                if (span[0] >= span[1]) {
+                    mSpans.remove(i);
+                }
+            }
+        }
+
+        @Override
+        public void removeSpans(int from, int to, int[] bounds) {
+            for (int i = mSpans.size() - 1; i >= 0; i--) {
+                int[] span = mSpans.get(i);
+                boolean intersects = from == to ? span[0] <= to && span[1] >= from : span[0] < to && span[1] > from;
+                if (intersects) {
+                    bounds[0] = Math.min(bounds[0], span[0]);
+                    bounds[1] = Math.max(bounds[1], span[1]);
+                    mSpans.remove(i);
+                }
+            }
+        }
+
+        @Override
+        public void addSpan(int start, int end) {
+            mSpans.add(new int[]{start, end});
+        }
+
+        @Override
+        public String toString() {
+            List<String> spans = new ArrayList<>();
+            for (int[] span : mSpans) {
+                spans.add(String.format("%05d-%05d", span[0], span[1]));
+            }
+            Collections.sort(spans);
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < spans.size(); i++) {
+                String[] bounds = spans.get(i).split("-");
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(Integer.parseInt(bounds[0])).append('-').append(Integer.parseInt(bounds[1]));
+            }
+            return builder.append(']').toString();
+        }
+    }
+}
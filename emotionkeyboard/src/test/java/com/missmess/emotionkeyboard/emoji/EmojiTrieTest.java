@@ -0,0 +1,140 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link EmojiTrie} 的最长匹配、U+FE0F的跳过、位置和切分结果、重复的emoji以及不成对的代理字符，
+ * 不涉及Android framework。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+public class EmojiTrieTest {
+    private static final String THUMBS_UP = "👍";
+    private static final String MEDIUM_SKIN = "🏽";
+    private static final String DARK_SKIN = "🏿";
+    private static final String MAN = "👨";
+    private static final String WOMAN = "👩";
+    private static final String GIRL = "👧";
+    private static final String ZWJ = "\u200D";
+    private static final String FAMILY = MAN + ZWJ + WOMAN + ZWJ + GIRL;
+    private static final String HEART = "❤";
+    private static final String FIRE = "🔥";
+    private static final String VS16 = "\uFE0F";
+    private static final String GRINNING = "😀";
+
+    private static final String[] EMOJIS = {
+            THUMBS_UP, THUMBS_UP + MEDIUM_SKIN, MAN, WOMAN, FAMILY, HEART, HEART + ZWJ + FIRE, GRINNING,
+            "1" + VS16 + "\u20E3"
+    };
+    private final EmojiTrie mTrie = new EmojiTrie(EMOJIS);
+
+    @Test
+    public void longestMatchWins() {
+        assertMatch(THUMBS_UP, 0, 2);
+        assertMatch(THUMBS_UP + MEDIUM_SKIN, 1, 4);
+        // 表中没有的肤色只匹配前面的emoji
+        assertMatch(THUMBS_UP + DARK_SKIN, 0, 2);
+
+        assertMatch(FAMILY, 4, FAMILY.length());
+        // 不完整的ZWJ序列退回到最后一个完整的emoji
+        assertMatch(MAN + ZWJ + WOMAN, 2, 2);
+        assertMatch(MAN + ZWJ + WOMAN + ZWJ, 2, 2);
+    }
+
+    @Test
+    public void endLimitsTheMatch() {
+        String text = "a" + THUMBS_UP + MEDIUM_SKIN;
+        assertEquals(4, mTrie.match(text, 1, 5));
+        assertEquals(2, mTrie.match(text, 1, 4));
+        // end在代理对中间
+        assertEquals(0, mTrie.match(text, 1, 2));
+        assertEquals(0, mTrie.match(text, 0, 5));
+        assertEquals(-1, mTrie.indexOf(text, 0, 5));
+    }
+
+    @Test
+    public void variationSelectorIsOptional() {
+        // 表中的"❤"匹配文本中的"❤️"，包括长度
+        assertMatch(HEART + VS16, 5, 2);
+        assertMatch(HEART, 5, 1);
+        // 序列中间的U+FE0F也被跳过
+        assertMatch(HEART + VS16 + ZWJ + FIRE, 6, 5);
+        // 表中有U+FE0F时按表匹配
+        assertMatch("1" + VS16 + "\u20E3", 8, 3);
+        assertMatch("1\u20E3", -1, 0);
+    }
+
+    @Test
+    public void variationSelectorNeverMatchesAtRoot() {
+        assertMatch(VS16, -1, 0);
+        assertMatch(VS16 + HEART, -1, 0);
+        assertEquals(1, mTrie.tokenize(VS16 + HEART, 0, 2, null));
+    }
+
+    @Test
+    public void tokenizeReportsOffsets() {
+        String text = "a" + GRINNING + "b" + THUMBS_UP + MEDIUM_SKIN + HEART + VS16 + FAMILY + "c";
+        List<String> tokens = tokenize(text, 0, text.length());
+        int family = 1 + 2 + 1 + 4 + 2;
+        assertEquals(listOf("1-3:7", "4-8:1", "8-10:5", family + "-" + (family + FAMILY.length()) + ":4"), tokens);
+
+        // 只切分[start, end)
+        assertEquals(listOf("4-8:1", "8-9:5"), tokenize(text, 4, 9));
+        assertEquals(listOf("4-6:0"), tokenize(text, 4, 7));
+        assertEquals(4, mTrie.indexOf(text, family, text.length()));
+        assertEquals(2, mTrie.indexOf(text, family, family + MAN.length() + 1));
+    }
+
+    @Test
+    public void firstDuplicateWins() {
+        EmojiTrie trie = new EmojiTrie(new String[]{GRINNING, null, "", THUMBS_UP, GRINNING});
+        assertEquals(0, trie.indexOf(GRINNING, 0, 2));
+        assertEquals(3, trie.indexOf(THUMBS_UP, 0, 2));
+        assertEquals(4, trie.maxLength());
+    }
+
+    @Test
+    public void loneSurrogatesAreSkipped() {
+        String high = "\uD83D";
+        String low = "\uDE00";
+        assertMatch(high, -1, 0);
+        assertMatch(low, -1, 0);
+        assertMatch(high + "x", -1, 0);
+
+        // 不成对的高代理后面紧跟emoji，emoji不能被跳过
+        String text = high + GRINNING + low + THUMBS_UP;
+        assertEquals(listOf("1-3:7", "4-6:0"), tokenize(text, 0, text.length()));
+        assertEquals(listOf("0-2:7"), tokenize(GRINNING + high, 0, 3));
+    }
+
+    private void assertMatch(String text, int index, int length) {
+        assertEquals(text, index, mTrie.indexOf(text, 0, text.length()));
+        assertEquals(text, length, mTrie.match(text, 0, text.length()));
+    }
+
+    private List<String> tokenize(String text, int start, int end) {
+        final List<String> tokens = new ArrayList<>();
+        int count = mTrie.tokenize(text, start, end, new EmojiTrie.Callback() {
+            @Override
+            public void onEmoji(int start, int end, int index) {
+                tokens.add(start + "-" + end + ":" + index);
+            }
+        });
+        assertEquals(tokens.size(), count);
+        return tokens;
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,99 @@
+package com.missmess.emotionkeyboard.emoji;
+
+import com.missmess.emotionkeyboard.catalog.EmojiCatalogGenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * 测试用的emoji目录：通过emoji-catalog-generator把文本格式的目录转换为二进制，和编译时生成assets的方式一样。
+ *
+ * @author wl
+ * @since 2018/06/25 10:30
+ */
+final class TestCatalogs {
+
+    private TestCatalogs() {
+    }
+
+    /**
+     * 生成二进制目录，格式为当前版本
+     * @param dir 临时目录
+     * @param text 文本格式的目录，见EmojiCatalogGenerator
+     * @return 目录文件的内容
+     */
+    static byte[] generate(File dir, String text) throws IOException {
+        File input = new File(dir, "emoji.txt");
+        File output = new File(dir, "emoji.bin");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(input), "UTF-8");
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+        EmojiCatalogGenerator.main(new String[]{input.getPath(), output.getPath()});
+        return readFully(output);
+    }
+
+    /**
+     * 把版本2的目录转换为版本1：去掉文件头中的关键字表字段和关键字表，字符串池前移。池末尾只被关键字表引用的
+     * 字符串也去掉，和没有关键字表时生成的文件一样
+     * @param catalog 版本2的目录
+     * @return 版本1的目录
+     */
+    static byte[] toVersion1(byte[] catalog) {
+        ByteBuffer in = ByteBuffer.wrap(catalog);
+        int categoryCount = in.getShort(6);
+        int emojiCount = in.getInt(8);
+        int poolOffset = in.getInt(12);
+        int keywordTableOffset = in.getInt(20);
+        int tablesLength = keywordTableOffset - 24;
+        int poolChars = 0;
+        for (int i = 0; i < categoryCount; i++) {
+            int offset = 24 + i * 12;
+            poolChars = Math.max(poolChars, in.getInt(offset) + in.getShort(offset + 4));
+        }
+        for (int i = 0; i < emojiCount; i++) {
+            int offset = 24 + categoryCount * 12 + i * 20;
+            for (int j = 0; j < 3; j++) {
+                poolChars = Math.max(poolChars, in.getInt(offset + j * 4) + in.getShort(offset + 12 + j * 2));
+            }
+        }
+        int poolLength = poolChars * 2;
+        ByteBuffer out = ByteBuffer.allocate(16 + tablesLength + poolLength);
+        out.putInt(EmojiCatalog.MAGIC);
+        out.putShort((short) 1);
+        out.putShort(in.getShort(6));
+        out.putInt(in.getInt(8));
+        out.putInt(16 + tablesLength);
+        out.put(catalog, 24, tablesLength);
+        out.put(catalog, poolOffset, poolLength);
+        return out.array();
+    }
+
+    static EmojiCatalog open(byte[] catalog) throws IOException {
+        return new EmojiCatalog(ByteBuffer.wrap(catalog));
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0)
+                    throw new IOException("Unexpected end of " + file);
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+}